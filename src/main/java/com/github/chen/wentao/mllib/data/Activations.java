@@ -0,0 +1,248 @@
+package com.github.chen.wentao.mllib.data;
+
+/**
+ * Allocation-free activation function kernels which each make a single pass over a range of an array.
+ * <p>
+ * Forward kernels read values from a source range and write their activations to a destination range, which may be the same range of the
+ * same array to compute them in place. Derivatives are computed from the activations themselves rather than from the weighted inputs,
+ * since back propagation already has the activations of every layer: sigmoid'(z) = a (1 - a), tanh'(z) = 1 - a^2 and relu'(z) = (a > 0 ? 1 : 0).
+ * Backward kernels fuse the derivative with the multiplication by the error propagated from the next layer.
+ */
+public final class Activations {
+
+	private Activations() {}
+
+	public static void sigmoid(double[] source, int sourceOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			destination[destinationOffset + k] = 1.0 / (1.0 + Math.exp(-source[sourceOffset + k]));
+		}
+	}
+
+	public static void tanh(double[] source, int sourceOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			destination[destinationOffset + k] = Math.tanh(source[sourceOffset + k]);
+		}
+	}
+
+	public static void relu(double[] source, int sourceOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			double z = source[sourceOffset + k];
+			destination[destinationOffset + k] = z > 0.0 ? z : 0.0;
+		}
+	}
+
+	/**
+	 * Computes the leaky rectified linear unit, which lets a small gradient through for negative values
+	 * @param slope the slope for negative values (between 0 and 1)
+	 */
+	public static void leakyRelu(double slope, double[] source, int sourceOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			double z = source[sourceOffset + k];
+			destination[destinationOffset + k] = z > 0.0 ? z : slope * z;
+		}
+	}
+
+	/**
+	 * Computes the derivative of the sigmoid function from its activations a = sigmoid(z)
+	 */
+	public static void sigmoidDerivative(double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			double a = activations[activationOffset + k];
+			destination[destinationOffset + k] = a * (1.0 - a);
+		}
+	}
+
+	/**
+	 * Computes the derivative of the hyperbolic tangent from its activations a = tanh(z)
+	 */
+	public static void tanhDerivative(double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			double a = activations[activationOffset + k];
+			destination[destinationOffset + k] = 1.0 - a * a;
+		}
+	}
+
+	/**
+	 * Computes the derivative of the rectified linear unit from its activations a = max(z, 0)
+	 */
+	public static void reluDerivative(double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			destination[destinationOffset + k] = activations[activationOffset + k] > 0.0 ? 1.0 : 0.0;
+		}
+	}
+
+	/**
+	 * Multiplies errors by the derivative of the sigmoid function computed from its activations, destination = errors * a (1 - a)
+	 */
+	public static void sigmoidBackward(double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			double a = activations[activationOffset + k];
+			destination[destinationOffset + k] = errors[errorOffset + k] * a * (1.0 - a);
+		}
+	}
+
+	/**
+	 * Multiplies errors by the derivative of the hyperbolic tangent computed from its activations, destination = errors * (1 - a^2)
+	 */
+	public static void tanhBackward(double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			double a = activations[activationOffset + k];
+			destination[destinationOffset + k] = errors[errorOffset + k] * (1.0 - a * a);
+		}
+	}
+
+	/**
+	 * Multiplies errors by the derivative of the rectified linear unit computed from its activations, destination = (a > 0 ? errors : 0)
+	 */
+	public static void reluBackward(double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			destination[destinationOffset + k] = activations[activationOffset + k] > 0.0 ? errors[errorOffset + k] : 0.0;
+		}
+	}
+
+	/**
+	 * Multiplies errors by the derivative of the leaky rectified linear unit computed from its activations, destination = (a > 0 ? errors : slope * errors)
+	 * @param slope the slope for negative values (between 0 and 1)
+	 */
+	public static void leakyReluBackward(double slope, double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			double error = errors[errorOffset + k];
+			destination[destinationOffset + k] = activations[activationOffset + k] > 0.0 ? error : slope * error;
+		}
+	}
+
+	/**
+	 * Computes the softmax of every column of a row-major matrix in place, which is the layout of layers with one example per column.
+	 * The maximum of each column is subtracted before exponentiating so large values do not overflow.
+	 * @param data the elements of the matrix
+	 * @param offset the index of the first element of the matrix
+	 * @param rows the number of rows (the number of values normalized together)
+	 * @param cols the number of columns
+	 */
+	public static void softmaxColumns(double[] data, int offset, int rows, int cols) {
+		for (int c = 0; c < cols; c++) {
+			int start = offset + c;
+			int end = start + rows * cols;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int k = start; k < end; k += cols) {
+				max = Math.max(max, data[k]);
+			}
+			double sum = 0.0;
+			for (int k = start; k < end; k += cols) {
+				sum += data[k] = Math.exp(data[k] - max);
+			}
+			double inverse = 1.0 / sum;
+			for (int k = start; k < end; k += cols) {
+				data[k] *= inverse;
+			}
+		}
+	}
+
+	/**
+	 * Computes the softmax of every row of a row-major matrix in place, which is the layout of data sets with one example per row.
+	 * The maximum of each row is subtracted before exponentiating so large values do not overflow.
+	 * @param data the elements of the matrix
+	 * @param offset the index of the first element of the matrix
+	 * @param rows the number of rows
+	 * @param cols the number of columns (the number of values normalized together)
+	 */
+	public static void softmaxRows(double[] data, int offset, int rows, int cols) {
+		for (int r = 0; r < rows; r++) {
+			int start = offset + r * cols;
+			int end = start + cols;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int k = start; k < end; k++) {
+				max = Math.max(max, data[k]);
+			}
+			double sum = 0.0;
+			for (int k = start; k < end; k++) {
+				sum += data[k] = Math.exp(data[k] - max);
+			}
+			double inverse = 1.0 / sum;
+			for (int k = start; k < end; k++) {
+				data[k] *= inverse;
+			}
+		}
+	}
+
+	/**
+	 * Computes the sigmoid function in single precision. Exponentials are evaluated in double precision and rounded once.
+	 */
+	public static void sigmoid(float[] source, int sourceOffset, float[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			destination[destinationOffset + k] = (float) (1.0 / (1.0 + Math.exp(-source[sourceOffset + k])));
+		}
+	}
+
+	public static void tanh(float[] source, int sourceOffset, float[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			destination[destinationOffset + k] = (float) Math.tanh(source[sourceOffset + k]);
+		}
+	}
+
+	public static void relu(float[] source, int sourceOffset, float[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			float z = source[sourceOffset + k];
+			destination[destinationOffset + k] = z > 0.0f ? z : 0.0f;
+		}
+	}
+
+	public static void leakyRelu(float slope, float[] source, int sourceOffset, float[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			float z = source[sourceOffset + k];
+			destination[destinationOffset + k] = z > 0.0f ? z : slope * z;
+		}
+	}
+
+	public static void sigmoidBackward(float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			float a = activations[activationOffset + k];
+			destination[destinationOffset + k] = errors[errorOffset + k] * a * (1.0f - a);
+		}
+	}
+
+	public static void tanhBackward(float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			float a = activations[activationOffset + k];
+			destination[destinationOffset + k] = errors[errorOffset + k] * (1.0f - a * a);
+		}
+	}
+
+	public static void reluBackward(float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			destination[destinationOffset + k] = activations[activationOffset + k] > 0.0f ? errors[errorOffset + k] : 0.0f;
+		}
+	}
+
+	public static void leakyReluBackward(float slope, float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length) {
+		for (int k = 0; k < length; k++) {
+			float error = errors[errorOffset + k];
+			destination[destinationOffset + k] = activations[activationOffset + k] > 0.0f ? error : slope * error;
+		}
+	}
+
+	/**
+	 * Computes the softmax of every column of a single precision row-major matrix in place, summing the exponentials in double precision
+	 * @see #softmaxColumns(double[], int, int, int)
+	 */
+	public static void softmaxColumns(float[] data, int offset, int rows, int cols) {
+		for (int c = 0; c < cols; c++) {
+			int start = offset + c;
+			int end = start + rows * cols;
+			float max = Float.NEGATIVE_INFINITY;
+			for (int k = start; k < end; k += cols) {
+				max = Math.max(max, data[k]);
+			}
+			double sum = 0.0;
+			for (int k = start; k < end; k += cols) {
+				double e = Math.exp(data[k] - max);
+				data[k] = (float) e;
+				sum += e;
+			}
+			float inverse = (float) (1.0 / sum);
+			for (int k = start; k < end; k += cols) {
+				data[k] *= inverse;
+			}
+		}
+	}
+}
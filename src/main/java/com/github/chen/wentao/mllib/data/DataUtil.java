@@ -16,7 +16,9 @@ public class DataUtil {
 	 * @return a new matrix where each element is the sigmoid of the corresponding element in matrix {@code m}
 	 */
 	public static SimpleMatrix sigmoid(SimpleMatrix m) {
-		return m.negative().elementExp().plus(1.0).elementPower(-1.0);
+		SimpleMatrix sigmoid = new SimpleMatrix(m.numRows(), m.numCols());
+		Activations.sigmoid(m.getDDRM().data, 0, sigmoid.getDDRM().data, 0, m.getNumElements());
+		return sigmoid;
 	}
 
 	public static double sigmoidGrad(double z) {
@@ -30,8 +32,10 @@ public class DataUtil {
 	 * @return a new matrix where each element is the sigmoid derivative of the corresponding element in matrix {@code m}
 	 */
 	public static SimpleMatrix sigmoidGrad(SimpleMatrix m) {
-		SimpleMatrix sigmoid = sigmoid(m);
-		return sigmoid.elementMult(ones(sigmoid).minus(sigmoid));
+		SimpleMatrix sigmoidGrad = sigmoid(m);
+		double[] data = sigmoidGrad.getDDRM().data;
+		Activations.sigmoidDerivative(data, 0, data, 0, m.getNumElements());
+		return sigmoidGrad;
 	}
 
 	public static SimpleMatrix addBiasColumn(SimpleMatrix data) {
@@ -0,0 +1,152 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import com.github.chen.wentao.mllib.training.BatchFullDataSetStream;
+import com.github.chen.wentao.mllib.training.DataSet;
+import com.github.chen.wentao.mllib.training.DataSetTarget;
+import com.github.chen.wentao.mllib.training.FullDataSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary data set file which can be memory mapped.
+ * <p>
+ * All values are little-endian. The file starts with a {@value #HEADER_SIZE} byte header:
+ * <pre>
+ *  0  int   magic ("MLDS")
+ *  4  int   version
+ *  8  int   flags (bit 0 set if values are stored as float32 instead of float64)
+ * 12  int   number of features (n)
+ * 16  long  number of examples (m)
+ * 24  int   number of target columns
+ * 28  int   number of labels of the target
+ * 32  long  offset of the feature block
+ * 40  long  offset of the target block
+ * </pre>
+ * followed by the feature block, an (m) x (n) row-major matrix, and the target block, an (m) x (target columns) row-major matrix.
+ * Keeping features and targets in separate blocks lets a batch of either be read as one contiguous range.
+ */
+public class DataSetFile {
+
+	static final int MAGIC = 0x53444C4D; // "MLDS" in little-endian
+	static final int VERSION = 1;
+	static final int FLAG_FLOAT32 = 1;
+	static final int HEADER_SIZE = 64;
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Writes a data set to a file
+	 * @param path the file to be written
+	 * @param dataSet the data set
+	 * @param float32 true to store values as float32, which halves the file size at the cost of precision
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Path path, FullDataSet dataSet, boolean float32) throws IOException {
+		write(path, new BatchFullDataSetStream() {
+			@Override
+			public FullDataSet getBatch(int batchIndex) {
+				return dataSet;
+			}
+
+			@Override
+			public int numBatches() {
+				return 1;
+			}
+		}, float32);
+	}
+
+	/**
+	 * Writes every batch of a stream to a file without holding more than one batch in memory.
+	 * Targets are staged in a temporary file next to {@code path} and appended after the features.
+	 * @param path the file to be written
+	 * @param dataSetStream the batches of the data set
+	 * @param float32 true to store values as float32, which halves the file size at the cost of precision
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Path path, BatchFullDataSetStream dataSetStream, boolean float32) throws IOException {
+		Path absolutePath = path.toAbsolutePath();
+		Path targetPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".targets");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			 FileChannel targetChannel = FileChannel.open(targetPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			channel.position(HEADER_SIZE);
+
+			long numExamples = 0;
+			int numFeatures = -1;
+			int numTargetColumns = -1;
+			int numLabels = 0;
+			for (int i = 0, batches = dataSetStream.numBatches(); i < batches; i++) {
+				FullDataSet batch = dataSetStream.getBatch(i);
+				DataSet features = batch.getDataSet();
+				DataSetTarget target = batch.getDataSetTarget();
+				if (numFeatures < 0) {
+					numFeatures = features.numFeatures();
+					numTargetColumns = target.numColumns();
+				}
+				if (features.numFeatures() != numFeatures || target.numColumns() != numTargetColumns) {
+					throw new IOException("Batch " + i + " has a different number of columns than the first batch");
+				}
+				numLabels = Math.max(numLabels, target.numLabels());
+				writeValues(channel, buffer, features.getMatrix().getDDRM().data, features.numExamples() * numFeatures, float32);
+				writeValues(targetChannel, buffer, target.getMatrix().getDDRM().data, target.numExamples() * numTargetColumns, float32);
+				numExamples += batch.numExamples();
+			}
+
+			long targetOffset = channel.position();
+			long targetSize = targetChannel.size();
+			for (long transferred = 0; transferred < targetSize; ) {
+				transferred += targetChannel.transferTo(transferred, targetSize - transferred, channel);
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(float32 ? FLAG_FLOAT32 : 0).putInt(Math.max(numFeatures, 0))
+					.putLong(numExamples).putInt(Math.max(numTargetColumns, 0)).putInt(numLabels)
+					.putLong(HEADER_SIZE).putLong(targetOffset);
+			header.rewind();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		} finally {
+			Files.deleteIfExists(targetPath);
+		}
+	}
+
+	private static void writeValues(FileChannel channel, ByteBuffer buffer, double[] values, int count, boolean float32) throws IOException {
+		int valueSize = float32 ? Float.BYTES : Double.BYTES;
+		for (int k = 0; k < count; k++) {
+			if (buffer.remaining() < valueSize) {
+				flush(channel, buffer);
+			}
+			if (float32) {
+				buffer.putFloat((float) values[k]);
+			} else {
+				buffer.putDouble(values[k]);
+			}
+		}
+		flush(channel, buffer);
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Opens a data set file as a stream of batches read from a memory mapping of the file
+	 * @param path the file to be read
+	 * @param batchSize the number of examples of every batch (except possibly the last)
+	 * @return the stream, which should be closed when no longer used
+	 * @throws IOException if the file cannot be read or is not a data set file
+	 */
+	public static MappedDataSetStream open(Path path, int batchSize) throws IOException {
+		return new MappedDataSetStream(path, batchSize);
+	}
+}
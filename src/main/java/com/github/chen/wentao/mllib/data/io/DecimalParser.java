@@ -0,0 +1,187 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses decimal numbers from ASCII bytes without allocating.
+ * <p>
+ * Numbers with at most 15 significant digits and a decimal exponent of at most 22 are computed exactly from a single multiplication
+ * or division of exactly representable doubles (Clinger's fast path). Numbers with at most 18 significant digits, which includes every
+ * number printed by {@link Double#toString(double)}, are computed with the Eisel-Lemire algorithm from a 128-bit approximation of the
+ * power of ten. Both are correctly rounded. The rare inputs neither can decide, and anything else such as {@code NaN} or {@code Infinity},
+ * fall back to {@link Double#parseDouble(String)}.
+ */
+final class DecimalParser {
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final int MIN_EXPONENT = -342;
+	private static final int MAX_EXPONENT = 308;
+	private static final long[] POWERS_HIGH = new long[MAX_EXPONENT - MIN_EXPONENT + 1]; // Most significant 64 bits of 10^q normalized to 128 bits
+	private static final long[] POWERS_LOW = new long[MAX_EXPONENT - MIN_EXPONENT + 1]; // Next 64 bits of 10^q normalized to 128 bits
+
+	static {
+		BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+		BigInteger two127 = BigInteger.ONE.shiftLeft(127);
+		for (int q = MIN_EXPONENT; q <= MAX_EXPONENT; q++) {
+			BigInteger power;
+			if (q < 0) {
+				BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+				int z = power5.subtract(BigInteger.ONE).bitLength(); // Smallest z with 2^z >= 5^-q
+				int b = q >= -27 ? z + 127 : 2 * z + 128;
+				power = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+				while (power.compareTo(two128) >= 0) {
+					power = power.shiftRight(1);
+				}
+			} else {
+				power = BigInteger.valueOf(5).pow(q);
+				while (power.compareTo(two127) < 0) {
+					power = power.shiftLeft(1);
+				}
+				while (power.compareTo(two128) >= 0) {
+					power = power.shiftRight(1);
+				}
+			}
+			POWERS_HIGH[q - MIN_EXPONENT] = power.shiftRight(64).longValue();
+			POWERS_LOW[q - MIN_EXPONENT] = power.longValue();
+		}
+	}
+
+	private DecimalParser() {}
+
+	/**
+	 * Parses a decimal number
+	 * @param buffer the bytes
+	 * @param start the index of the first byte of the number
+	 * @param end the index after the last byte of the number
+	 * @return the number
+	 * @throws NumberFormatException if the bytes are not a number
+	 */
+	static double parseDouble(byte[] buffer, int start, int end) {
+		int k = start;
+		boolean negative = false;
+		if (k < end && (buffer[k] == '-' || buffer[k] == '+')) {
+			negative = buffer[k] == '-';
+			k++;
+		}
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		int significantDigits = 0;
+		for (; k < end && buffer[k] >= '0' && buffer[k] <= '9'; k++, digits++) {
+			if (mantissa > 0 || buffer[k] != '0') {
+				mantissa = mantissa * 10 + (buffer[k] - '0');
+				significantDigits++;
+			}
+		}
+		if (k < end && buffer[k] == '.') {
+			for (k++; k < end && buffer[k] >= '0' && buffer[k] <= '9'; k++, digits++) {
+				if (mantissa > 0 || buffer[k] != '0') {
+					mantissa = mantissa * 10 + (buffer[k] - '0');
+					significantDigits++;
+				}
+				exponent--;
+			}
+		}
+		if (digits > 0 && k < end && (buffer[k] == 'e' || buffer[k] == 'E')) {
+			k++;
+			boolean negativeExponent = false;
+			if (k < end && (buffer[k] == '-' || buffer[k] == '+')) {
+				negativeExponent = buffer[k] == '-';
+				k++;
+			}
+			int exponentStart = k;
+			int explicitExponent = 0;
+			for (; k < end && buffer[k] >= '0' && buffer[k] <= '9'; k++) {
+				if (explicitExponent < 100000) {
+					explicitExponent = explicitExponent * 10 + (buffer[k] - '0');
+				}
+			}
+			if (k == exponentStart) {
+				digits = 0; // Malformed exponent
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		if (digits > 0 && k == end && significantDigits <= 18) {
+			if (mantissa == 0) {
+				return negative ? -0.0 : 0.0;
+			}
+			if (significantDigits <= 15 && Math.abs(exponent) <= 22) {
+				double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+				return negative ? -value : value;
+			}
+			long bits = eiselLemire(mantissa, exponent);
+			if (bits >= 0) {
+				return Double.longBitsToDouble(negative ? bits | Long.MIN_VALUE : bits);
+			}
+		}
+		return Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Computes the bits of the double nearest to mantissa * 10^exponent
+	 * @param mantissa the decimal mantissa (greater than 0 and less than 2^63)
+	 * @param exponent the decimal exponent
+	 * @return the bits of the positive double, or -1 if the result cannot be decided cheaply or is subnormal or infinite
+	 */
+	private static long eiselLemire(long mantissa, int exponent) {
+		if (exponent < MIN_EXPONENT || exponent > MAX_EXPONENT) {
+			return -1;
+		}
+		int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+		mantissa <<= leadingZeros;
+		long resultExponent = ((217706L * exponent) >> 16) + 64 + 1023 - leadingZeros;
+
+		int index = exponent - MIN_EXPONENT;
+		long high = multiplyHigh(mantissa, POWERS_HIGH[index]);
+		long low = mantissa * POWERS_HIGH[index];
+		if ((high & 0x1FF) == 0x1FF && Long.compareUnsigned(low + mantissa, mantissa) < 0) {
+			// Truncated product might be off by one in the last bits, widen it with the next 64 bits of the power
+			long wideHigh = multiplyHigh(mantissa, POWERS_LOW[index]);
+			long wideLow = mantissa * POWERS_LOW[index];
+			long mergedHigh = high;
+			long mergedLow = low + wideHigh;
+			if (Long.compareUnsigned(mergedLow, low) < 0) {
+				mergedHigh++;
+			}
+			if ((mergedHigh & 0x1FF) == 0x1FF && mergedLow + 1 == 0 && Long.compareUnsigned(wideLow + mantissa, mantissa) < 0) {
+				return -1;
+			}
+			high = mergedHigh;
+			low = mergedLow;
+		}
+
+		long msb = high >>> 63;
+		long resultMantissa = high >>> (msb + 9);
+		resultExponent -= 1 ^ msb;
+		if (low == 0 && (high & 0x1FF) == 0 && (resultMantissa & 3) == 1) {
+			return -1; // Exactly half way between two doubles
+		}
+		resultMantissa += resultMantissa & 1;
+		resultMantissa >>>= 1;
+		if (resultMantissa >>> 53 > 0) {
+			resultMantissa >>>= 1;
+			resultExponent++;
+		}
+		if (resultExponent <= 0 || resultExponent >= 0x7FF) {
+			return -1;
+		}
+		return resultExponent << 52 | resultMantissa & 0x000FFFFFFFFFFFFFL;
+	}
+
+	/**
+	 * Returns the most significant 64 bits of the unsigned 128-bit product of two unsigned longs
+	 */
+	private static long multiplyHigh(long x, long y) {
+		long x0 = x & 0xFFFFFFFFL;
+		long x1 = x >>> 32;
+		long y0 = y & 0xFFFFFFFFL;
+		long y1 = y >>> 32;
+		long p01 = x0 * y1;
+		long middle = x1 * y0 + ((x0 * y0) >>> 32) + (p01 & 0xFFFFFFFFL);
+		return x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+	}
+}
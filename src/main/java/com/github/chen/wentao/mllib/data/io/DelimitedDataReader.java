@@ -0,0 +1,335 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import com.github.chen.wentao.mllib.training.DataSet;
+import com.github.chen.wentao.mllib.training.DataSetTarget;
+import com.github.chen.wentao.mllib.training.FullDataSet;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads numeric CSV, TSV or other delimited text files into data sets.
+ * <p>
+ * Values are parsed directly from the bytes of the file into primitive arrays which become the backing arrays of the matrices,
+ * so no {@code String} is created per value and no intermediate list of rows is kept. The lines are counted before they are parsed,
+ * so the arrays are allocated at their exact size and never grown or trimmed.
+ * Every non-blank line is an example whose last {@code numTargetColumns} values are the target. Empty fields are read as {@code NaN}
+ * and values may be surrounded by spaces or double quotes.
+ */
+public class DelimitedDataReader {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final byte delimiter;
+	private final int numTargetColumns;
+	private final Integer numLabels;
+	private final boolean hasHeader;
+
+	/**
+	 * @param delimiter the (ASCII) character separating values
+	 * @param numTargetColumns the number of columns at the end of every line which are the target
+	 * @param numLabels the number of labels of the target (or null to count the distinct values of the target)
+	 * @param hasHeader true if the first non-blank line contains column names and should be skipped
+	 */
+	public DelimitedDataReader(char delimiter, int numTargetColumns, Integer numLabels, boolean hasHeader) {
+		assert delimiter < 128 && delimiter != '\n' && delimiter != '\r';
+		assert numTargetColumns >= 0;
+
+		this.delimiter = (byte) delimiter;
+		this.numTargetColumns = numTargetColumns;
+		this.numLabels = numLabels;
+		this.hasHeader = hasHeader;
+	}
+
+	public static DelimitedDataReader csv(int numTargetColumns, boolean hasHeader) {
+		return new DelimitedDataReader(',', numTargetColumns, null, hasHeader);
+	}
+
+	public static DelimitedDataReader tsv(int numTargetColumns, boolean hasHeader) {
+		return new DelimitedDataReader('\t', numTargetColumns, null, hasHeader);
+	}
+
+	/**
+	 * Reads a whole file into memory
+	 * @param path the file to be read
+	 * @return the data set
+	 * @throws IOException if the file cannot be read or contains a malformed line
+	 */
+	public FullDataSet read(Path path) throws IOException {
+		long numExamples = countExamples(path);
+		if (numExamples > Integer.MAX_VALUE - 8) {
+			throw new IOException(path + " has too many examples to be read into memory");
+		}
+		Parser parser = new Parser(-1, hasHeader, 1, (int) numExamples);
+		try (InputStream in = Files.newInputStream(path)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int filled = 0;
+			int read;
+			while ((read = in.read(buffer, filled, buffer.length - filled)) >= 0) {
+				filled += read;
+				int consumed = parser.parse(buffer, 0, filled, false);
+				filled -= consumed;
+				System.arraycopy(buffer, consumed, buffer, 0, filled); // Keep the incomplete last line
+				if (filled == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2); // Line is longer than the buffer
+				}
+			}
+			parser.parse(buffer, 0, filled, true);
+		}
+		return parser.toFullDataSet(numLabels);
+	}
+
+	/**
+	 * Counts the non-blank lines of a file (except the header) without parsing any value
+	 */
+	private long countExamples(Path path) throws IOException {
+		boolean skipHeader = hasHeader;
+		boolean blank = true;
+		long numExamples = 0;
+		try (InputStream in = Files.newInputStream(path)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				for (int k = 0; k < read; k++) {
+					byte b = buffer[k];
+					if (b == '\n') {
+						if (!blank) {
+							if (skipHeader) {
+								skipHeader = false;
+							} else {
+								numExamples++;
+							}
+						}
+						blank = true;
+					} else if (b != ' ' && b != '\t' && b != '\r') {
+						blank = false;
+					}
+				}
+			}
+		}
+		if (!blank && !skipHeader) { // Last line without a line terminator
+			numExamples++;
+		}
+		return numExamples;
+	}
+
+	/**
+	 * Opens a file as a stream of batches which are parsed from the file when requested, so the file never needs to fit in memory.
+	 * The file is scanned once to find where every batch starts.
+	 * If the number of labels of this reader is null and the target is a single column, the labels are counted during that scan
+	 * (as the largest label plus one) so that every batch has the same number of labels.
+	 * @param path the file to be read
+	 * @param batchSize the number of examples of every batch (except possibly the last)
+	 * @return the stream, which should be closed when no longer used
+	 * @throws IOException if the file cannot be read
+	 */
+	public DelimitedDataSetStream stream(Path path, int batchSize) throws IOException {
+		return new DelimitedDataSetStream(this, path, batchSize);
+	}
+
+	byte getDelimiter() {
+		return delimiter;
+	}
+
+	boolean hasHeader() {
+		return hasHeader;
+	}
+
+	int getNumTargetColumns() {
+		return numTargetColumns;
+	}
+
+	Integer getNumLabels() {
+		return numLabels;
+	}
+
+	/**
+	 * Parses the complete lines of a range of bytes as a batch of examples
+	 * @param buffer the bytes
+	 * @param start the index of the first byte of the first line
+	 * @param end the index after the last byte of the last line
+	 * @param numColumns the expected number of values of every line
+	 * @param numExamples the number of non-blank lines
+	 * @param firstLineNumber the line number of the first line, used in error messages
+	 * @param numLabels the number of labels of the target (or null to count the distinct values of the target)
+	 * @return the examples
+	 * @throws IOException if a line is malformed
+	 */
+	FullDataSet parseBatch(byte[] buffer, int start, int end, int numColumns, int numExamples, long firstLineNumber, Integer numLabels) throws IOException {
+		Parser parser = new Parser(numColumns, false, firstLineNumber, numExamples);
+		parser.parse(buffer, start, end, true);
+		return parser.toFullDataSet(numLabels);
+	}
+
+	/**
+	 * Returns the number of values of a line, or 0 if the line is blank
+	 */
+	int countFields(byte[] buffer, int start, int end) {
+		if (isBlank(buffer, start, end)) {
+			return 0;
+		}
+		int fields = 1;
+		for (int k = start; k < end; k++) {
+			if (buffer[k] == delimiter) {
+				fields++;
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * Parses a single value, which may be surrounded by spaces or double quotes
+	 * @param lineNumber the line number of the value, used in error messages
+	 * @param column the (1-based) column of the value, used in error messages
+	 * @return the value, or {@code NaN} if the field is empty
+	 * @throws IOException if the value is not a number
+	 */
+	static double parseField(byte[] buffer, int start, int end, long lineNumber, int column) throws IOException {
+		int from = start;
+		int to = end;
+		while (from < to && (buffer[from] == ' ' || buffer[from] == '\t' || buffer[from] == '\r')) {
+			from++;
+		}
+		while (to > from && (buffer[to - 1] == ' ' || buffer[to - 1] == '\t' || buffer[to - 1] == '\r')) {
+			to--;
+		}
+		if (to - from >= 2 && buffer[from] == '"' && buffer[to - 1] == '"') {
+			from++;
+			to--;
+		}
+		try {
+			return from == to ? Double.NaN : DecimalParser.parseDouble(buffer, from, to);
+		} catch (NumberFormatException e) {
+			throw new IOException("Line " + lineNumber + ", column " + column + ": "
+					+ new String(buffer, start, end - start, StandardCharsets.UTF_8) + " is not a number", e);
+		}
+	}
+
+	static boolean isBlank(byte[] buffer, int start, int end) {
+		for (int k = start; k < end; k++) {
+			if (buffer[k] != ' ' && buffer[k] != '\t' && buffer[k] != '\r') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses lines into arrays of features and targets allocated for a known number of examples
+	 */
+	private class Parser {
+
+		private final int capacity;
+		private double[] features;
+		private double[] targets;
+		private int numColumns;
+		private boolean skipHeader;
+		private long lineNumber;
+		private int numExamples;
+
+		/**
+		 * @param numColumns the expected number of values of every line (or -1 to use the number of values of the first line)
+		 * @param capacity the number of examples which will be parsed
+		 */
+		private Parser(int numColumns, boolean skipHeader, long firstLineNumber, int capacity) throws IOException {
+			this.capacity = capacity;
+			this.numColumns = numColumns;
+			this.skipHeader = skipHeader;
+			this.lineNumber = firstLineNumber - 1;
+			if (numColumns >= 0) {
+				allocate();
+			}
+		}
+
+		private void allocate() throws IOException {
+			int numFeatures = numColumns - numTargetColumns;
+			if ((long) capacity * Math.max(numFeatures, numTargetColumns) > Integer.MAX_VALUE - 8) {
+				throw new IOException(capacity + " examples of " + numColumns + " values do not fit in an array");
+			}
+			features = new double[capacity * numFeatures];
+			targets = new double[capacity * numTargetColumns];
+		}
+
+		/**
+		 * Parses every complete line of a range of bytes
+		 * @param endOfInput true if the last line is complete even without a line terminator
+		 * @return the index of the first byte which was not parsed
+		 */
+		private int parse(byte[] buffer, int start, int end, boolean endOfInput) throws IOException {
+			int lineStart = start;
+			for (int k = start; k < end; k++) {
+				if (buffer[k] == '\n') {
+					parseLine(buffer, lineStart, k);
+					lineStart = k + 1;
+				}
+			}
+			if (endOfInput && lineStart < end) {
+				parseLine(buffer, lineStart, end);
+				lineStart = end;
+			}
+			return lineStart;
+		}
+
+		private void parseLine(byte[] buffer, int start, int end) throws IOException {
+			lineNumber++;
+			if (isBlank(buffer, start, end)) {
+				return;
+			}
+			if (skipHeader) {
+				skipHeader = false;
+				return;
+			}
+			if (numColumns < 0) {
+				numColumns = countFields(buffer, start, end);
+				if (numColumns < numTargetColumns) {
+					throw new IOException("Line " + lineNumber + ": expected at least " + numTargetColumns + " columns but found " + numColumns);
+				}
+				allocate();
+			}
+			if (numExamples == capacity) {
+				throw new IOException("Line " + lineNumber + ": file was modified while it was read");
+			}
+			int numFeatures = numColumns - numTargetColumns;
+			int featureOffset = numExamples * numFeatures;
+			int targetOffset = numExamples * numTargetColumns - numFeatures;
+			int column = 0;
+			int fieldStart = start;
+			for (int k = start; k <= end; k++) {
+				if (k == end || buffer[k] == delimiter) {
+					if (column == numColumns) {
+						throw new IOException("Line " + lineNumber + ": expected " + numColumns + " columns but found more");
+					}
+					double value = parseField(buffer, fieldStart, k, lineNumber, column + 1);
+					if (column < numFeatures) {
+						features[featureOffset + column] = value;
+					} else {
+						targets[targetOffset + column] = value;
+					}
+					column++;
+					fieldStart = k + 1;
+				}
+			}
+			if (column != numColumns) {
+				throw new IOException("Line " + lineNumber + ": expected " + numColumns + " columns but found " + column);
+			}
+			numExamples++;
+		}
+
+		private FullDataSet toFullDataSet(Integer numLabels) throws IOException {
+			if (numExamples != capacity) {
+				throw new IOException("Expected " + capacity + " examples but found " + numExamples + ": file was modified while it was read");
+			}
+			int numFeatures = Math.max(numColumns - numTargetColumns, 0);
+			return new FullDataSet(
+					new DataSet(SimpleMatrix.wrap(DMatrixRMaj.wrap(numExamples, numFeatures, features != null ? features : new double[0]))),
+					new DataSetTarget(SimpleMatrix.wrap(DMatrixRMaj.wrap(numExamples, numTargetColumns, targets != null ? targets : new double[0])), numLabels)
+			);
+		}
+	}
+}
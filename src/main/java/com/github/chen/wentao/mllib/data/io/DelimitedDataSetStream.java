@@ -0,0 +1,194 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import com.github.chen.wentao.mllib.training.BatchFullDataSetStream;
+import com.github.chen.wentao.mllib.training.FullDataSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Stream of batches of a delimited text file which are parsed when requested.
+ * Opening the stream scans the file once for line breaks and records the byte offset at which every batch starts,
+ * so any batch can then be read with a single positional read of its byte range. Batches may be read concurrently.
+ * When the number of labels is not given by the reader, the labels of a single target column are counted during the same scan,
+ * so that every batch has the same number of labels (and the same binary target matrix width) whichever labels it contains.
+ * Malformed lines are reported with an {@link UncheckedIOException} when their batch is read.
+ */
+public class DelimitedDataSetStream implements BatchFullDataSetStream, Closeable {
+
+	private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+	private final DelimitedDataReader reader;
+	private final FileChannel channel;
+	private final int batchSize;
+	private int numColumns;
+	private Integer numLabels;
+	private long numExamples;
+	private long[] batchOffsets; // Byte offset of the first line of every batch, followed by the size of the file
+	private long[] batchLineNumbers; // Line number of the first line of every batch
+	private int numBatches;
+
+	DelimitedDataSetStream(DelimitedDataReader reader, Path path, int batchSize) throws IOException {
+		assert batchSize > 0;
+
+		this.reader = reader;
+		this.batchSize = batchSize;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			index();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void index() throws IOException {
+		batchOffsets = new long[16];
+		batchLineNumbers = new long[16];
+		byte delimiter = reader.getDelimiter();
+		boolean skipHeader = reader.hasHeader();
+		boolean countLabels = reader.getNumLabels() == null && reader.getNumTargetColumns() == 1;
+		byte[] lastField = new byte[64]; // Bytes of the last value of the current line so far
+		int lastFieldLength = 0;
+		int maxLabel = 0;
+		boolean blank = true;
+		int fields = 1;
+		long lineStart = 0;
+		long lineNumber = 1;
+		long position = 0;
+		byte[] bytes = new byte[SCAN_BUFFER_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int read;
+		while ((read = channel.read(buffer, position)) >= 0) {
+			for (int k = 0; k < read; k++) {
+				byte b = bytes[k];
+				if (b == '\n') {
+					if (!blank) {
+						if (skipHeader) {
+							skipHeader = false;
+						} else {
+							addExample(lineStart, lineNumber, fields);
+							if (countLabels) {
+								maxLabel = Math.max(maxLabel, (int) DelimitedDataReader.parseField(lastField, 0, lastFieldLength, lineNumber, fields));
+							}
+						}
+					}
+					blank = true;
+					fields = 1;
+					lastFieldLength = 0;
+					lineStart = position + k + 1;
+					lineNumber++;
+				} else {
+					if (b == delimiter) {
+						fields++;
+						lastFieldLength = 0;
+					} else if (countLabels) {
+						if (lastFieldLength == lastField.length) {
+							lastField = Arrays.copyOf(lastField, lastField.length * 2);
+						}
+						lastField[lastFieldLength++] = b;
+					}
+					if (b != ' ' && b != '\t' && b != '\r') {
+						blank = false;
+					}
+				}
+			}
+			position += read;
+			buffer.clear();
+		}
+		if (!blank && !skipHeader) { // Last line without a line terminator
+			addExample(lineStart, lineNumber, fields);
+			if (countLabels) {
+				maxLabel = Math.max(maxLabel, (int) DelimitedDataReader.parseField(lastField, 0, lastFieldLength, lineNumber, fields));
+			}
+		}
+		batchOffsets[numBatches] = position;
+		numLabels = countLabels ? maxLabel + 1 : reader.getNumLabels();
+	}
+
+	private void addExample(long offset, long lineNumber, int fields) {
+		if (numColumns == 0) {
+			numColumns = fields;
+		}
+		if (numExamples % batchSize == 0) {
+			addBatch(offset, lineNumber);
+		}
+		numExamples++;
+	}
+
+	private void addBatch(long offset, long lineNumber) {
+		if (numBatches + 1 >= batchOffsets.length) {
+			batchOffsets = Arrays.copyOf(batchOffsets, batchOffsets.length * 2);
+			batchLineNumbers = Arrays.copyOf(batchLineNumbers, batchLineNumbers.length * 2);
+		}
+		batchOffsets[numBatches] = offset;
+		batchLineNumbers[numBatches] = lineNumber;
+		numBatches++;
+	}
+
+	/**
+	 * Reads and parses a batch of the file, where indices past the number of batches continue into further epochs
+	 * @throws IllegalStateException if the file has no examples
+	 */
+	@Override
+	public FullDataSet getBatch(int batchIndex) {
+		assert batchIndex >= 0;
+		if (numBatches == 0) {
+			throw new IllegalStateException("File has no examples");
+		}
+
+		batchIndex %= numBatches;
+		long start = batchOffsets[batchIndex];
+		long end = batchOffsets[batchIndex + 1];
+		if (end - start > Integer.MAX_VALUE) {
+			throw new UncheckedIOException(new IOException("Batch " + batchIndex + " is larger than 2 GiB"));
+		}
+		byte[] bytes = new byte[(int) (end - start)];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		try {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) < 0) {
+					throw new IOException("File was truncated after it was opened");
+				}
+			}
+			int batchExamples = (int) Math.min(batchSize, numExamples - (long) batchIndex * batchSize);
+			return reader.parseBatch(bytes, 0, bytes.length, numColumns, batchExamples, batchLineNumbers[batchIndex], numLabels);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public int numBatches() {
+		return numBatches;
+	}
+
+	public long numExamples() {
+		return numExamples;
+	}
+
+	/**
+	 * Returns the number of values of every line (features and targets)
+	 */
+	public int numColumns() {
+		return numColumns;
+	}
+
+	/**
+	 * Returns the number of labels every batch is created with (or null if the labels of every batch are counted separately)
+	 */
+	public Integer numLabels() {
+		return numLabels;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,201 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import com.github.chen.wentao.mllib.training.BatchFullDataSetStream;
+import com.github.chen.wentao.mllib.training.DataSet;
+import com.github.chen.wentao.mllib.training.DataSetTarget;
+import com.github.chen.wentao.mllib.training.FullDataSet;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stream of batches of a {@link DataSetFile} read through memory mappings of the file, so data sets larger than the heap
+ * can be trained on with the operating system paging the file in and out.
+ * The feature and target blocks are each mapped in segments of whole rows of at most 1 GiB because a single mapping is limited to 2 GiB.
+ * Batches are bulk copied from the mapping into new matrices since EJML matrices are backed by on-heap {@code double[]} arrays.
+ * Reads use absolute positions only, so batches may be read concurrently.
+ */
+public class MappedDataSetStream implements BatchFullDataSetStream, Closeable {
+
+	private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+	private final FileChannel channel;
+	private final int batchSize;
+	private final long numExamples;
+	private final int numFeatures;
+	private final int numTargetColumns;
+	private final int numLabels;
+	private final boolean float32;
+	private final Block features;
+	private final Block targets;
+
+	MappedDataSetStream(Path path, int batchSize) throws IOException {
+		this(path, batchSize, MAX_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param maxSegmentSize the maximum number of bytes of a mapped segment (a segment holds at least one row even if it is larger)
+	 */
+	MappedDataSetStream(Path path, int batchSize, long maxSegmentSize) throws IOException {
+		assert batchSize > 0 && maxSegmentSize > 0;
+
+		this.batchSize = batchSize;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(DataSetFile.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					throw new IOException("File is too short to be a data set file: " + path);
+				}
+			}
+			if (header.getInt(0) != DataSetFile.MAGIC) {
+				throw new IOException("Not a data set file: " + path);
+			}
+			if (header.getInt(4) != DataSetFile.VERSION) {
+				throw new IOException("Unsupported data set file version " + header.getInt(4) + ": " + path);
+			}
+			this.float32 = (header.getInt(8) & DataSetFile.FLAG_FLOAT32) != 0;
+			this.numFeatures = header.getInt(12);
+			this.numExamples = header.getLong(16);
+			this.numTargetColumns = header.getInt(24);
+			this.numLabels = header.getInt(28);
+			int valueSize = float32 ? Float.BYTES : Double.BYTES;
+			this.features = new Block(channel, header.getLong(32), numExamples, (long) numFeatures * valueSize, maxSegmentSize);
+			this.targets = new Block(channel, header.getLong(40), numExamples, (long) numTargetColumns * valueSize, maxSegmentSize);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads a batch of the file, where indices past the number of batches continue into further epochs
+	 * @throws IllegalStateException if the file has no examples
+	 */
+	@Override
+	public FullDataSet getBatch(int batchIndex) {
+		assert batchIndex >= 0;
+		if (numExamples == 0) {
+			throw new IllegalStateException("Data set file has no examples");
+		}
+
+		long start = (long) (batchIndex % numBatches()) * batchSize;
+		int m = (int) Math.min(batchSize, numExamples - start);
+		return read(start, m);
+	}
+
+	/**
+	 * Reads a range of examples into memory
+	 * @param start the index of the first example
+	 * @param m the number of examples
+	 * @return the examples
+	 */
+	public FullDataSet read(long start, int m) {
+		assert start >= 0 && m >= 0 && start + m <= numExamples;
+
+		double[] featureData = new double[m * numFeatures];
+		double[] targetData = new double[m * numTargetColumns];
+		features.read(start, m, numFeatures, featureData, float32);
+		targets.read(start, m, numTargetColumns, targetData, float32);
+		return new FullDataSet(
+				new DataSet(SimpleMatrix.wrap(DMatrixRMaj.wrap(m, numFeatures, featureData))),
+				new DataSetTarget(SimpleMatrix.wrap(DMatrixRMaj.wrap(m, numTargetColumns, targetData)), numLabels)
+		);
+	}
+
+	@Override
+	public int numBatches() {
+		return (int) ((numExamples + batchSize - 1) / batchSize);
+	}
+
+	public long numExamples() {
+		return numExamples;
+	}
+
+	public int numFeatures() {
+		return numFeatures;
+	}
+
+	public int numTargetColumns() {
+		return numTargetColumns;
+	}
+
+	public int numLabels() {
+		return numLabels;
+	}
+
+	public boolean isFloat32() {
+		return float32;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Row-major block of the file mapped in segments of whole rows
+	 */
+	private static class Block {
+
+		private final MappedByteBuffer[] segments;
+		private final long rowSize;
+		private final long rowsPerSegment;
+
+		private Block(FileChannel channel, long offset, long rows, long rowSize, long maxSegmentSize) throws IOException {
+			if (offset < DataSetFile.HEADER_SIZE || offset + rows * rowSize > channel.size()) {
+				throw new IOException("Data set file is truncated");
+			}
+			this.rowSize = rowSize;
+			this.rowsPerSegment = rowSize == 0 ? Math.max(rows, 1) : Math.max(1, maxSegmentSize / rowSize);
+			int numSegments = (int) ((rows + rowsPerSegment - 1) / rowsPerSegment);
+			this.segments = new MappedByteBuffer[numSegments];
+			for (int i = 0; i < numSegments; i++) {
+				long segmentRows = Math.min(rowsPerSegment, rows - i * rowsPerSegment);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + i * rowsPerSegment * rowSize, segmentRows * rowSize);
+				segments[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+
+		/**
+		 * Copies a range of rows into an array with one bulk copy per segment the rows span
+		 * @param start the index of the first row
+		 * @param rows the number of rows
+		 * @param columns the number of values of every row
+		 * @param destination the array the row-major (rows) x (columns) values are written to
+		 * @param float32 true if the values are stored in single precision
+		 */
+		private void read(long start, int rows, int columns, double[] destination, boolean float32) {
+			float[] floats = float32 ? new float[rows * columns] : null;
+			int k = 0;
+			for (long row = start, end = start + rows; row < end; ) {
+				long segmentRow = row % rowsPerSegment;
+				int segmentRows = (int) Math.min(end - row, rowsPerSegment - segmentRow);
+				int count = segmentRows * columns;
+				ByteBuffer segment = segments[(int) (row / rowsPerSegment)].duplicate().order(ByteOrder.LITTLE_ENDIAN); // Own position, so reads may be concurrent
+				((Buffer) segment).position((int) (segmentRow * rowSize));
+				if (float32) {
+					segment.asFloatBuffer().get(floats, k, count);
+				} else {
+					segment.asDoubleBuffer().get(destination, k, count);
+				}
+				k += count;
+				row += segmentRows;
+			}
+			if (float32) {
+				for (int i = 0; i < k; i++) {
+					destination[i] = floats[i];
+				}
+			}
+		}
+	}
+}
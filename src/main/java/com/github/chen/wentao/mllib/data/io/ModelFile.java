@@ -0,0 +1,353 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import com.github.chen.wentao.mllib.data.scaling.FeatureMeanNormalizer;
+import com.github.chen.wentao.mllib.data.scaling.FeatureRescaler;
+import com.github.chen.wentao.mllib.data.scaling.FeatureScaler;
+import com.github.chen.wentao.mllib.data.scaling.FeatureStandardizer;
+import com.github.chen.wentao.mllib.training.Activation;
+import com.github.chen.wentao.mllib.training.FeatureParameters;
+import com.github.chen.wentao.mllib.training.NeuralNetwork;
+import org.ejml.simple.SimpleMatrix;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Single-file binary format for trained models, which is read through a memory mapping without Java serialization.
+ * <p>
+ * All values are little-endian. The file starts with a {@value #HEADER_SIZE} byte header:
+ * <pre>
+ *  0  int   magic ("MLMD")
+ *  4  int   version
+ *  8  int   model type (1 = neural network, 2 = feature parameters, 3 = mean normalizer, 4 = rescaler, 5 = standardizer)
+ * 12  int   flags (bit 0 set if values are stored as float32 instead of float64)
+ * 16  int   number of blocks
+ * 24  long  size of the payload (every byte after the header)
+ * 32  long  CRC-32 of the payload
+ * </pre>
+ * followed by the payload: a table of {@value #BLOCK_DESCRIPTOR_SIZE} byte block descriptors
+ * <pre>
+ *  0  int   number of rows
+ *  4  int   number of columns
+ *  8  int   activation function of the layer of a neural network (0 = sigmoid, 1 = tanh, 2 = ReLU, 3 = leaky ReLU, 4 = softmax) or -1
+ * 16  long  offset of the values of the block from the start of the file
+ * </pre>
+ * and the values of every block as a row-major matrix, aligned to 8 bytes.
+ * A neural network has one block per layer holding its weights with the bias weights in the first column,
+ * feature parameters have a single (n + 1) x (1) block (with the bias parameter first), and feature scalers have two (1) x (n) blocks in the order of their constructor parameters.
+ * <p>
+ * Files are written to a temporary file which then replaces the destination, so a file being replaced is never read half written.
+ */
+public class ModelFile {
+
+	static final int MAGIC = 0x444D4C4D; // "MLMD" in little-endian
+	static final int VERSION = 1;
+	static final int FLAG_FLOAT32 = 1;
+	static final int HEADER_SIZE = 64;
+	static final int BLOCK_DESCRIPTOR_SIZE = 24;
+
+	static final int TYPE_NEURAL_NETWORK = 1;
+	static final int TYPE_FEATURE_PARAMETERS = 2;
+	static final int TYPE_MEAN_NORMALIZER = 3;
+	static final int TYPE_RESCALER = 4;
+	static final int TYPE_STANDARDIZER = 5;
+
+	private static final Activation[] ACTIVATION_CODES = {Activation.SIGMOID, Activation.TANH, Activation.RELU, Activation.LEAKY_RELU, Activation.SOFTMAX};
+
+	/**
+	 * Writes a neural network to a file
+	 * @param path the file to be written
+	 * @param network the network
+	 * @param float32 true to store weights as float32, which halves the file size at the cost of precision
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Path path, NeuralNetwork network, boolean float32) throws IOException {
+		SimpleMatrix[] thetas = network.getThetas();
+		int[] activationCodes = new int[thetas.length];
+		for (int i = 0; i < thetas.length; i++) {
+			activationCodes[i] = activationCode(network.getActivation(i + 1));
+		}
+		write(path, TYPE_NEURAL_NETWORK, thetas, activationCodes, float32);
+	}
+
+	/**
+	 * Writes feature parameters to a file
+	 * @param path the file to be written
+	 * @param parameters the parameters
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Path path, FeatureParameters parameters) throws IOException {
+		write(path, TYPE_FEATURE_PARAMETERS, new SimpleMatrix[] {parameters.getMatrix()}, null, false);
+	}
+
+	/**
+	 * Writes a feature scaler to a file
+	 * @param path the file to be written
+	 * @param scaler a {@link FeatureMeanNormalizer}, {@link FeatureRescaler} or {@link FeatureStandardizer}
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Path path, FeatureScaler scaler) throws IOException {
+		if (scaler instanceof FeatureMeanNormalizer) {
+			FeatureMeanNormalizer normalizer = (FeatureMeanNormalizer) scaler;
+			write(path, TYPE_MEAN_NORMALIZER, new SimpleMatrix[] {normalizer.getColumnMeans(), normalizer.getColumnRanges()}, null, false);
+		} else if (scaler instanceof FeatureRescaler) {
+			FeatureRescaler rescaler = (FeatureRescaler) scaler;
+			write(path, TYPE_RESCALER, new SimpleMatrix[] {rescaler.getColumnMin(), rescaler.getColumnRanges()}, null, false);
+		} else if (scaler instanceof FeatureStandardizer) {
+			FeatureStandardizer standardizer = (FeatureStandardizer) scaler;
+			write(path, TYPE_STANDARDIZER, new SimpleMatrix[] {standardizer.getColumnMeans(), standardizer.getColumnStandardDeviations()}, null, false);
+		} else {
+			throw new IllegalArgumentException("Unsupported feature scaler: " + scaler.getClass().getName());
+		}
+	}
+
+	private static void write(Path path, int type, SimpleMatrix[] blocks, int[] activationCodes, boolean float32) throws IOException {
+		int valueSize = float32 ? Float.BYTES : Double.BYTES;
+		long[] offsets = new long[blocks.length];
+		long size = HEADER_SIZE + (long) blocks.length * BLOCK_DESCRIPTOR_SIZE;
+		for (int i = 0; i < blocks.length; i++) {
+			size = align(size);
+			offsets[i] = size;
+			size += (long) blocks[i].getNumElements() * valueSize;
+		}
+		size = align(size);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Model is too large for a model file: " + size + " bytes");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < blocks.length; i++) {
+			int descriptor = HEADER_SIZE + i * BLOCK_DESCRIPTOR_SIZE;
+			buffer.putInt(descriptor, blocks[i].numRows());
+			buffer.putInt(descriptor + 4, blocks[i].numCols());
+			buffer.putInt(descriptor + 8, activationCodes == null ? -1 : activationCodes[i]);
+			buffer.putLong(descriptor + 16, offsets[i]);
+
+			double[] values = blocks[i].getDDRM().data;
+			int offset = (int) offsets[i];
+			for (int k = 0, count = blocks[i].getNumElements(); k < count; k++) {
+				if (float32) {
+					buffer.putFloat(offset + k * valueSize, (float) values[k]);
+				} else {
+					buffer.putDouble(offset + k * valueSize, values[k]);
+				}
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), HEADER_SIZE, (int) size - HEADER_SIZE);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, type);
+		buffer.putInt(12, float32 ? FLAG_FLOAT32 : 0);
+		buffer.putInt(16, blocks.length);
+		buffer.putLong(24, size - HEADER_SIZE);
+		buffer.putLong(32, crc.getValue());
+
+		Path absolutePath = path.toAbsolutePath();
+		Path temporaryPath = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(temporaryPath, absolutePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporaryPath);
+		}
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	/**
+	 * Reads a neural network from a file
+	 * @param path the file to be read
+	 * @return the network
+	 * @throws IOException if the file cannot be read, is corrupted or does not hold a neural network
+	 */
+	public static NeuralNetwork readNeuralNetwork(Path path) throws IOException {
+		ModelReader reader = new ModelReader(path, TYPE_NEURAL_NETWORK);
+		int layers = reader.numBlocks();
+		if (layers < 1) {
+			throw new IOException("Neural network has no layers: " + path);
+		}
+		SimpleMatrix[] thetas = new SimpleMatrix[layers];
+		Activation[] activationFunctions = new Activation[layers];
+		for (int i = 0; i < layers; i++) {
+			thetas[i] = reader.block(i);
+			if (i > 0 && thetas[i - 1].numRows() + 1 != thetas[i].numCols()) {
+				throw new IOException("Layer " + (i + 1) + " does not match the number of neurons of the previous layer: " + path);
+			}
+			int code = reader.activationCode(i);
+			if (code < 0 || code >= ACTIVATION_CODES.length) {
+				throw new IOException("Unknown activation function " + code + " of layer " + (i + 1) + ": " + path);
+			}
+			activationFunctions[i] = ACTIVATION_CODES[code];
+			if (i < layers - 1 ? !activationFunctions[i].isHiddenActivation() : !activationFunctions[i].isOutputActivation()) {
+				throw new IOException("Activation function " + activationFunctions[i] + " is not supported in layer " + (i + 1) + ": " + path);
+			}
+		}
+		return new NeuralNetwork(thetas, activationFunctions);
+	}
+
+	/**
+	 * Reads feature parameters from a file
+	 * @param path the file to be read
+	 * @return the parameters
+	 * @throws IOException if the file cannot be read, is corrupted or does not hold feature parameters
+	 */
+	public static FeatureParameters readFeatureParameters(Path path) throws IOException {
+		ModelReader reader = new ModelReader(path, TYPE_FEATURE_PARAMETERS);
+		SimpleMatrix theta = reader.block(0);
+		if (reader.numBlocks() != 1 || theta.numCols() != 1) {
+			throw new IOException("Feature parameters are not a vector: " + path);
+		}
+		return new FeatureParameters(theta);
+	}
+
+	/**
+	 * Reads a feature scaler from a file. A scaler read from a file has no normalized data set.
+	 * @param path the file to be read
+	 * @return a {@link FeatureMeanNormalizer}, {@link FeatureRescaler} or {@link FeatureStandardizer}
+	 * @throws IOException if the file cannot be read, is corrupted or does not hold a feature scaler
+	 */
+	public static FeatureScaler readFeatureScaler(Path path) throws IOException {
+		ModelReader reader = new ModelReader(path, TYPE_MEAN_NORMALIZER, TYPE_RESCALER, TYPE_STANDARDIZER);
+		if (reader.numBlocks() != 2) {
+			throw new IOException("Feature scaler must have 2 blocks: " + path);
+		}
+		SimpleMatrix first = reader.block(0);
+		SimpleMatrix second = reader.block(1);
+		if (first.numRows() != 1 || second.numRows() != 1 || first.numCols() != second.numCols()) {
+			throw new IOException("Feature scaler parameters are not row vectors of the same length: " + path);
+		}
+		switch (reader.type()) {
+			case TYPE_MEAN_NORMALIZER:
+				return new FeatureMeanNormalizer(first, second);
+			case TYPE_RESCALER:
+				return new FeatureRescaler(first, second);
+			default:
+				return new FeatureStandardizer(first, second);
+		}
+	}
+
+	private static int activationCode(Activation activation) {
+		for (int code = 0; code < ACTIVATION_CODES.length; code++) {
+			if (ACTIVATION_CODES[code] == activation) {
+				return code;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported activation function: " + activation);
+	}
+
+	/**
+	 * Validated memory mapping of a model file
+	 */
+	private static class ModelReader {
+
+		private final Path path;
+		private final MappedByteBuffer buffer;
+		private final int type;
+		private final boolean float32;
+		private final int numBlocks;
+
+		ModelReader(Path path, int... types) throws IOException {
+			this.path = path;
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size < HEADER_SIZE) {
+					throw new IOException("File is too short to be a model file: " + path);
+				}
+				if (size > Integer.MAX_VALUE) {
+					throw new IOException("File is too large to be a model file: " + path);
+				}
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a model file: " + path);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported model file version " + buffer.getInt(4) + ": " + path);
+			}
+			type = buffer.getInt(8);
+			boolean supported = false;
+			for (int expected : types) {
+				supported |= type == expected;
+			}
+			if (!supported) {
+				throw new IOException("Model file holds a different type of model (" + type + "): " + path);
+			}
+			float32 = (buffer.getInt(12) & FLAG_FLOAT32) != 0;
+			numBlocks = buffer.getInt(16);
+			long payloadSize = buffer.getLong(24);
+			if (payloadSize != buffer.capacity() - HEADER_SIZE) {
+				throw new IOException("Model file is truncated: " + path);
+			}
+			if (numBlocks < 0 || (long) numBlocks * BLOCK_DESCRIPTOR_SIZE > payloadSize) {
+				throw new IOException("Model file has an invalid number of blocks: " + path);
+			}
+
+			ByteBuffer payload = buffer.duplicate();
+			((Buffer) payload).position(HEADER_SIZE);
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			if (crc.getValue() != buffer.getLong(32)) {
+				throw new IOException("Model file checksum does not match: " + path);
+			}
+		}
+
+		int type() {
+			return type;
+		}
+
+		int numBlocks() {
+			return numBlocks;
+		}
+
+		int activationCode(int block) {
+			return buffer.getInt(HEADER_SIZE + block * BLOCK_DESCRIPTOR_SIZE + 8);
+		}
+
+		SimpleMatrix block(int index) throws IOException {
+			if (index >= numBlocks) {
+				throw new IOException("Model file is missing block " + index + ": " + path);
+			}
+			int descriptor = HEADER_SIZE + index * BLOCK_DESCRIPTOR_SIZE;
+			int rows = buffer.getInt(descriptor);
+			int cols = buffer.getInt(descriptor + 4);
+			long offset = buffer.getLong(descriptor + 16);
+			int valueSize = float32 ? Float.BYTES : Double.BYTES;
+			if (rows < 0 || cols < 0 || offset < HEADER_SIZE || offset + (long) rows * cols * valueSize > buffer.capacity()) {
+				throw new IOException("Block " + index + " of model file is out of bounds: " + path);
+			}
+			double[] values = new double[rows * cols];
+			ByteBuffer block = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			((Buffer) block).position((int) offset);
+			if (float32) {
+				float[] floats = new float[values.length];
+				block.asFloatBuffer().get(floats);
+				for (int k = 0; k < values.length; k++) {
+					values[k] = floats[k];
+				}
+			} else {
+				block.asDoubleBuffer().get(values);
+			}
+			return new SimpleMatrix(rows, cols, true, values);
+		}
+	}
+}
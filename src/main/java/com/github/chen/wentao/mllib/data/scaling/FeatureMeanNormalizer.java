@@ -17,6 +17,28 @@ public class FeatureMeanNormalizer implements FeatureScaler {
 		this.normalizedDataSet = normalize(data);
 	}
 
+	/**
+	 * Restores a scaler from its parameters, such as ones read from a model file.
+	 * A restored scaler has no normalized data set.
+	 * @param columnMeans (1) x (n) means of every feature
+	 * @param columnRanges (1) x (n) ranges of every feature
+	 */
+	public FeatureMeanNormalizer(SimpleMatrix columnMeans, SimpleMatrix columnRanges) {
+		assert(columnMeans.numRows() == 1 && columnRanges.numRows() == 1 && columnMeans.numCols() == columnRanges.numCols());
+
+		this.columnMeans = columnMeans;
+		this.columnRanges = columnRanges;
+		this.normalizedDataSet = null;
+	}
+
+	public SimpleMatrix getColumnMeans() {
+		return columnMeans;
+	}
+
+	public SimpleMatrix getColumnRanges() {
+		return columnRanges;
+	}
+
 	@Override
 	public DataSet getNormalizedDataSet() {
 		return normalizedDataSet;
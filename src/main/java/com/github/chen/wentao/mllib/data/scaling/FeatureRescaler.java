@@ -17,6 +17,28 @@ public class FeatureRescaler implements FeatureScaler {
 		this.normalizedDataSet = normalize(data);
 	}
 
+	/**
+	 * Restores a scaler from its parameters, such as ones read from a model file.
+	 * A restored scaler has no normalized data set.
+	 * @param columnMin (1) x (n) minimums of every feature
+	 * @param columnRanges (1) x (n) ranges of every feature
+	 */
+	public FeatureRescaler(SimpleMatrix columnMin, SimpleMatrix columnRanges) {
+		assert(columnMin.numRows() == 1 && columnRanges.numRows() == 1 && columnMin.numCols() == columnRanges.numCols());
+
+		this.columnMin = columnMin;
+		this.columnRanges = columnRanges;
+		this.normalizedDataSet = null;
+	}
+
+	public SimpleMatrix getColumnMin() {
+		return columnMin;
+	}
+
+	public SimpleMatrix getColumnRanges() {
+		return columnRanges;
+	}
+
 	@Override
 	public DataSet getNormalizedDataSet() {
 		return normalizedDataSet;
@@ -20,6 +20,28 @@ public class FeatureStandardizer implements FeatureScaler {
 		this.normalizedDataSet = normalize(data);
 	}
 
+	/**
+	 * Restores a scaler from its parameters, such as ones read from a model file.
+	 * A restored scaler has no normalized data set.
+	 * @param columnMeans (1) x (n) means of every feature
+	 * @param columnStandardDeviations (1) x (n) standard deviations of every feature
+	 */
+	public FeatureStandardizer(SimpleMatrix columnMeans, SimpleMatrix columnStandardDeviations) {
+		assert(columnMeans.numRows() == 1 && columnStandardDeviations.numRows() == 1 && columnMeans.numCols() == columnStandardDeviations.numCols());
+
+		this.columnMeans = columnMeans;
+		this.columnStandardDeviations = columnStandardDeviations;
+		this.normalizedDataSet = null;
+	}
+
+	public SimpleMatrix getColumnMeans() {
+		return columnMeans;
+	}
+
+	public SimpleMatrix getColumnStandardDeviations() {
+		return columnStandardDeviations;
+	}
+
 	@Override
 	public DataSet getNormalizedDataSet() {
 		return normalizedDataSet;
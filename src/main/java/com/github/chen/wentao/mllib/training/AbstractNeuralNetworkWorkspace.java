@@ -0,0 +1,211 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.ReshapeMatrix;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Shape bookkeeping shared by the workspaces which train a {@link NeuralNetwork} in a given precision.
+ * Every buffer whose number of columns is the batch size is registered with {@link #setBatchBuffers(ReshapeMatrix...)} and reshaped
+ * when a batch is loaded, so buffers only grow when a batch larger than any previous batch is loaded.
+ * The gradients are always kept in double precision.
+ */
+abstract class AbstractNeuralNetworkWorkspace implements BackPropagator {
+
+	final int[] numNeurons;
+	final Activation[] activationFunctions; // Activation function of layer i + 1
+	final DMatrixRMaj[] grads; // gradients with the same dimensions as thetas[i]
+	private ReshapeMatrix[] batchBuffers; // Buffers with one column per example of the batch
+	int batchSize;
+
+	AbstractNeuralNetworkWorkspace(SimpleMatrix[] thetas, Activation[] activationFunctions) {
+		assert thetas.length == activationFunctions.length;
+
+		this.activationFunctions = activationFunctions.clone();
+		final int layers = thetas.length + 1;
+		numNeurons = new int[layers];
+		numNeurons[0] = thetas[0].numCols() - 1;
+		for (int i = 1; i < layers; i++) {
+			numNeurons[i] = thetas[i - 1].numRows();
+		}
+		grads = new DMatrixRMaj[thetas.length];
+		for (int i = 0; i < thetas.length; i++) {
+			grads[i] = new DMatrixRMaj(thetas[i].numRows(), thetas[i].numCols());
+		}
+	}
+
+	/**
+	 * Registers the buffers which have one column per example of the batch
+	 * @param batchBuffers the buffers reshaped whenever a batch is loaded
+	 */
+	void setBatchBuffers(ReshapeMatrix... batchBuffers) {
+		this.batchBuffers = batchBuffers;
+	}
+
+	/**
+	 * Returns whether {@code this} workspace has the correct dimensions for a network
+	 * @param thetas the weights of the network
+	 * @param activationFunctions the activation function of every layer of the network except the input layer
+	 * @return true if the network has the same number of neurons and activation function in every layer as this workspace
+	 */
+	boolean matches(SimpleMatrix[] thetas, Activation[] activationFunctions) {
+		if (thetas.length + 1 != numNeurons.length || thetas[0].numCols() - 1 != numNeurons[0]) {
+			return false;
+		}
+		if (!Arrays.equals(activationFunctions, this.activationFunctions)) {
+			return false;
+		}
+		for (int i = 0; i < thetas.length; i++) {
+			if (thetas[i].numRows() != numNeurons[i + 1] || thetas[i].numCols() != numNeurons[i] + 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Copies a range of training examples into the input layer and the target buffer
+	 * @param dataSet (m) x (s0) matrix of training examples
+	 * @param target (m) x (sL) matrix of target values
+	 * @param rowStart the index of the first example (inclusive)
+	 * @param rowEnd the index of the last example (exclusive)
+	 */
+	@Override
+	public void loadBatch(DMatrixRMaj dataSet, DMatrixRMaj target, int rowStart, int rowEnd) {
+		assert 0 <= rowStart && rowStart < rowEnd && rowEnd <= dataSet.numRows;
+
+		loadBatch(dataSet, target, null, rowStart, rowEnd);
+	}
+
+	/**
+	 * Copies a subset of training examples into the input layer and the target buffer
+	 * @param dataSet (m) x (s0) matrix of training examples
+	 * @param target (m) x (sL) matrix of target values
+	 * @param rows the indices of the examples of the batch
+	 */
+	@Override
+	public void loadBatch(DMatrixRMaj dataSet, DMatrixRMaj target, int[] rows) {
+		assert rows.length > 0;
+
+		loadBatch(dataSet, target, rows, 0, rows.length);
+	}
+
+	/**
+	 * Copies training examples into the input layer and the target buffer
+	 * @param dataSet (m) x (s0) matrix of training examples
+	 * @param target (m) x (sL) matrix of target values
+	 * @param rows the indices of the examples (or null to select the examples from start to end directly)
+	 * @param start the index of the first example in rows (inclusive)
+	 * @param end the index of the last example in rows (exclusive)
+	 */
+	void loadBatch(DMatrixRMaj dataSet, DMatrixRMaj target, int[] rows, int start, int end) {
+		assert dataSet.numCols == numNeurons[0]; // correct number of input features
+		assert target.numCols == numNeurons[numNeurons.length - 1]; // correct number of output neurons
+
+		reshape(end - start);
+		copyExamples(dataSet, target, rows, start, end);
+	}
+
+	private void reshape(int batchSize) {
+		this.batchSize = batchSize;
+		for (ReshapeMatrix buffer : batchBuffers) {
+			buffer.reshape(buffer.getNumRows(), batchSize);
+		}
+	}
+
+	/**
+	 * Copies training examples into the reshaped input layer (below its bias row) and target buffer, one column per example
+	 * @param dataSet (m) x (s0) matrix of training examples
+	 * @param target (m) x (sL) matrix of target values
+	 * @param rows the indices of the examples (or null to select the examples from start to end directly)
+	 * @param start the index of the first example in rows (inclusive)
+	 * @param end the index of the last example in rows (exclusive)
+	 */
+	abstract void copyExamples(DMatrixRMaj dataSet, DMatrixRMaj target, int[] rows, int start, int end);
+
+	/**
+	 * Computes the activation values of every layer for the loaded batch
+	 * @param thetas the weights of the network
+	 */
+	abstract void feedForward(DMatrixRMaj[] thetas);
+
+	/**
+	 * Computes the sum of the unregularized gradients over every example of the loaded batch into the double precision gradients.
+	 * {@link #feedForward(DMatrixRMaj[])} must be called first.
+	 * @param thetas the weights of the network
+	 */
+	abstract void computeGradientSums(DMatrixRMaj[] thetas);
+
+	/**
+	 * Computes the unregularized cost summed over every example of the loaded batch.
+	 * {@link #feedForward(DMatrixRMaj[])} must be called first.
+	 * @return the sum of the cost of every example
+	 */
+	abstract double costSum();
+
+	/**
+	 * Adds the regularization term to the gradient sums and averages them over a number of examples
+	 * @param thetas the weights of the network
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param m the number of examples the gradients were summed over
+	 */
+	void regularize(DMatrixRMaj[] thetas, double lambda, double m) {
+		for (int i = 0; i < grads.length; i++) {
+			DMatrixRMaj grad = grads[i];
+			if (lambda > 0) {
+				double[] theta = thetas[i].data;
+				int cols = grad.numCols;
+				for (int k = 0, size = grad.getNumElements(); k < size; k++) {
+					if (k % cols != 0) { // By convention, bias weights are not penalized
+						grad.data[k] += lambda * theta[k];
+					}
+				}
+			}
+			CommonOps_DDRM.divide(grad, m);
+		}
+	}
+
+	/**
+	 * Computes the regularized gradients of the loaded batch
+	 * @param thetas the weights of the network
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 */
+	@Override
+	public void backPropagation(DMatrixRMaj[] thetas, double lambda) {
+		feedForward(thetas);
+		computeGradientSums(thetas);
+		regularize(thetas, lambda, batchSize);
+	}
+
+	@Override
+	public DMatrixRMaj[] getGradients() {
+		return grads;
+	}
+
+	@Override
+	public double cost(DMatrixRMaj[] thetas, double lambda) {
+		return (costSum() + regularizationCost(thetas, lambda)) / batchSize;
+	}
+
+	static double regularizationCost(DMatrixRMaj[] thetas, double lambda) {
+		double regularizationCost = 0.0;
+		if (lambda > 0) {
+			for (DMatrixRMaj theta : thetas) {
+				for (int k = 0, size = theta.getNumElements(); k < size; k++) {
+					if (k % theta.numCols != 0) { // By convention, bias weights are not penalized
+						regularizationCost += theta.data[k] * theta.data[k];
+					}
+				}
+			}
+			regularizationCost *= lambda / 2.0;
+		}
+		return regularizationCost;
+	}
+}
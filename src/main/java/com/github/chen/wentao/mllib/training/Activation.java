@@ -0,0 +1,247 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.data.Activations;
+
+/**
+ * Activation function of the neurons of a layer of a {@link NeuralNetwork}.
+ * Activations are computed in place on (s) x (m) blocks of weighted inputs with one example per column,
+ * and derivatives are computed from the activations so back propagation never evaluates the function again.
+ * <p>
+ * The output layer must use {@link #SIGMOID} (with the binary cross-entropy cost of every output)
+ * or {@link #SOFTMAX} (with the categorical cross-entropy cost of the outputs of every example).
+ * For both, the error of the output layer is the difference between the activations and the target values.
+ */
+public enum Activation {
+
+	SIGMOID {
+		@Override
+		public void apply(double[] data, int offset, int rows, int cols) {
+			Activations.sigmoid(data, offset, data, offset, rows * cols);
+		}
+
+		@Override
+		public void backward(double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+			Activations.sigmoidBackward(errors, errorOffset, activations, activationOffset, destination, destinationOffset, length);
+		}
+
+		@Override
+		public void apply(float[] data, int offset, int rows, int cols) {
+			Activations.sigmoid(data, offset, data, offset, rows * cols);
+		}
+
+		@Override
+		public void backward(float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length) {
+			Activations.sigmoidBackward(errors, errorOffset, activations, activationOffset, destination, destinationOffset, length);
+		}
+
+		@Override
+		double cost(double[] output, double[] target, int length) {
+			double cost = 0.0;
+			for (int k = 0; k < length; k++) {
+				cost -= target[k] * Math.log(output[k]) + (1.0 - target[k]) * Math.log(1.0 - output[k]);
+			}
+			return cost;
+		}
+
+		@Override
+		double cost(float[] output, float[] target, int length) {
+			double cost = 0.0;
+			for (int k = 0; k < length; k++) {
+				double y = target[k];
+				double a = clampFloatProbability(output[k]);
+				cost -= y * Math.log(a) + (1.0 - y) * Math.log(1.0 - a);
+			}
+			return cost;
+		}
+	},
+	TANH {
+		@Override
+		public void apply(double[] data, int offset, int rows, int cols) {
+			Activations.tanh(data, offset, data, offset, rows * cols);
+		}
+
+		@Override
+		public void backward(double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+			Activations.tanhBackward(errors, errorOffset, activations, activationOffset, destination, destinationOffset, length);
+		}
+
+		@Override
+		public void apply(float[] data, int offset, int rows, int cols) {
+			Activations.tanh(data, offset, data, offset, rows * cols);
+		}
+
+		@Override
+		public void backward(float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length) {
+			Activations.tanhBackward(errors, errorOffset, activations, activationOffset, destination, destinationOffset, length);
+		}
+	},
+	RELU {
+		@Override
+		public void apply(double[] data, int offset, int rows, int cols) {
+			Activations.relu(data, offset, data, offset, rows * cols);
+		}
+
+		@Override
+		public void backward(double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+			Activations.reluBackward(errors, errorOffset, activations, activationOffset, destination, destinationOffset, length);
+		}
+
+		@Override
+		public void apply(float[] data, int offset, int rows, int cols) {
+			Activations.relu(data, offset, data, offset, rows * cols);
+		}
+
+		@Override
+		public void backward(float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length) {
+			Activations.reluBackward(errors, errorOffset, activations, activationOffset, destination, destinationOffset, length);
+		}
+	},
+	/**
+	 * Rectified linear unit with a slope of {@value #LEAKY_RELU_SLOPE} for negative values, so neurons never stop learning
+	 */
+	LEAKY_RELU {
+		@Override
+		public void apply(double[] data, int offset, int rows, int cols) {
+			Activations.leakyRelu(LEAKY_RELU_SLOPE, data, offset, data, offset, rows * cols);
+		}
+
+		@Override
+		public void backward(double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+			Activations.leakyReluBackward(LEAKY_RELU_SLOPE, errors, errorOffset, activations, activationOffset, destination, destinationOffset, length);
+		}
+
+		@Override
+		public void apply(float[] data, int offset, int rows, int cols) {
+			Activations.leakyRelu((float) LEAKY_RELU_SLOPE, data, offset, data, offset, rows * cols);
+		}
+
+		@Override
+		public void backward(float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length) {
+			Activations.leakyReluBackward((float) LEAKY_RELU_SLOPE, errors, errorOffset, activations, activationOffset, destination, destinationOffset, length);
+		}
+	},
+	/**
+	 * Normalizes the outputs of every example into probabilities which sum to 1 (only supported in the output layer)
+	 */
+	SOFTMAX {
+		@Override
+		public void apply(double[] data, int offset, int rows, int cols) {
+			Activations.softmaxColumns(data, offset, rows, cols);
+		}
+
+		@Override
+		public void backward(double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length) {
+			throw new IllegalStateException("Softmax is only supported in the output layer");
+		}
+
+		@Override
+		public void apply(float[] data, int offset, int rows, int cols) {
+			Activations.softmaxColumns(data, offset, rows, cols);
+		}
+
+		@Override
+		public void backward(float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length) {
+			throw new IllegalStateException("Softmax is only supported in the output layer");
+		}
+
+		@Override
+		double cost(double[] output, double[] target, int length) {
+			double cost = 0.0;
+			for (int k = 0; k < length; k++) {
+				if (target[k] != 0.0) {
+					cost -= target[k] * Math.log(output[k]);
+				}
+			}
+			return cost;
+		}
+
+		@Override
+		double cost(float[] output, float[] target, int length) {
+			double cost = 0.0;
+			for (int k = 0; k < length; k++) {
+				if (target[k] != 0.0f) {
+					cost -= target[k] * Math.log(clampFloatProbability(output[k]));
+				}
+			}
+			return cost;
+		}
+	};
+
+	public static final double LEAKY_RELU_SLOPE = 0.01;
+
+	/**
+	 * Half the gap between 1 and the largest float below it. Single precision sigmoids round to exactly 0 or 1 long before double precision ones do,
+	 * so probabilities are kept this far from 0 and 1 before taking their logarithm.
+	 */
+	private static final double FLOAT_PROBABILITY_EPSILON = 0x1.0p-25;
+
+	/**
+	 * Replaces weighted inputs with their activations
+	 * @param data the elements of an (s) x (m) row-major block of weighted inputs of s neurons for m examples
+	 * @param offset the index of the first element of the block
+	 * @param rows the number of neurons s
+	 * @param cols the number of examples m
+	 */
+	public abstract void apply(double[] data, int offset, int rows, int cols);
+
+	/**
+	 * Multiplies the errors back propagated to the neurons of a layer by the derivative of the activation function of the layer
+	 * @param errors the errors with respect to the activations
+	 * @param errorOffset the index of the first error
+	 * @param activations the activations of the neurons
+	 * @param activationOffset the index of the first activation
+	 * @param destination the array the errors with respect to the weighted inputs are written to (may be one of the other arrays)
+	 * @param destinationOffset the index of the first error written
+	 * @param length the number of elements
+	 */
+	public abstract void backward(double[] errors, int errorOffset, double[] activations, int activationOffset, double[] destination, int destinationOffset, int length);
+
+	/**
+	 * Replaces single precision weighted inputs with their activations
+	 * @see #apply(double[], int, int, int)
+	 */
+	public abstract void apply(float[] data, int offset, int rows, int cols);
+
+	/**
+	 * Multiplies single precision errors by the derivative of the activation function of the layer
+	 * @see #backward(double[], int, double[], int, double[], int, int)
+	 */
+	public abstract void backward(float[] errors, int errorOffset, float[] activations, int activationOffset, float[] destination, int destinationOffset, int length);
+
+	/**
+	 * Computes the cross-entropy cost summed over the outputs of an output layer with this activation
+	 * @param output the activations of the output layer
+	 * @param target the target values with the same layout as the activations
+	 * @param length the number of elements
+	 * @return the sum of the cost of every element
+	 */
+	double cost(double[] output, double[] target, int length) {
+		throw new IllegalStateException(this + " is not supported in the output layer");
+	}
+
+	/**
+	 * Computes the cross-entropy cost of single precision activations, accumulated in double precision
+	 * @see #cost(double[], double[], int)
+	 */
+	double cost(float[] output, float[] target, int length) {
+		throw new IllegalStateException(this + " is not supported in the output layer");
+	}
+
+	private static double clampFloatProbability(float probability) {
+		return Math.min(Math.max(probability, FLOAT_PROBABILITY_EPSILON), 1.0 - FLOAT_PROBABILITY_EPSILON);
+	}
+
+	/**
+	 * Returns whether this activation can be used in the output layer
+	 */
+	public boolean isOutputActivation() {
+		return this == SIGMOID || this == SOFTMAX;
+	}
+
+	/**
+	 * Returns whether this activation can be used in a hidden layer
+	 */
+	public boolean isHiddenActivation() {
+		return this != SOFTMAX;
+	}
+}
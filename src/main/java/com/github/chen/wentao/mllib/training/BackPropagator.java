@@ -0,0 +1,46 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Computes the gradients of a {@link NeuralNetwork} for batches of training examples into reusable buffers
+ */
+interface BackPropagator {
+
+	/**
+	 * Selects a range of training examples as the current batch
+	 * @param dataSet (m) x (s0) matrix of training examples
+	 * @param target (m) x (sL) matrix of target values
+	 * @param rowStart the index of the first example (inclusive)
+	 * @param rowEnd the index of the last example (exclusive)
+	 */
+	void loadBatch(DMatrixRMaj dataSet, DMatrixRMaj target, int rowStart, int rowEnd);
+
+	/**
+	 * Selects a subset of training examples as the current batch
+	 * @param dataSet (m) x (s0) matrix of training examples
+	 * @param target (m) x (sL) matrix of target values
+	 * @param rows the indices of the examples of the batch
+	 */
+	void loadBatch(DMatrixRMaj dataSet, DMatrixRMaj target, int[] rows);
+
+	/**
+	 * Computes the regularized gradients of the current batch
+	 * @param thetas the weights of the network
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 */
+	void backPropagation(DMatrixRMaj[] thetas, double lambda);
+
+	/**
+	 * @return the gradients computed by the last call to {@link #backPropagation(DMatrixRMaj[], double)} with the same dimensions as the weights
+	 */
+	DMatrixRMaj[] getGradients();
+
+	/**
+	 * Computes the regularized cost of the current batch from the activations of the last call to {@link #backPropagation(DMatrixRMaj[], double)}
+	 * @param thetas the weights of the network used for the last back propagation
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return the cost of the current batch
+	 */
+	double cost(DMatrixRMaj[] thetas, double lambda);
+}
@@ -1,8 +1,16 @@
 package com.github.chen.wentao.mllib.training;
 
+/**
+ * Stream of batches of training examples.
+ * Trainers request batch {@code i} on their {@code i}-th iteration, so streams whose batches are read from a finite data set should treat
+ * indices past {@link #numBatches()} as further epochs over the same batches.
+ */
 public interface BatchFullDataSetStream {
 
     FullDataSet getBatch(int batchIndex);
 
+    /**
+     * @return the number of batches of one pass over the data set
+     */
     int numBatches();
 }
@@ -0,0 +1,213 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.data.Activations;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Inference-only form of a trained {@link NeuralNetwork} for serving predictions with low latency.
+ * <p>
+ * Examples are evaluated in the row-major layout they arrive in, one example per row, so inputs and outputs are never transposed and no bias column
+ * is ever concatenated: the weights of every layer are stored transposed as (s(i)) x (s(i+1)) with the bias weights folded into a separate vector
+ * which initializes the weighted inputs. Only the activations of the current and the previous layer are kept, in scratch buffers owned by each
+ * calling thread, so evaluating examples allocates nothing after the first call of a thread (except for the convenience methods which return new arrays).
+ * Layers are computed one input neuron at a time over every example of a batch, so each row of weights is read once per batch rather than once per example.
+ * <p>
+ * The weights are copied when the network is compiled, so training the network afterwards does not affect {@code this} compiled network.
+ * Instances are immutable and thread-safe.
+ */
+public final class CompiledNeuralNetwork {
+
+	private final int[] numNeurons;
+	private final Activation[] activationFunctions; // Activation function of layer i + 1
+	private final double[][] weights; // (si) x (s(i+1)) transposed weights of layer i without the bias weights
+	private final double[][] biases; // (s(i+1)) bias weights of layer i
+	private final int maxHiddenNeurons;
+	private final ThreadLocal<double[][]> scratch = ThreadLocal.withInitial(() -> new double[][] {new double[0], new double[0]});
+
+	/**
+	 * Compiles a network with the weights it has now
+	 * @param network the trained network
+	 */
+	public CompiledNeuralNetwork(NeuralNetwork network) {
+		final int layers = network.numLayers();
+		SimpleMatrix[] thetas = network.getThetas();
+		numNeurons = new int[layers];
+		activationFunctions = new Activation[layers - 1];
+		weights = new double[layers - 1][];
+		biases = new double[layers - 1][];
+		for (int i = 0; i < layers; i++) {
+			numNeurons[i] = network.numNeurons(i);
+		}
+		int maxHiddenNeurons = 0;
+		for (int i = 0; i < layers - 1; i++) {
+			activationFunctions[i] = network.getActivation(i + 1);
+			int inputs = numNeurons[i];
+			int outputs = numNeurons[i + 1];
+			double[] theta = thetas[i].getDDRM().data; // (s(i+1)) x (si + 1) with the bias weights in the first column
+			double[] weight = weights[i] = new double[inputs * outputs];
+			double[] bias = biases[i] = new double[outputs];
+			for (int j = 0; j < outputs; j++) {
+				int rowOffset = j * (inputs + 1);
+				bias[j] = theta[rowOffset];
+				for (int p = 0; p < inputs; p++) {
+					weight[p * outputs + j] = theta[rowOffset + p + 1];
+				}
+			}
+			if (i < layers - 2) {
+				maxHiddenNeurons = Math.max(maxHiddenNeurons, outputs);
+			}
+		}
+		this.maxHiddenNeurons = maxHiddenNeurons;
+	}
+
+	public int numInputs() {
+		return numNeurons[0];
+	}
+
+	public int numOutputs() {
+		return numNeurons[numNeurons.length - 1];
+	}
+
+	/**
+	 * Computes the outputs of a batch of examples without allocating
+	 * @param inputs the row-major (m) x (s0) features of the examples
+	 * @param inputOffset the index of the first feature of the first example
+	 * @param numExamples the number of examples m (greater than 0)
+	 * @param outputs the array the row-major (m) x (sL) outputs of the examples are written to
+	 * @param outputOffset the index the first output of the first example is written to
+	 */
+	public void compute(double[] inputs, int inputOffset, int numExamples, double[] outputs, int outputOffset) {
+		assert numExamples > 0;
+		assert inputOffset >= 0 && inputOffset + numExamples * numInputs() <= inputs.length;
+		assert outputOffset >= 0 && outputOffset + numExamples * numOutputs() <= outputs.length;
+
+		final int last = weights.length - 1;
+		double[][] buffers = scratch(numExamples);
+		double[] source = inputs;
+		int sourceOffset = inputOffset;
+		for (int i = 0; i <= last; i++) {
+			double[] destination = i == last ? outputs : buffers[i & 1];
+			int destinationOffset = i == last ? outputOffset : 0;
+			layer(i, source, sourceOffset, numExamples, destination, destinationOffset);
+			source = destination;
+			sourceOffset = destinationOffset;
+		}
+	}
+
+	/**
+	 * Computes the activations of a layer for a batch of examples
+	 * @param layer the index of the layer whose activations are the input
+	 * @param source the row-major (m) x (si) activations of the layer
+	 * @param sourceOffset the index of the first activation
+	 * @param m the number of examples
+	 * @param destination the array the row-major (m) x (s(i+1)) activations of the next layer are written to
+	 * @param destinationOffset the index the first activation is written to
+	 */
+	private void layer(int layer, double[] source, int sourceOffset, int m, double[] destination, int destinationOffset) {
+		final int inputs = numNeurons[layer];
+		final int outputs = numNeurons[layer + 1];
+		final double[] weight = weights[layer];
+		final double[] bias = biases[layer];
+		for (int r = 0; r < m; r++) {
+			System.arraycopy(bias, 0, destination, destinationOffset + r * outputs, outputs);
+		}
+		for (int p = 0; p < inputs; p++) {
+			int weightOffset = p * outputs;
+			for (int r = 0; r < m; r++) {
+				double value = source[sourceOffset + r * inputs + p];
+				if (value == 0.0) {
+					continue; // Rectified and sparse inputs contribute nothing
+				}
+				int rowOffset = destinationOffset + r * outputs;
+				for (int j = 0; j < outputs; j++) {
+					destination[rowOffset + j] += value * weight[weightOffset + j];
+				}
+			}
+		}
+		Activation activation = activationFunctions[layer];
+		if (activation == Activation.SOFTMAX) {
+			Activations.softmaxRows(destination, destinationOffset, m, outputs);
+		} else {
+			activation.apply(destination, destinationOffset, m, outputs); // Element-wise, so the layout does not matter
+		}
+	}
+
+	/**
+	 * Returns the scratch buffers of the calling thread, growing them to fit the hidden layers of a batch
+	 */
+	private double[][] scratch(int numExamples) {
+		double[][] buffers = scratch.get();
+		int size = numExamples * maxHiddenNeurons;
+		if (buffers[0].length < size) {
+			buffers[0] = new double[size];
+			buffers[1] = new double[size];
+		}
+		return buffers;
+	}
+
+	/**
+	 * Computes the outputs of a single example
+	 * @param features the (s0) features of the example
+	 * @return the (sL) outputs of the example
+	 */
+	public double[] compute(double... features) {
+		assert features.length == numInputs();
+
+		double[] outputs = new double[numOutputs()];
+		compute(features, 0, 1, outputs, 0);
+		return outputs;
+	}
+
+	/**
+	 * Computes the outputs of every example of a data set
+	 * @param dataSet (m) x (s0) matrix of examples
+	 * @return (m) x (sL) matrix of outputs, the same as {@link NeuralNetwork#compute(DataSet)}
+	 */
+	public SimpleMatrix compute(DataSet dataSet) {
+		SimpleMatrix matrix = dataSet.getMatrix();
+		int m = matrix.numRows();
+		double[] outputs = new double[m * numOutputs()];
+		if (m > 0) {
+			compute(matrix.getDDRM().data, 0, m, outputs, 0);
+		}
+		return new SimpleMatrix(m, numOutputs(), true, outputs);
+	}
+
+	/**
+	 * Predicts the label of a single example the same way as {@link NeuralNetwork#predict(DataSet)}
+	 * @param features the (s0) features of the example
+	 * @return 0 or 1 for networks with a single output, otherwise the index of the largest output
+	 */
+	public double predict(double... features) {
+		return label(compute(features), 0, numOutputs());
+	}
+
+	/**
+	 * Predicts the labels of every example of a data set
+	 * @param dataSet (m) x (s0) matrix of examples
+	 * @return the labels, the same as {@link NeuralNetwork#predict(DataSet)}
+	 */
+	public DataSetTarget predict(DataSet dataSet) {
+		SimpleMatrix output = compute(dataSet);
+		int outputs = numOutputs();
+		double[] data = output.getDDRM().data;
+		double[] predictions = new double[output.numRows()];
+		for (int i = 0; i < predictions.length; i++) {
+			predictions[i] = label(data, i * outputs, outputs);
+		}
+		return new DataSetTarget(new SimpleMatrix(predictions.length, 1, true, predictions), outputs == 1 ? 2 : outputs);
+	}
+
+	private static double label(double[] outputs, int offset, int numOutputs) {
+		if (numOutputs == 1) {
+			return outputs[offset] >= 0.5 ? 1.0 : 0.0;
+		}
+		int max = 0;
+		for (int j = 1; j < numOutputs; j++) {
+			if (outputs[offset + j] > outputs[offset + max]) {
+				max = j;
+			}
+		}
+		return max;
+	}
+}
@@ -0,0 +1,108 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Tracks the progress of a single training run and decides when it has converged according to a {@link ConvergencePolicy}.
+ * <p>
+ * When training over mini-batches, consecutive iterations compute the cost of different batches, whose difference is mostly noise.
+ * The relative tolerance then compares the mean cost of every batch of an epoch with that of the previous epoch instead.
+ * @param <T> the type of the trained model parameters
+ */
+class ConvergenceMonitor<T> {
+
+	private final ConvergencePolicy<T> policy;
+	private final long startTime;
+	private final int iterationsPerEpoch;
+	private double lastCost = Double.NaN;
+	private double epochCost = 0.0;
+	private int epochIterations = 0;
+	private double previousCost = Double.NaN;
+	private double bestValidationCost = Double.NaN;
+	private int checksWithoutImprovement = 0;
+	private ConvergenceReport.StopReason stopReason = ConvergenceReport.StopReason.MAX_ITERATIONS;
+
+	/**
+	 * @param policy the stopping conditions
+	 * @param iterationsPerEpoch the number of iterations over which the cost is averaged before it is compared (1 for full-batch training)
+	 */
+	ConvergenceMonitor(ConvergencePolicy<T> policy, int iterationsPerEpoch) {
+		assert iterationsPerEpoch > 0;
+
+		this.policy = policy;
+		this.startTime = System.nanoTime();
+		this.iterationsPerEpoch = iterationsPerEpoch;
+	}
+
+	boolean requiresCost() {
+		return policy.requiresCost();
+	}
+
+	/**
+	 * Records a completed iteration and checks every stopping condition of the policy
+	 * @param iterations the number of iterations completed so far
+	 * @param cost the training cost of the iteration (only used if {@link #requiresCost()})
+	 * @param gradients the gradients of the iteration
+	 * @param model the current model parameters (only used when the validation cost is checked)
+	 * @return true if training should stop
+	 */
+	boolean hasConverged(int iterations, double cost, DMatrixRMaj[] gradients, T model) {
+		if (policy.requiresGradientNorm() && gradientNorm(gradients) <= policy.getGradientNormThreshold()) {
+			return stop(ConvergenceReport.StopReason.GRADIENT_CONVERGED);
+		}
+		if (policy.requiresCost()) {
+			lastCost = cost;
+			epochCost += cost;
+			if (++epochIterations == iterationsPerEpoch) {
+				double meanCost = epochCost / iterationsPerEpoch;
+				double previousCost = this.previousCost;
+				this.previousCost = meanCost;
+				epochCost = 0.0;
+				epochIterations = 0;
+				if (Math.abs(previousCost - meanCost) <= policy.getRelativeTolerance() * Math.max(Math.abs(previousCost), Math.abs(meanCost))) {
+					return stop(ConvergenceReport.StopReason.COST_CONVERGED);
+				}
+			}
+		}
+		if (policy.getValidationCostFunction() != null && iterations % policy.getValidationInterval() == 0) {
+			double validationCost = policy.getValidationCostFunction().apply(model, policy.getValidationDataSet());
+			if (Double.isNaN(bestValidationCost) || validationCost < bestValidationCost) {
+				bestValidationCost = validationCost;
+				checksWithoutImprovement = 0;
+			} else if (++checksWithoutImprovement >= policy.getPatience()) {
+				return stop(ConvergenceReport.StopReason.VALIDATION_STOPPED);
+			}
+		}
+		if (System.nanoTime() - startTime >= policy.getTimeBudgetNanos()) {
+			return stop(ConvergenceReport.StopReason.TIME_BUDGET_EXCEEDED);
+		}
+		return false;
+	}
+
+	/**
+	 * Ends the training run and notifies the listener of the policy
+	 * @param iterations the number of iterations performed
+	 * @return the report of the training run
+	 */
+	ConvergenceReport finish(int iterations) {
+		ConvergenceReport report = new ConvergenceReport(iterations, stopReason, System.nanoTime() - startTime, lastCost, bestValidationCost);
+		policy.getListener().accept(report);
+		return report;
+	}
+
+	private boolean stop(ConvergenceReport.StopReason stopReason) {
+		this.stopReason = stopReason;
+		return true;
+	}
+
+	private static double gradientNorm(DMatrixRMaj[] gradients) {
+		double sum = 0.0;
+		for (DMatrixRMaj gradient : gradients) {
+			double[] data = gradient.data;
+			for (int i = 0, size = gradient.getNumElements(); i < size; i++) {
+				sum += data[i] * data[i];
+			}
+		}
+		return Math.sqrt(sum);
+	}
+}
@@ -0,0 +1,174 @@
+package com.github.chen.wentao.mllib.training;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Conditions under which an iterative training algorithm stops before performing its maximum number of iterations.
+ * A policy is immutable and can be shared between training runs; every run tracks its progress with its own {@link ConvergenceMonitor}.
+ * @param <T> the type of the trained model parameters
+ */
+public class ConvergencePolicy<T> {
+
+	private final double relativeTolerance;
+	private final double gradientNormThreshold;
+	private final StreamCostFunction<T> validationCostFunction;
+	private final BatchFullDataSetStream validationDataSet;
+	private final int patience;
+	private final int validationInterval;
+	private final long timeBudgetNanos;
+	private final Consumer<ConvergenceReport> listener;
+
+	private ConvergencePolicy(Builder<T> builder) {
+		this.relativeTolerance = builder.relativeTolerance;
+		this.gradientNormThreshold = builder.gradientNormThreshold;
+		this.validationCostFunction = builder.validationCostFunction;
+		this.validationDataSet = builder.validationDataSet;
+		this.patience = builder.patience;
+		this.validationInterval = builder.validationInterval;
+		this.timeBudgetNanos = builder.timeBudgetNanos;
+		this.listener = builder.listener;
+	}
+
+	/**
+	 * @param <T> the type of the trained model parameters
+	 * @return a policy which always performs the maximum number of iterations
+	 */
+	public static <T> ConvergencePolicy<T> none() {
+		return new Builder<T>().build();
+	}
+
+	/**
+	 * Starts tracking a new full-batch training run
+	 * @return a new monitor for a single training run
+	 */
+	ConvergenceMonitor<T> start() {
+		return new ConvergenceMonitor<>(this, 1);
+	}
+
+	/**
+	 * Starts tracking a new training run over mini-batches, whose costs are compared once per epoch
+	 * @param numBatches the number of batches of an epoch
+	 * @return a new monitor for a single training run
+	 */
+	ConvergenceMonitor<T> start(int numBatches) {
+		return new ConvergenceMonitor<>(this, Math.max(numBatches, 1));
+	}
+
+	boolean requiresCost() {
+		return relativeTolerance > 0;
+	}
+
+	boolean requiresGradientNorm() {
+		return gradientNormThreshold > 0;
+	}
+
+	double getRelativeTolerance() {
+		return relativeTolerance;
+	}
+
+	double getGradientNormThreshold() {
+		return gradientNormThreshold;
+	}
+
+	StreamCostFunction<T> getValidationCostFunction() {
+		return validationCostFunction;
+	}
+
+	BatchFullDataSetStream getValidationDataSet() {
+		return validationDataSet;
+	}
+
+	int getPatience() {
+		return patience;
+	}
+
+	int getValidationInterval() {
+		return validationInterval;
+	}
+
+	long getTimeBudgetNanos() {
+		return timeBudgetNanos;
+	}
+
+	Consumer<ConvergenceReport> getListener() {
+		return listener;
+	}
+
+	public static class Builder<T> {
+
+		private double relativeTolerance = 0.0;
+		private double gradientNormThreshold = 0.0;
+		private StreamCostFunction<T> validationCostFunction = null;
+		private BatchFullDataSetStream validationDataSet = null;
+		private int patience = 0;
+		private int validationInterval = 1;
+		private long timeBudgetNanos = Long.MAX_VALUE;
+		private Consumer<ConvergenceReport> listener = report -> {};
+
+		/**
+		 * Stops when the training cost changes by at most a fraction of its value between two iterations.
+		 * When training over mini-batches, the mean costs of the batches of two consecutive epochs are compared instead.
+		 * @param relativeTolerance the maximum relative change of the cost (greater than 0)
+		 * @return {@code this}
+		 */
+		public Builder<T> relativeTolerance(double relativeTolerance) {
+			assert relativeTolerance > 0 && Double.isFinite(relativeTolerance);
+			this.relativeTolerance = relativeTolerance;
+			return this;
+		}
+
+		/**
+		 * Stops when the Euclidean norm of the gradient of all parameters falls below a threshold
+		 * @param gradientNormThreshold the minimum gradient norm (greater than 0)
+		 * @return {@code this}
+		 */
+		public Builder<T> gradientNormThreshold(double gradientNormThreshold) {
+			assert gradientNormThreshold > 0 && Double.isFinite(gradientNormThreshold);
+			this.gradientNormThreshold = gradientNormThreshold;
+			return this;
+		}
+
+		/**
+		 * Stops when the cost of a validation data set has not improved for a number of consecutive checks
+		 * @param costFunction the cost function of the validation data set
+		 * @param validationDataSet the validation data set
+		 * @param patience the number of checks without improvement allowed (greater than 0)
+		 * @param interval the number of iterations between checks (greater than 0)
+		 * @return {@code this}
+		 */
+		public Builder<T> validation(StreamCostFunction<T> costFunction, BatchFullDataSetStream validationDataSet, int patience, int interval) {
+			assert patience > 0;
+			assert interval > 0;
+			this.validationCostFunction = costFunction;
+			this.validationDataSet = validationDataSet;
+			this.patience = patience;
+			this.validationInterval = interval;
+			return this;
+		}
+
+		/**
+		 * Stops when the training run has taken longer than a wall-clock time budget
+		 * @param timeBudget the maximum training time
+		 * @return {@code this}
+		 */
+		public Builder<T> timeBudget(Duration timeBudget) {
+			this.timeBudgetNanos = timeBudget.toNanos();
+			return this;
+		}
+
+		/**
+		 * Sets a listener which receives the report of every training run
+		 * @param listener the listener
+		 * @return {@code this}
+		 */
+		public Builder<T> listener(Consumer<ConvergenceReport> listener) {
+			this.listener = listener;
+			return this;
+		}
+
+		public ConvergencePolicy<T> build() {
+			return new ConvergencePolicy<>(this);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.github.chen.wentao.mllib.training;
+
+/**
+ * Summary of an iterative training run controlled by a {@link ConvergencePolicy}
+ */
+public class ConvergenceReport {
+
+	public enum StopReason {
+		/** The maximum number of iterations was performed */
+		MAX_ITERATIONS,
+		/** The relative change of the training cost fell below the tolerance */
+		COST_CONVERGED,
+		/** The norm of the gradient fell below the threshold */
+		GRADIENT_CONVERGED,
+		/** The validation cost did not improve for the number of checks allowed by the patience */
+		VALIDATION_STOPPED,
+		/** The wall-clock time budget was exhausted */
+		TIME_BUDGET_EXCEEDED
+	}
+
+	private final int iterations;
+	private final StopReason stopReason;
+	private final long elapsedNanos;
+	private final double finalCost;
+	private final double bestValidationCost;
+
+	ConvergenceReport(int iterations, StopReason stopReason, long elapsedNanos, double finalCost, double bestValidationCost) {
+		this.iterations = iterations;
+		this.stopReason = stopReason;
+		this.elapsedNanos = elapsedNanos;
+		this.finalCost = finalCost;
+		this.bestValidationCost = bestValidationCost;
+	}
+
+	/**
+	 * @return the number of iterations performed
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	public StopReason getStopReason() {
+		return stopReason;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the training cost of the last iteration or {@link Double#NaN} if the policy did not require it
+	 */
+	public double getFinalCost() {
+		return finalCost;
+	}
+
+	/**
+	 * @return the lowest validation cost or {@link Double#NaN} if the policy has no validation set
+	 */
+	public double getBestValidationCost() {
+		return bestValidationCost;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d iterations (%s) in %.3fms", iterations, stopReason, elapsedNanos / 1000000.0);
+	}
+}
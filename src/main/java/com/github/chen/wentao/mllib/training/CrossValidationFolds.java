@@ -0,0 +1,197 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Partition of a data set into k folds for k-fold cross validation.
+ * Folds are stored as arrays of example indices and the training and validation sets of every fold are views which share the matrices of the data set.
+ */
+public class CrossValidationFolds {
+
+	private final FullDataSet dataSet;
+	private final int[][] folds;
+
+	private CrossValidationFolds(FullDataSet dataSet, int[][] folds) {
+		this.dataSet = dataSet;
+		this.folds = folds;
+	}
+
+	/**
+	 * Splits a data set into k folds of shuffled examples whose sizes differ by at most 1
+	 * @param dataSet the data set to be split
+	 * @param k the number of folds (at least 2 and at most the number of examples)
+	 * @param random the source of randomness used to shuffle the examples
+	 * @return the folds
+	 */
+	public static CrossValidationFolds kFold(FullDataSet dataSet, int k, Random random) {
+		int m = dataSet.numExamples();
+		assert k >= 2 && k <= m;
+
+		int[] indices = SimpleMatrixUtil.newShuffledArray(m, random);
+		int[][] folds = new int[k][];
+		for (int fold = 0; fold < k; fold++) {
+			folds[fold] = Arrays.copyOfRange(indices, (int) ((long) m * fold / k), (int) ((long) m * (fold + 1) / k));
+			Arrays.sort(folds[fold]); // Sequential access when copying the examples
+		}
+		return new CrossValidationFolds(dataSet, folds);
+	}
+
+	/**
+	 * Splits a data set into k folds which each have about the same proportion of examples of every label
+	 * @param dataSet the data set to be split (each target value should be an integer greater or equal to 0)
+	 * @param k the number of folds (at least 2 and at most the number of examples)
+	 * @param random the source of randomness used to shuffle the examples of every label
+	 * @return the folds
+	 */
+	public static CrossValidationFolds stratifiedKFold(FullDataSet dataSet, int k, Random random) {
+		int m = dataSet.numExamples();
+		assert k >= 2 && k <= m;
+
+		DataSetTarget target = dataSet.getDataSetTarget();
+		int[] shuffled = SimpleMatrixUtil.newShuffledArray(m, random);
+		int[] labels = new int[m];
+		int numLabels = 0;
+		for (int i = 0; i < m; i++) {
+			labels[i] = target.getLabel(shuffled[i]);
+			assert labels[i] >= 0;
+			numLabels = Math.max(numLabels, labels[i] + 1);
+		}
+
+		// Counting sort by label, which is stable so the examples of a label stay shuffled
+		int[] labelStarts = new int[numLabels + 1];
+		for (int label : labels) {
+			labelStarts[label + 1]++;
+		}
+		for (int label = 0; label < numLabels; label++) {
+			labelStarts[label + 1] += labelStarts[label];
+		}
+		int[] order = new int[m];
+		for (int i = 0; i < m; i++) {
+			order[labelStarts[labels[i]]++] = shuffled[i];
+		}
+
+		// Deal the examples grouped by label to the folds in turn
+		int[][] folds = new int[k][];
+		for (int fold = 0; fold < k; fold++) {
+			folds[fold] = new int[(m - fold + k - 1) / k];
+		}
+		for (int i = 0; i < m; i++) {
+			folds[i % k][i / k] = order[i];
+		}
+		for (int[] fold : folds) {
+			Arrays.sort(fold); // Sequential access when copying the examples
+		}
+		return new CrossValidationFolds(dataSet, folds);
+	}
+
+	public int numFolds() {
+		return folds.length;
+	}
+
+	/**
+	 * @return the sorted indices of the examples held out in a fold
+	 */
+	public int[] getValidationIndices(int fold) {
+		return Arrays.copyOf(folds[fold], folds[fold].length);
+	}
+
+	/**
+	 * @return the sorted indices of the examples trained on in a fold (every example not held out)
+	 */
+	public int[] getTrainingIndices(int fold) {
+		int[] indices = new int[dataSet.numExamples() - folds[fold].length];
+		int[] heldOut = folds[fold];
+		int count = 0;
+		int next = 0;
+		for (int i = 0, m = dataSet.numExamples(); i < m; i++) {
+			if (next < heldOut.length && heldOut[next] == i) {
+				next++;
+			} else {
+				indices[count++] = i;
+			}
+		}
+		return indices;
+	}
+
+	/**
+	 * Every call to {@code getMatrix()} on the view copies its examples, so trainers should materialize it at most once.
+	 * @return a view of the examples trained on in a fold
+	 */
+	public FullDataSet getTrainingSet(int fold) {
+		return dataSet.view(getTrainingIndices(fold));
+	}
+
+	/**
+	 * Every call to {@code getMatrix()} on the view copies its examples.
+	 * @return a view of the examples held out in a fold
+	 */
+	public FullDataSet getValidationSet(int fold) {
+		return dataSet.view(folds[fold]);
+	}
+
+	/**
+	 * Trains a model on every fold concurrently and evaluates it on the examples held out of the fold.
+	 * Trainers which read their training set as a dense matrix copy about (k - 1) / k of the data set for every fold being trained,
+	 * so peak memory grows with the number of folds trained at once: pass an executor with fewer threads to bound it.
+	 * @param algorithm the learning algorithm
+	 * @param costFunction the cost function evaluated on the held out examples
+	 * @param executor the executor which trains the folds (its number of threads bounds the number of concurrent trainings and training set copies)
+	 * @return the cost of every fold
+	 */
+	public <S> CrossValidationResult crossValidate(SupervisedLearningAlgorithm<S> algorithm, CostFunction<S> costFunction, Executor executor) {
+		List<CompletableFuture<Double>> futures = IntStream.range(0, folds.length)
+				.mapToObj(fold -> CompletableFuture.supplyAsync(() -> {
+					FullDataSet training = getTrainingSet(fold);
+					FullDataSet validation = getValidationSet(fold);
+					S parameters = algorithm.findOptimalParameters(training.getDataSet(), training.getDataSetTarget());
+					return costFunction.apply(parameters, validation.getDataSet(), validation.getDataSetTarget());
+				}, executor))
+				.collect(Collectors.toList());
+		return new CrossValidationResult(futures.stream().mapToDouble(CompletableFuture::join).toArray());
+	}
+
+	public static class CrossValidationResult {
+
+		private final double[] foldCosts;
+
+		private CrossValidationResult(double[] foldCosts) {
+			this.foldCosts = foldCosts;
+		}
+
+		/**
+		 * @return the cost on the held out examples of every fold
+		 */
+		public double[] getFoldCosts() {
+			return Arrays.copyOf(foldCosts, foldCosts.length);
+		}
+
+		public double getMeanCost() {
+			return Arrays.stream(foldCosts).average().orElse(Double.NaN);
+		}
+
+		/**
+		 * @return the sample standard deviation of the fold costs
+		 */
+		public double getStandardDeviation() {
+			double mean = getMeanCost();
+			double sum = 0.0;
+			for (double cost : foldCosts) {
+				sum += (cost - mean) * (cost - mean);
+			}
+			return Math.sqrt(sum / (foldCosts.length - 1));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("CrossValidationResult{mean=%s, std=%s, folds=%s}", getMeanCost(), getStandardDeviation(), Arrays.toString(foldCosts));
+		}
+	}
+}
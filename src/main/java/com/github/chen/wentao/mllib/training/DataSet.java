@@ -8,10 +8,17 @@ import java.util.List;
 
 public class DataSet implements MatrixWrapper {
 
-	private final SimpleMatrix dataSet;
+	private final SimpleMatrix backing;
+	private final int[] rows; // Rows of the backing matrix in this data set (or null for every row)
 
 	public DataSet(SimpleMatrix theta) {
-		this.dataSet = theta;
+		this.backing = theta;
+		this.rows = null;
+	}
+
+	private DataSet(SimpleMatrix backing, int[] rows) {
+		this.backing = backing;
+		this.rows = rows;
 	}
 
 	public static DataSet single(double... data) {
@@ -22,9 +29,10 @@ public class DataSet implements MatrixWrapper {
 		if (powers.length == 0) {
 			return this;
 		}
-		SimpleMatrix dataSet = this.dataSet;
+		SimpleMatrix matrix = getMatrix();
+		SimpleMatrix dataSet = matrix;
 		for (double power : powers) {
-			dataSet = dataSet.concatColumns(this.dataSet.elementPower(power));
+			dataSet = dataSet.concatColumns(matrix.elementPower(power));
 		}
 		return new DataSet(dataSet);
 	}
@@ -33,24 +41,69 @@ public class DataSet implements MatrixWrapper {
 		if (powers.isEmpty()) {
 			return this;
 		}
-		SimpleMatrix dataSet = this.dataSet;
+		SimpleMatrix matrix = getMatrix();
+		SimpleMatrix dataSet = matrix;
 		for (double power : powers) {
-			dataSet = dataSet.concatColumns(this.dataSet.elementPower(power));
+			dataSet = dataSet.concatColumns(matrix.elementPower(power));
 		}
 		return new DataSet(dataSet);
 	}
 
+	/**
+	 * Creates a view of a subset of examples which shares the matrix of {@code this} data set.
+	 * Creating the view only copies its indices, but every call to {@link #getMatrix()} on the view copies its examples.
+	 * @param examples the indices of the examples in the order they appear in the view
+	 * @return the view
+	 */
+	public DataSet view(int[] examples) {
+		return new DataSet(backing, DataViews.compose(rows, examples, numExamples()));
+	}
+
+	/**
+	 * Creates a view of a range of examples which shares the matrix of {@code this} data set.
+	 * Creating the view only copies its indices, but every call to {@link #getMatrix()} on the view copies its examples.
+	 * @param start the index of the first example (inclusive)
+	 * @param end the index of the last example (exclusive)
+	 * @return the view
+	 */
+	public DataSet rows(int start, int end) {
+		return new DataSet(backing, DataViews.range(rows, start, end, numExamples()));
+	}
+
+	/**
+	 * Returns the dense matrix of this data set. A view copies its examples out of the shared matrix on every call and does not keep the copy,
+	 * so callers which need the matrix of a view more than once should keep the result (or read examples with {@link #copyExample(int, double[], int)}).
+	 */
 	@Override
 	public SimpleMatrix getMatrix() {
-		return dataSet;
+		return DataViews.materialize(backing, rows);
+	}
+
+	boolean isView() {
+		return rows != null;
+	}
+
+	public double get(int exampleIndex, int featureIndex) {
+		return backing.get(rows == null ? exampleIndex : rows[exampleIndex], featureIndex);
+	}
+
+	/**
+	 * Copies the features of an example without materializing a view
+	 * @param exampleIndex the index of the example
+	 * @param destination the array the features are copied to
+	 * @param offset the index of {@code destination} of the first feature
+	 */
+	public void copyExample(int exampleIndex, double[] destination, int offset) {
+		int n = numFeatures();
+		System.arraycopy(backing.getDDRM().data, (rows == null ? exampleIndex : rows[exampleIndex]) * n, destination, offset, n);
 	}
 
 	public int numFeatures() {
-		return dataSet.numCols();
+		return backing.numCols();
 	}
 
 	public int numExamples() {
-		return dataSet.numRows();
+		return rows == null ? backing.numRows() : rows.length;
 	}
 
 	public static class Builder {
@@ -1,15 +1,15 @@
 package com.github.chen.wentao.mllib.training;
 
-import com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil;
 import org.ejml.simple.SimpleMatrix;
 
 import java.util.Arrays;
 
 public class DataSetTarget implements MatrixWrapper {
 
-	private final SimpleMatrix dataSet;
-	private final SimpleMatrix binaryMatrix;
+	private final SimpleMatrix backing;
+	private final int[] rows; // Rows of the backing matrix in this target (or null for every row)
 	private final int labels;
+	private volatile SimpleMatrix binaryMatrix; // Computed when first needed (never kept by views)
 
 	public DataSetTarget(int... data) {
 		this(new SimpleMatrix(data.length, 1, true, intArrayToDouble(data)), (int) Arrays.stream(data).distinct().count());
@@ -21,38 +21,94 @@ public class DataSetTarget implements MatrixWrapper {
 	}
 
 	public DataSetTarget(SimpleMatrix theta, Integer labels) {
+		this.backing = theta;
+		this.rows = null;
 		if (theta.numCols() == 1) {
-			this.dataSet = theta;
 			this.labels = labels != null ? labels : countLabels();
-			this.binaryMatrix = computeBinaryMatrix(theta, this.labels);
 		} else {
-			this.dataSet = theta;
 			this.labels = theta.numCols();
 			this.binaryMatrix = theta;
 		}
 	}
 
+	private DataSetTarget(SimpleMatrix backing, int[] rows, int labels) {
+		this.backing = backing;
+		this.rows = rows;
+		this.labels = labels;
+	}
+
+	/**
+	 * Creates a view of a subset of examples which shares the matrix of {@code this} target.
+	 * Creating the view only copies its indices, but every call to {@link #getMatrix()} or {@link #toBinaryMatrix()} on the view copies its examples.
+	 * @param examples the indices of the examples in the order they appear in the view
+	 * @return the view
+	 */
+	public DataSetTarget view(int[] examples) {
+		return new DataSetTarget(backing, DataViews.compose(rows, examples, numExamples()), labels);
+	}
+
+	/**
+	 * Creates a view of a range of examples which shares the matrix of {@code this} target.
+	 * Creating the view only copies its indices, but every call to {@link #getMatrix()} or {@link #toBinaryMatrix()} on the view copies its examples.
+	 * @param start the index of the first example (inclusive)
+	 * @param end the index of the last example (exclusive)
+	 * @return the view
+	 */
+	public DataSetTarget rows(int start, int end) {
+		return new DataSetTarget(backing, DataViews.range(rows, start, end, numExamples()), labels);
+	}
+
+	/**
+	 * Returns the dense matrix of this target. A view copies its examples out of the shared matrix on every call and does not keep the copy,
+	 * so callers which need the matrix of a view more than once should keep the result (or read examples with {@link #get(int)}).
+	 */
 	@Override
 	public SimpleMatrix getMatrix() {
-		return dataSet;
+		return DataViews.materialize(backing, rows);
+	}
+
+	boolean isView() {
+		return rows != null;
 	}
 
 	public double get(int exampleIndex) {
-		return dataSet.get(exampleIndex);
+		return rows == null ? backing.get(exampleIndex) : backing.get(rows[exampleIndex], 0);
 	}
 
 	public int numExamples() {
-		return dataSet.numRows();
+		return rows == null ? backing.numRows() : rows.length;
+	}
+
+	public int numColumns() {
+		return backing.numCols();
 	}
 
+	/**
+	 * Returns the (m) x (number of labels) matrix with a 1 in the column of the label of each example, computed when first needed.
+	 * A view computes the matrix on every call and does not keep it.
+	 */
 	public SimpleMatrix toBinaryMatrix() {
-		return binaryMatrix;
+		if (isView()) {
+			return numColumns() == 1 ? computeBinaryMatrix(this, labels) : getMatrix();
+		}
+		SimpleMatrix matrix = binaryMatrix;
+		if (matrix == null) {
+			matrix = numColumns() == 1 ? computeBinaryMatrix(this, labels) : backing;
+			binaryMatrix = matrix;
+		}
+		return matrix;
 	}
 
-	private static SimpleMatrix computeBinaryMatrix(SimpleMatrix initMatrix, int labels) {
-		SimpleMatrix targetBinaryMatrix = SimpleMatrixUtil.filterEquals(initMatrix, 0);
-		for (int i = 1; i < labels; i++) {
-			targetBinaryMatrix = targetBinaryMatrix.concatColumns(SimpleMatrixUtil.filterEquals(initMatrix, i));
+	private static SimpleMatrix computeBinaryMatrix(DataSetTarget target, int labels) {
+		int m = target.numExamples();
+		SimpleMatrix targetBinaryMatrix = new SimpleMatrix(m, labels);
+		double[] data = targetBinaryMatrix.getDDRM().data;
+		for (int i = 0; i < m; i++) {
+			double value = target.get(i);
+			int label = (int) value;
+			if (label == value && label >= 0 && label < labels) {
+				data[i * labels + label] = 1.0;
+			}
 		}
 		return targetBinaryMatrix;
 	}
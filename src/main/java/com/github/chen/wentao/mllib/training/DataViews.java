@@ -0,0 +1,39 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Row index arithmetic shared by the views of {@link DataSet} and {@link DataSetTarget}
+ */
+class DataViews {
+
+	/**
+	 * @param rows the rows of the backing matrix in the parent (or null for every row)
+	 * @param examples the indices of examples of the parent
+	 * @param numExamples the number of examples of the parent
+	 * @return the rows of the backing matrix in the view
+	 */
+	static int[] compose(int[] rows, int[] examples, int numExamples) {
+		int[] composed = new int[examples.length];
+		for (int i = 0; i < examples.length; i++) {
+			assert examples[i] >= 0 && examples[i] < numExamples;
+			composed[i] = rows == null ? examples[i] : rows[examples[i]];
+		}
+		return composed;
+	}
+
+	static int[] range(int[] rows, int start, int end, int numExamples) {
+		assert 0 <= start && start <= end && end <= numExamples;
+
+		int[] composed = new int[end - start];
+		for (int i = 0; i < composed.length; i++) {
+			composed[i] = rows == null ? start + i : rows[start + i];
+		}
+		return composed;
+	}
+
+	static SimpleMatrix materialize(SimpleMatrix backing, int[] rows) {
+		return rows == null ? backing : SimpleMatrixUtil.selectRows(backing, rows);
+	}
+}
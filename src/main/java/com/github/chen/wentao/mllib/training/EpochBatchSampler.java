@@ -0,0 +1,160 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Stream of mini-batches of an in-memory data set which visits every example once per epoch.
+ * <p>
+ * Batch {@code i} is batch {@code i % numBatches()} of epoch {@code i / numBatches()}, so the stream may be read past its number of batches
+ * for as many epochs as needed. If a seed is given, the examples are reshuffled at the start of every epoch with a permutation which only
+ * depends on the seed and the epoch, so any batch can be reproduced without replaying earlier batches. Batches are views of the data set
+ * which share its matrices and only hold the indices of their examples.
+ */
+public class EpochBatchSampler implements BatchFullDataSetStream {
+
+	/**
+	 * What to do with the last batch of an epoch when the number of examples is not a multiple of the batch size
+	 */
+	public enum LastBatch {
+		/**
+		 * Keep the smaller batch, whose average gradient then weighs as much as the average gradient of a full batch
+		 */
+		KEEP,
+		/**
+		 * Skip the remaining examples (which are different examples every epoch if the data set is shuffled)
+		 */
+		DROP,
+		/**
+		 * Fill the last batch with the first examples of the epoch
+		 */
+		PAD
+	}
+
+	private static final long SEED_MIX = 0x9E3779B97F4A7C15L;
+
+	private final FullDataSet dataSet;
+	private final int batchSize;
+	private final LastBatch lastBatch;
+	private final Long seed;
+	private final int numBatches;
+	private final int[] identity;
+	private volatile EpochPermutation permutation; // Permutation of the most recently sampled epoch
+
+	/**
+	 * Creates a sampler which visits the examples in order every epoch
+	 * @param dataSet the examples
+	 * @param batchSize the number of examples of every batch (greater than 0, at most the number of examples are used)
+	 * @param lastBatch what to do with the last batch of an epoch if it is smaller than the batch size
+	 */
+	public EpochBatchSampler(FullDataSet dataSet, int batchSize, LastBatch lastBatch) {
+		this(dataSet, batchSize, lastBatch, null);
+	}
+
+	/**
+	 * Creates a sampler which reshuffles the examples every epoch
+	 * @param dataSet the examples
+	 * @param batchSize the number of examples of every batch (greater than 0, at most the number of examples are used)
+	 * @param lastBatch what to do with the last batch of an epoch if it is smaller than the batch size
+	 * @param seed the seed of the permutations of the examples
+	 */
+	public EpochBatchSampler(FullDataSet dataSet, int batchSize, LastBatch lastBatch, long seed) {
+		this(dataSet, batchSize, lastBatch, Long.valueOf(seed));
+	}
+
+	private EpochBatchSampler(FullDataSet dataSet, int batchSize, LastBatch lastBatch, Long seed) {
+		assert batchSize > 0;
+		assert dataSet.numExamples() > 0;
+		assert lastBatch != LastBatch.DROP || batchSize <= dataSet.numExamples(); // at least one batch per epoch
+
+		int m = dataSet.numExamples();
+		this.dataSet = dataSet;
+		this.batchSize = Math.min(batchSize, m);
+		this.lastBatch = lastBatch;
+		this.seed = seed;
+		this.numBatches = lastBatch == LastBatch.DROP ? m / this.batchSize : (m + this.batchSize - 1) / this.batchSize;
+		this.identity = seed == null ? IntStream.range(0, m).toArray() : null;
+	}
+
+	public EpochBatchSampler(DataSet dataSet, DataSetTarget target, int batchSize, LastBatch lastBatch) {
+		this(new FullDataSet(dataSet, target), batchSize, lastBatch);
+	}
+
+	public EpochBatchSampler(DataSet dataSet, DataSetTarget target, int batchSize, LastBatch lastBatch, long seed) {
+		this(new FullDataSet(dataSet, target), batchSize, lastBatch, seed);
+	}
+
+	/**
+	 * Returns a batch as a view of the data set. Every call to {@code getMatrix()} on the batch copies its examples.
+	 * @param batchIndex the index of the batch counted from the first batch of the first epoch (greater or equal to 0)
+	 * @return the batch
+	 */
+	@Override
+	public FullDataSet getBatch(int batchIndex) {
+		return dataSet.view(getBatchIndices(batchIndex));
+	}
+
+	/**
+	 * Returns the indices of the examples of a batch in the data set
+	 * @param batchIndex the index of the batch counted from the first batch of the first epoch (greater or equal to 0)
+	 * @return the indices in the order the examples appear in the batch
+	 */
+	public int[] getBatchIndices(int batchIndex) {
+		assert batchIndex >= 0;
+
+		int[] order = permutation(batchIndex / numBatches);
+		int start = (batchIndex % numBatches) * batchSize;
+		int end = start + batchSize;
+		if (end <= order.length) {
+			return Arrays.copyOfRange(order, start, end);
+		} else if (lastBatch == LastBatch.PAD) {
+			int[] indices = Arrays.copyOfRange(order, start, end);
+			System.arraycopy(order, 0, indices, order.length - start, end - order.length);
+			return indices;
+		} else {
+			return Arrays.copyOfRange(order, start, order.length);
+		}
+	}
+
+	private int[] permutation(int epoch) {
+		if (seed == null) {
+			return identity;
+		}
+		EpochPermutation current = permutation;
+		if (current == null || current.epoch != epoch) {
+			current = new EpochPermutation(epoch, SimpleMatrixUtil.newShuffledArray(dataSet.numExamples(), new Random(seed ^ (epoch + 1) * SEED_MIX)));
+			permutation = current;
+		}
+		return current.order;
+	}
+
+	/**
+	 * Returns the number of batches of every epoch
+	 */
+	@Override
+	public int numBatches() {
+		return numBatches;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public FullDataSet getDataSet() {
+		return dataSet;
+	}
+
+	private static class EpochPermutation {
+
+		private final int epoch;
+		private final int[] order;
+
+		private EpochPermutation(int epoch, int[] order) {
+			this.epoch = epoch;
+			this.order = order;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.data.ReshapeMatrix;
+import org.ejml.dense.row.CommonOps_FDRM;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Single precision buffers for training a {@link NeuralNetwork}, which halve the memory traffic of every layer compared to
+ * {@link NeuralNetworkWorkspace} so batches twice as large fit in the same cache and memory.
+ * <p>
+ * The weights, activations and errors of every layer are single precision, while the network keeps its weights in double precision:
+ * the weights are rounded into single precision buffers on every back propagation. Each gradient is summed in single precision over chunks of at most
+ * {@link #GRADIENT_CHUNK_SIZE} examples and the chunks are accumulated, averaged, regularized and handed to the optimizer in double precision,
+ * so the rounding error of the gradients does not grow with the batch size. Costs are also accumulated in double precision.
+ */
+class FloatNeuralNetworkWorkspace extends AbstractNeuralNetworkWorkspace {
+
+	/**
+	 * The maximum number of examples whose gradients are summed in single precision before being added to a double precision sum
+	 */
+	static final int GRADIENT_CHUNK_SIZE = 256;
+
+	private final FMatrixRMaj[] weights; // Single precision copies of thetas[i]
+	private final FMatrixRMaj[] activations; // (si + 1) x (m) activations of layer i with a bias row (except for the output layer)
+	private final FMatrixRMaj[] deltas; // (s(i+1)) x (m) errors of layer i + 1
+	private final FMatrixRMaj[] weightedDeltas; // (si + 1) x (m) product of thetas[i] transpose and deltas[i]
+	private final FMatrixRMaj target; // (sL) x (m) target values of the output layer
+
+	FloatNeuralNetworkWorkspace(SimpleMatrix[] thetas, Activation[] activationFunctions) {
+		super(thetas, activationFunctions);
+
+		final int layers = thetas.length + 1;
+		activations = new FMatrixRMaj[layers];
+		for (int i = 0; i < layers; i++) {
+			activations[i] = new FMatrixRMaj(i == layers - 1 ? numNeurons[i] : numNeurons[i] + 1, 0);
+		}
+		weights = new FMatrixRMaj[thetas.length];
+		deltas = new FMatrixRMaj[thetas.length];
+		weightedDeltas = new FMatrixRMaj[thetas.length];
+		for (int i = 0; i < thetas.length; i++) {
+			weights[i] = new FMatrixRMaj(thetas[i].numRows(), thetas[i].numCols());
+			deltas[i] = new FMatrixRMaj(numNeurons[i + 1], 0);
+			weightedDeltas[i] = new FMatrixRMaj(numNeurons[i] + 1, 0);
+		}
+		target = new FMatrixRMaj(numNeurons[layers - 1], 0);
+
+		ReshapeMatrix[] batchBuffers = new ReshapeMatrix[layers + 2 * thetas.length + 1];
+		System.arraycopy(activations, 0, batchBuffers, 0, layers);
+		System.arraycopy(deltas, 0, batchBuffers, layers, thetas.length);
+		System.arraycopy(weightedDeltas, 0, batchBuffers, layers + thetas.length, thetas.length);
+		batchBuffers[batchBuffers.length - 1] = target;
+		setBatchBuffers(batchBuffers);
+	}
+
+	/**
+	 * Rounds training examples into the input layer and the target buffer
+	 */
+	@Override
+	void copyExamples(DMatrixRMaj dataSet, DMatrixRMaj target, int[] rows, int start, int end) {
+		int m = end - start;
+		float[] input = activations[0].data;
+		int n = dataSet.numCols;
+		for (int k = 0; k < m; k++) {
+			input[k] = 1.0f; // Bias row
+		}
+		for (int k = 0; k < m; k++) {
+			int rowOffset = (rows == null ? start + k : rows[start + k]) * n;
+			for (int x = 0; x < n; x++) {
+				input[(x + 1) * m + k] = (float) dataSet.data[rowOffset + x];
+			}
+		}
+
+		int outputs = target.numCols;
+		for (int k = 0; k < m; k++) {
+			int rowOffset = (rows == null ? start + k : rows[start + k]) * outputs;
+			for (int y = 0; y < outputs; y++) {
+				this.target.data[y * m + k] = (float) target.data[rowOffset + y];
+			}
+		}
+	}
+
+	/**
+	 * Rounds the weights of the network into the single precision weight buffers
+	 * @param thetas the weights of the network
+	 */
+	private void loadWeights(DMatrixRMaj[] thetas) {
+		for (int i = 0; i < thetas.length; i++) {
+			double[] source = thetas[i].data;
+			float[] destination = weights[i].data;
+			for (int k = 0, size = weights[i].getNumElements(); k < size; k++) {
+				destination[k] = (float) source[k];
+			}
+		}
+	}
+
+	@Override
+	void feedForward(DMatrixRMaj[] thetas) {
+		loadWeights(thetas);
+
+		final int m = batchSize;
+		final int layers = activations.length;
+		for (int i = 1; i < layers; i++) {
+			FMatrixRMaj activation = activations[i];
+			if (i == layers - 1) {
+				CommonOps_FDRM.mult(weights[i - 1], activations[i - 1], activation);
+				activationFunctions[i - 1].apply(activation.data, 0, activation.numRows, m);
+			} else {
+				// Compute the weighted inputs into the delta buffer of this layer (unused until back propagation)
+				FMatrixRMaj product = deltas[i - 1];
+				CommonOps_FDRM.mult(weights[i - 1], activations[i - 1], product);
+				for (int k = 0; k < m; k++) {
+					activation.data[k] = 1.0f; // Bias row
+				}
+				System.arraycopy(product.data, 0, activation.data, m, product.getNumElements());
+				activationFunctions[i - 1].apply(activation.data, m, product.numRows, m);
+			}
+		}
+	}
+
+	/**
+	 * Computes the sum of the unregularized gradients over every example of the loaded batch from the weights rounded by the last feed forward.
+	 * {@link #feedForward(DMatrixRMaj[])} must be called first.
+	 * @param thetas the weights of the network
+	 */
+	@Override
+	void computeGradientSums(DMatrixRMaj[] thetas) {
+		final int m = batchSize;
+		final int last = deltas.length - 1;
+		CommonOps_FDRM.subtract(activations[last + 1], target, deltas[last]);
+		multTransB(deltas[last], activations[last], grads[last]);
+		for (int j = last - 1; j >= 0; j--) {
+			FMatrixRMaj weightedDelta = weightedDeltas[j + 1];
+			CommonOps_FDRM.multTransA(weights[j + 1], deltas[j + 1], weightedDelta);
+			// The derivative of the activation function is computed from the activations of the layer (skipping its bias row)
+			activationFunctions[j].backward(weightedDelta.data, m, activations[j + 1].data, m, deltas[j].data, 0, deltas[j].getNumElements());
+			multTransB(deltas[j], activations[j], grads[j]);
+		}
+	}
+
+	/**
+	 * Computes c = a * b<sup>T</sup>, summing the products of every chunk of {@link #GRADIENT_CHUNK_SIZE} columns in single precision
+	 * and the chunks in double precision
+	 * @param a (r) x (m) matrix
+	 * @param b (c) x (m) matrix
+	 * @param c (r) x (c) matrix the product is written to
+	 */
+	private static void multTransB(FMatrixRMaj a, FMatrixRMaj b, DMatrixRMaj c) {
+		assert a.numCols == b.numCols && c.numRows == a.numRows && c.numCols == b.numRows;
+
+		final int m = a.numCols;
+		int index = 0;
+		for (int i = 0; i < a.numRows; i++) {
+			int aOffset = i * m;
+			for (int j = 0; j < b.numRows; j++) {
+				int bOffset = j * m;
+				double sum = 0.0;
+				for (int chunkStart = 0; chunkStart < m; chunkStart += GRADIENT_CHUNK_SIZE) {
+					int chunkEnd = Math.min(chunkStart + GRADIENT_CHUNK_SIZE, m);
+					float chunkSum = 0.0f;
+					for (int k = chunkStart; k < chunkEnd; k++) {
+						chunkSum += a.data[aOffset + k] * b.data[bOffset + k];
+					}
+					sum += chunkSum;
+				}
+				c.data[index++] = sum;
+			}
+		}
+	}
+
+	@Override
+	double costSum() {
+		float[] output = activations[activations.length - 1].data;
+		return activationFunctions[activationFunctions.length - 1].cost(output, target.data, target.getNumElements());
+	}
+
+	/**
+	 * Computes the output of a network for every example of a data set in single precision.
+	 * Inference allocates its own buffers on every call, so it never disturbs a workspace used for training and may run concurrently.
+	 * @param thetas the weights of the network
+	 * @param activationFunctions the activation function of every layer of the network except the input layer
+	 * @param dataSet (m) x (s0) matrix of examples
+	 * @return (m) x (sL) matrix of the activations of the output layer
+	 */
+	static SimpleMatrix compute(DMatrixRMaj[] thetas, Activation[] activationFunctions, DMatrixRMaj dataSet) {
+		assert thetas.length == activationFunctions.length;
+		assert dataSet.numCols + 1 == thetas[0].numCols; // correct number of input features
+
+		final int m = dataSet.numRows;
+		final int n = dataSet.numCols;
+		FMatrixRMaj activation = new FMatrixRMaj(n + 1, m);
+		for (int k = 0; k < m; k++) {
+			activation.data[k] = 1.0f; // Bias row
+			for (int x = 0; x < n; x++) {
+				activation.data[(x + 1) * m + k] = (float) dataSet.data[k * n + x];
+			}
+		}
+		for (int i = 0; i < thetas.length; i++) {
+			FMatrixRMaj weight = new FMatrixRMaj(thetas[i].numRows, thetas[i].numCols);
+			for (int k = 0, size = weight.getNumElements(); k < size; k++) {
+				weight.data[k] = (float) thetas[i].data[k];
+			}
+			boolean output = i == thetas.length - 1;
+			FMatrixRMaj product = new FMatrixRMaj(weight.numRows, m);
+			CommonOps_FDRM.mult(weight, activation, product);
+			activationFunctions[i].apply(product.data, 0, product.numRows, m);
+			if (output) {
+				activation = product;
+			} else {
+				activation = new FMatrixRMaj(product.numRows + 1, m);
+				for (int k = 0; k < m; k++) {
+					activation.data[k] = 1.0f; // Bias row
+				}
+				System.arraycopy(product.data, 0, activation.data, m, product.getNumElements());
+			}
+		}
+
+		int outputs = activation.numRows;
+		double[] result = new double[m * outputs];
+		for (int y = 0; y < outputs; y++) {
+			for (int k = 0; k < m; k++) {
+				result[k * outputs + y] = activation.data[y * m + k];
+			}
+		}
+		return new SimpleMatrix(m, outputs, true, result);
+	}
+}
@@ -14,14 +14,13 @@ public class FullDataSet implements MatrixWrapper {
 
 	private final DataSet dataSet;
 	private final DataSetTarget dataSetTarget;
-	private final SimpleMatrix matrix;
+	private volatile SimpleMatrix matrix; // Data set and target concatenated when first needed (never kept by views)
 
 	public FullDataSet(DataSet dataSet, DataSetTarget dataSetTarget) {
 		assert dataSet.numExamples() == dataSetTarget.numExamples();
 
 		this.dataSet = dataSet;
 		this.dataSetTarget = dataSetTarget;
-		this.matrix = dataSet.getMatrix().concatColumns(dataSetTarget.getMatrix());
 	}
 
 	public int numExamples() {
@@ -36,23 +35,58 @@ public class FullDataSet implements MatrixWrapper {
 		return dataSetTarget;
 	}
 
+	/**
+	 * Shuffles the examples into a view which shares the matrices of {@code this} data set.
+	 * Every call to {@link #getMatrix()} on the view or its parts copies its examples.
+	 */
 	public FullDataSet shuffle(Random random) {
-		return matrixToFullDataSet(SimpleMatrixUtil.shuffleRows(matrix, random));
+		return view(SimpleMatrixUtil.newShuffledArray(numExamples(), random));
 	}
 
+	/**
+	 * Creates a view of the first examples which shares the matrices of {@code this} data set.
+	 * Every call to {@link #getMatrix()} on the view or its parts copies its examples.
+	 */
 	public FullDataSet subset(int size) {
-		return matrixToFullDataSet(matrix.extractMatrix(0, size, 0, matrix.numCols()));
+		return rows(0, size);
 	}
 
-	private FullDataSet matrixToFullDataSet(SimpleMatrix m) {
-		SimpleMatrix dataMatrix = m.extractMatrix(0, m.numRows(), 0, dataSet.numFeatures());
-		SimpleMatrix targetMatrix = m.extractMatrix(0, m.numRows(), dataSet.numFeatures(), m.numCols());
-		return new FullDataSet(new DataSet(dataMatrix), new DataSetTarget(targetMatrix, dataSetTarget.numLabels()));
+	/**
+	 * Creates a view of a subset of examples which shares the matrices of {@code this} data set.
+	 * Creating the view only copies its indices, but every call to {@link #getMatrix()} on the view or its parts copies its examples.
+	 * @param examples the indices of the examples in the order they appear in the view
+	 * @return the view
+	 */
+	public FullDataSet view(int[] examples) {
+		return new FullDataSet(dataSet.view(examples), dataSetTarget.view(examples));
 	}
 
+	/**
+	 * Creates a view of a range of examples which shares the matrices of {@code this} data set.
+	 * Creating the view only copies its indices, but every call to {@link #getMatrix()} on the view or its parts copies its examples.
+	 * @param start the index of the first example (inclusive)
+	 * @param end the index of the last example (exclusive)
+	 * @return the view
+	 */
+	public FullDataSet rows(int start, int end) {
+		return new FullDataSet(dataSet.rows(start, end), dataSetTarget.rows(start, end));
+	}
+
+	/**
+	 * Returns the data set and target concatenated into one matrix, which is only computed if this is called.
+	 * A view computes the matrix on every call and does not keep it.
+	 */
 	@Override
 	public SimpleMatrix getMatrix() {
-		return matrix;
+		if (dataSet.isView() || dataSetTarget.isView()) {
+			return dataSet.getMatrix().concatColumns(dataSetTarget.getMatrix());
+		}
+		SimpleMatrix concatenated = matrix;
+		if (concatenated == null) {
+			concatenated = dataSet.getMatrix().concatColumns(dataSetTarget.getMatrix());
+			matrix = concatenated;
+		}
+		return concatenated;
 	}
 
 	public static class Builder {
@@ -1,117 +1,509 @@
 package com.github.chen.wentao.mllib.training;
 
-import com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil;
-import org.ejml.data.MatrixType;
 import org.ejml.simple.SimpleMatrix;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class KMeansClustering {
 
+	/**
+	 * Methods of choosing the initial centroids
+	 */
+	public enum Initialization {
+		/**
+		 * Distinct training examples chosen uniformly at random
+		 */
+		RANDOM,
+		/**
+		 * Training examples chosen one at a time with probability proportional to the squared distance from the closest chosen centroid
+		 */
+		KMEANS_PLUS_PLUS,
+		/**
+		 * Scalable k-means++ which oversamples candidates in a few passes over the data set and reduces them with weighted k-means++
+		 */
+		KMEANS_PARALLEL
+	}
+
+	private static final int KMEANS_PARALLEL_ROUNDS = 5;
+	private static final int SWEEP_SEGMENTS = 4; // Fixed so results only depend on the random instance and never on the pool
+
 	public static Map<Integer, Double> kMeansCostPerCluster(DataSet dataSet, Random random, int maxIterations, int[] testCentroidCounts) {
 		Map<Integer, Double> costs = new HashMap<>();
-		for (int numberOfCentroids : testCentroidCounts) {
-			KMeansResult result = kmeans(dataSet, random, numberOfCentroids, maxIterations);
-			costs.put(numberOfCentroids, cost(dataSet, result.getClosestCentroids(), result.getCentroids()));
-		}
+		kMeansSweep(dataSet, random, maxIterations, testCentroidCounts, 1, ForkJoinPool.commonPool())
+				.forEach((numberOfCentroids, result) -> costs.put(numberOfCentroids, result.getCost()));
 		return costs;
 	}
 
+	/**
+	 * Clusters a data set with every number of centroids to be tested, keeping the best of several random restarts of each.
+	 * The sorted numbers of centroids are split into contiguous segments and every restart of every segment runs as a separate task.
+	 * Within a task, the solution for one number of centroids is the starting point for the next: the previous centroids are kept
+	 * and new centroids are added with k-means++ sampling, so each run only needs a few iterations to converge.
+	 * The numbers of centroids are split into at most {@value #SWEEP_SEGMENTS} segments regardless of the pool,
+	 * so the results for a given random instance are the same on every machine.
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param random the source of randomness used to seed every restart
+	 * @param maxIterations the maximum number of iterations to be performed for each number of centroids
+	 * @param testCentroidCounts the numbers of centroids to be tested (each greater than 0 and at most m)
+	 * @param restarts the number of independent restarts for each number of centroids (greater than 0)
+	 * @param pool the pool which runs the restarts
+	 * @return the best result and timing of each number of centroids ordered by the number of centroids
+	 */
+	public static SortedMap<Integer, KMeansSweepResult> kMeansSweep(DataSet dataSet, Random random, int maxIterations, int[] testCentroidCounts, int restarts, ForkJoinPool pool) {
+		assert restarts > 0;
+
+		int[] counts = Arrays.stream(testCentroidCounts).distinct().sorted().toArray();
+		SortedMap<Integer, KMeansSweepResult> results = new TreeMap<>();
+		if (counts.length == 0) {
+			return results;
+		}
+		assert counts[0] > 0 && counts[counts.length - 1] <= dataSet.numExamples();
+
+		double[] data = dataSet.getMatrix().getDDRM().data;
+		int m = dataSet.numExamples();
+		int n = dataSet.numFeatures();
+
+		int segments = Math.min(counts.length, SWEEP_SEGMENTS);
+		List<ForkJoinTask<KMeansSweepResult[]>> tasks = new ArrayList<>();
+		for (int restart = 0; restart < restarts; restart++) {
+			for (int segment = 0; segment < segments; segment++) {
+				int start = (int) ((long) counts.length * segment / segments);
+				int end = (int) ((long) counts.length * (segment + 1) / segments);
+				Random taskRandom = new Random(random.nextLong());
+				tasks.add(pool.submit(() -> sweepSegment(data, m, n, taskRandom, maxIterations, Arrays.copyOfRange(counts, start, end))));
+			}
+		}
+
+		// Keep the lowest cost of every number of centroids and the total time spent on it
+		for (ForkJoinTask<KMeansSweepResult[]> task : tasks) {
+			for (KMeansSweepResult result : task.join()) {
+				KMeansSweepResult best = results.get(result.getNumberOfCentroids());
+				if (best == null) {
+					results.put(result.getNumberOfCentroids(), result);
+				} else {
+					KMeansSweepResult lowest = result.getCost() < best.getCost() ? result : best;
+					results.put(result.getNumberOfCentroids(), new KMeansSweepResult(lowest.getNumberOfCentroids(), lowest.getResult(), lowest.getCost(), best.getNanos() + result.getNanos()));
+				}
+			}
+		}
+		return results;
+	}
+
+	private static KMeansSweepResult[] sweepSegment(double[] data, int m, int n, Random random, int maxIterations, int[] counts) {
+		KMeansSweepResult[] results = new KMeansSweepResult[counts.length];
+		KMeansResult previous = null;
+		for (int i = 0; i < counts.length; i++) {
+			long start = System.nanoTime();
+			double[] centroids = previous == null
+					? kMeansPlusPlus(data, null, m, n, random, counts[i])
+					: warmStart(data, m, n, random, previous, counts[i]);
+			KMeansResult result = hamerly(data, m, n, centroids, counts[i], maxIterations);
+			double cost = cost(data, m, n, result.closestCentroids, result.centroids.getDDRM().data);
+			results[i] = new KMeansSweepResult(counts[i], result, cost, System.nanoTime() - start);
+			previous = result;
+		}
+		return results;
+	}
+
+	/**
+	 * Extends the centroids of a previous solution to a larger number of centroids with k-means++ sampling.
+	 * The closest centroids of the previous solution give the initial distances without a pass over every centroid.
+	 */
+	private static double[] warmStart(double[] data, int m, int n, Random random, KMeansResult previous, int numberOfCentroids) {
+		double[] previousCentroids = previous.centroids.getDDRM().data;
+		int numPrevious = previous.centroids.numRows();
+		double[] centroids = Arrays.copyOf(previousCentroids, numberOfCentroids * n);
+		double[] distances = new double[m];
+		double total = 0.0;
+		for (int i = 0; i < m; i++) {
+			distances[i] = squaredDistance(data, i * n, previousCentroids, previous.closestCentroids[i] * n, n);
+			total += distances[i];
+		}
+		for (int c = numPrevious; c < numberOfCentroids; c++) {
+			int index = total > 0 ? sample(distances, m, random, total) : random.nextInt(m);
+			System.arraycopy(data, index * n, centroids, c * n, n);
+			total = 0.0;
+			for (int i = 0; i < m; i++) {
+				distances[i] = Math.min(distances[i], squaredDistance(data, i * n, centroids, c * n, n));
+				total += distances[i];
+			}
+		}
+		return centroids;
+	}
+
 	public static double cost(DataSet dataSet, int[] closestCentroids, SimpleMatrix centroids) {
 		assert dataSet.numExamples() == closestCentroids.length;
+		assert dataSet.numFeatures() == centroids.numCols(); // Correct number of features
 
-		SimpleMatrix data = dataSet.getMatrix();
+		double[] data = dataSet.getMatrix().getDDRM().data;
+		double[] centroidData = centroids.getDDRM().data;
+		int n = dataSet.numFeatures();
 
 		double sum = 0.0;
 		for (int i = 0, m = dataSet.numExamples(); i < m; i++) {
-			int c = closestCentroids[i];
-			sum += data.rows(i, i + 1).minus(centroids.rows(c, c + 1)).elementPower(2.0).elementSum();
+			sum += squaredDistance(data, i * n, centroidData, closestCentroids[i] * n, n);
 		}
 		return sum / dataSet.numExamples();
 	}
 
+	/**
+	 * Clusters a data set with centroids initialized by k-means++
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param random the source of randomness used to choose the initial centroids
+	 * @param numberOfCentroids the number of clusters (greater than 0 and at most m)
+	 * @param maxIterations the maximum number of iterations to be performed
+	 * @return the centroids and the index of the closest centroid of each example
+	 */
 	public static KMeansResult kmeans(DataSet dataSet, Random random, int numberOfCentroids, int maxIterations) {
-		return kmeans(dataSet.getMatrix(), random, numberOfCentroids, maxIterations);
+		return kmeans(dataSet, random, numberOfCentroids, maxIterations, Initialization.KMEANS_PLUS_PLUS);
+	}
+
+	/**
+	 * Clusters a data set with Lloyd's algorithm accelerated by Hamerly's bounds.
+	 * Iteration stops early once no example changes cluster.
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param random the source of randomness used to choose the initial centroids
+	 * @param numberOfCentroids the number of clusters (greater than 0 and at most m)
+	 * @param maxIterations the maximum number of iterations to be performed
+	 * @param initialization the method of choosing the initial centroids
+	 * @return the centroids and the index of the closest centroid of each example
+	 */
+	public static KMeansResult kmeans(DataSet dataSet, Random random, int numberOfCentroids, int maxIterations, Initialization initialization) {
+		return kmeans(dataSet.getMatrix(), random, numberOfCentroids, maxIterations, initialization);
 	}
 
-	private static KMeansResult kmeans(SimpleMatrix dataSet, Random random, int numberOfCentroids, int maxIterations) {
-		SimpleMatrix centroids = randomlyInitializeCentroids(dataSet, random, numberOfCentroids);
-		for (int i = 0; i < maxIterations; i++) {
-			int[] closestCentroids = findClosestCentroids(dataSet, centroids);
-			centroids = computeCentroids(dataSet, closestCentroids, numberOfCentroids);
+	private static KMeansResult kmeans(SimpleMatrix dataSet, Random random, int numberOfCentroids, int maxIterations, Initialization initialization) {
+		assert numberOfCentroids > 0 && numberOfCentroids <= dataSet.numRows();
+		assert maxIterations >= 0;
+
+		double[] data = dataSet.getDDRM().data;
+		int m = dataSet.numRows();
+		int n = dataSet.numCols();
+		double[] centroids;
+		switch (initialization) {
+			case RANDOM:
+				centroids = randomlyInitializeCentroids(data, m, n, random, numberOfCentroids);
+				break;
+			case KMEANS_PLUS_PLUS:
+				centroids = kMeansPlusPlus(data, null, m, n, random, numberOfCentroids);
+				break;
+			default:
+				centroids = kMeansParallel(data, m, n, random, numberOfCentroids);
+				break;
 		}
-		return new KMeansResult(findClosestCentroids(dataSet, centroids), centroids);
+		return hamerly(data, m, n, centroids, numberOfCentroids, maxIterations);
 	}
 
-	private static SimpleMatrix randomlyInitializeCentroids(SimpleMatrix dataSet, Random random, int numberOfCentroids) {
-		assert numberOfCentroids > 0;
-		SimpleMatrixUtil.shuffleRows(dataSet, random);
-		return dataSet.rows(0, numberOfCentroids);
+	private static double[] randomlyInitializeCentroids(double[] data, int m, int n, Random random, int numberOfCentroids) {
+		// Partial Fisher-Yates shuffle of the example indices
+		int[] indices = new int[m];
+		for (int i = 0; i < m; i++) {
+			indices[i] = i;
+		}
+		double[] centroids = new double[numberOfCentroids * n];
+		for (int c = 0; c < numberOfCentroids; c++) {
+			int swapIndex = c + random.nextInt(m - c);
+			int index = indices[swapIndex];
+			indices[swapIndex] = indices[c];
+			indices[c] = index;
+			System.arraycopy(data, index * n, centroids, c * n, n);
+		}
+		return centroids;
 	}
 
-	private static int[] findClosestCentroids(SimpleMatrix dataSet, SimpleMatrix centroids) {
-		assert dataSet.numCols() == centroids.numCols(); // Correct number of features
-		assert centroids.numRows() > 0; // At least 1 centroid
+	/**
+	 * Chooses centroids from weighted points with D<sup>2</sup> sampling
+	 * @param points (m) x (n) row-major array of candidate points
+	 * @param weights (m) array of the weight of each point (or null if every point has weight 1)
+	 * @return (k) x (n) row-major array of the chosen centroids
+	 */
+	static double[] kMeansPlusPlus(double[] points, double[] weights, int m, int n, Random random, int numberOfCentroids) {
+		double[] centroids = new double[numberOfCentroids * n];
+		double[] distances = new double[m]; // Weighted squared distance of each point to its closest centroid
+		int first = sample(weights, m, random);
+		System.arraycopy(points, first * n, centroids, 0, n);
+		double total = 0.0;
+		for (int i = 0; i < m; i++) {
+			distances[i] = squaredDistance(points, i * n, centroids, 0, n) * (weights == null ? 1.0 : weights[i]);
+			total += distances[i];
+		}
+		for (int c = 1; c < numberOfCentroids; c++) {
+			int index = total > 0 ? sample(distances, m, random, total) : random.nextInt(m); // All points coincide with centroids
+			System.arraycopy(points, index * n, centroids, c * n, n);
+			total = 0.0;
+			for (int i = 0; i < m; i++) {
+				double distance = squaredDistance(points, i * n, centroids, c * n, n) * (weights == null ? 1.0 : weights[i]);
+				if (distance < distances[i]) {
+					distances[i] = distance;
+				}
+				total += distances[i];
+			}
+		}
+		return centroids;
+	}
 
-		int numCentroids = centroids.numRows();
-		int[] closestCentroids = new int[dataSet.numRows()];
+	/**
+	 * Chooses centroids with k-means|| (Bahmani et al., Scalable K-Means++): each round samples about 2k candidates
+	 * independently with probability proportional to their squared distance, then weighted k-means++ reduces the candidates to k
+	 */
+	private static double[] kMeansParallel(double[] data, int m, int n, Random random, int numberOfCentroids) {
+		double oversampling = 2.0 * numberOfCentroids;
+		double[] candidates = new double[Math.max(numberOfCentroids, 16) * n];
+		int numCandidates = 1;
+		System.arraycopy(data, random.nextInt(m) * n, candidates, 0, n);
 
-		for (int i = 0; i < closestCentroids.length; i++) {
-			int closest = 0;
-			double closestDistance = dataSet.rows(i, i + 1).minus(centroids.rows(0, 1)).elementPower(2.0).elementSum();
-			for (int c = 1; c < numCentroids; c++) {
-				double distance = dataSet.rows(i, i + 1).minus(centroids.rows(c, c + 1)).elementPower(2.0).elementSum();
-				if (distance < closestDistance) {
-					closest = c;
-					closestDistance = distance;
+		double[] distances = new double[m];
+		int[] closest = new int[m];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		int checked = 0; // Candidates whose distances have been applied to every example
+		for (int round = 0; round <= KMEANS_PARALLEL_ROUNDS; round++) {
+			double total = 0.0;
+			for (int i = 0; i < m; i++) {
+				for (int c = checked; c < numCandidates; c++) {
+					double distance = squaredDistance(data, i * n, candidates, c * n, n);
+					if (distance < distances[i]) {
+						distances[i] = distance;
+						closest[i] = c;
+					}
+				}
+				total += distances[i];
+			}
+			checked = numCandidates;
+			if (round == KMEANS_PARALLEL_ROUNDS || total == 0.0) {
+				break;
+			}
+			for (int i = 0; i < m; i++) {
+				if (random.nextDouble() < oversampling * distances[i] / total) {
+					if ((numCandidates + 1) * n > candidates.length) {
+						candidates = Arrays.copyOf(candidates, candidates.length * 2);
+					}
+					System.arraycopy(data, i * n, candidates, numCandidates * n, n);
+					numCandidates++;
 				}
 			}
-			closestCentroids[i] = closest;
 		}
-		return closestCentroids;
+
+		if (numCandidates < numberOfCentroids) {
+			return kMeansPlusPlus(data, null, m, n, random, numberOfCentroids); // Too few distinct points were sampled
+		}
+		double[] weights = new double[numCandidates];
+		for (int i = 0; i < m; i++) {
+			weights[closest[i]] += 1.0;
+		}
+		return kMeansPlusPlus(candidates, weights, numCandidates, n, random, numberOfCentroids);
 	}
 
-	private static SimpleMatrix computeCentroids(SimpleMatrix dataSet, int[] closestCentroids, int numberOfCentroids) {
-		assert dataSet.numRows() == closestCentroids.length; // Correct number of examples
+	private static int sample(double[] weights, int m, Random random) {
+		if (weights == null) {
+			return random.nextInt(m);
+		}
+		double total = 0.0;
+		for (int i = 0; i < m; i++) {
+			total += weights[i];
+		}
+		return sample(weights, m, random, total);
+	}
 
-		int n = dataSet.numCols();
-		SimpleMatrix centroids = new SimpleMatrix(numberOfCentroids, dataSet.numCols(), MatrixType.DDRM);
-		int[] centroidsCount = new int[numberOfCentroids];
+	private static int sample(double[] weights, int m, Random random, double total) {
+		double target = random.nextDouble() * total;
+		double sum = 0.0;
+		for (int i = 0; i < m; i++) {
+			sum += weights[i];
+			if (sum > target) {
+				return i;
+			}
+		}
+		for (int i = m - 1; i >= 0; i--) { // Rounding error
+			if (weights[i] > 0) {
+				return i;
+			}
+		}
+		return m - 1;
+	}
 
-		for (int i = 0; i < closestCentroids.length; i++) {
-			int c = closestCentroids[i];
-			centroidsCount[c] += 1;
-			for (int x = 0; x < n; x++) {
-				centroids.set(c, x, centroids.get(c, x) + dataSet.get(i, x));
+	/**
+	 * Runs Lloyd's algorithm with Hamerly's bounds (Hamerly, Making k-means even faster), which keeps an upper bound on the
+	 * distance of every example to its centroid and a lower bound on the distance to every other centroid. Examples whose
+	 * upper bound is below the lower bound or half the distance between their centroid and its nearest centroid cannot
+	 * change cluster, so their distances are skipped.
+	 * @param centroids (k) x (n) row-major array of the initial centroids
+	 */
+	private static KMeansResult hamerly(double[] data, int m, int n, double[] centroids, int numberOfCentroids, int maxIterations) {
+		final int k = numberOfCentroids;
+		int[] assignments = new int[m];
+		double[] upperBounds = new double[m];
+		double[] lowerBounds = new double[m];
+		double[] sums = new double[k * n];
+		int[] counts = new int[k];
+		double[] halfNearestDistances = new double[k];
+		double[] movements = new double[k];
+		double[] newCentroid = new double[n];
+
+		// Initial assignments
+		for (int i = 0; i < m; i++) {
+			assignClosest(data, i, n, centroids, k, assignments, upperBounds, lowerBounds);
+			int c = assignments[i];
+			counts[c]++;
+			addRow(data, i * n, sums, c * n, n, 1.0);
+		}
+
+		int iterations = 0;
+		boolean changed = true;
+		while (changed && iterations < maxIterations) {
+			iterations++;
+
+			// Move centroids to the mean of their examples (empty clusters keep their position)
+			double maxMovement = 0.0;
+			int farthest = -1;
+			double secondMaxMovement = 0.0;
+			for (int c = 0; c < k; c++) {
+				if (counts[c] == 0) {
+					movements[c] = 0.0;
+					continue;
+				}
+				for (int x = 0; x < n; x++) {
+					newCentroid[x] = sums[c * n + x] / counts[c];
+				}
+				movements[c] = Math.sqrt(squaredDistance(newCentroid, 0, centroids, c * n, n));
+				System.arraycopy(newCentroid, 0, centroids, c * n, n);
+				if (movements[c] > maxMovement) {
+					secondMaxMovement = maxMovement;
+					maxMovement = movements[c];
+					farthest = c;
+				} else if (movements[c] > secondMaxMovement) {
+					secondMaxMovement = movements[c];
+				}
+			}
+			for (int i = 0; i < m; i++) {
+				int c = assignments[i];
+				upperBounds[i] += movements[c];
+				lowerBounds[i] -= c == farthest ? secondMaxMovement : maxMovement;
+			}
+
+			for (int c = 0; c < k; c++) {
+				double nearest = Double.POSITIVE_INFINITY;
+				for (int other = 0; other < k; other++) {
+					if (other != c) {
+						nearest = Math.min(nearest, squaredDistance(centroids, c * n, centroids, other * n, n));
+					}
+				}
+				halfNearestDistances[c] = 0.5 * Math.sqrt(nearest);
+			}
+
+			changed = false;
+			for (int i = 0; i < m; i++) {
+				int previous = assignments[i];
+				double bound = Math.max(halfNearestDistances[previous], lowerBounds[i]);
+				if (upperBounds[i] <= bound) {
+					continue;
+				}
+				upperBounds[i] = Math.sqrt(squaredDistance(data, i * n, centroids, previous * n, n)); // Tighten the upper bound
+				if (upperBounds[i] <= bound) {
+					continue;
+				}
+				assignClosest(data, i, n, centroids, k, assignments, upperBounds, lowerBounds);
+				int c = assignments[i];
+				if (c != previous) {
+					changed = true;
+					counts[previous]--;
+					counts[c]++;
+					addRow(data, i * n, sums, previous * n, n, -1.0);
+					addRow(data, i * n, sums, c * n, n, 1.0);
+				}
 			}
 		}
-		int centroidIndex = 0;
-		for (int c = 0; c < numberOfCentroids; c++) {
-			if (centroidsCount[c] == 0) {
-				continue;
+		return compact(assignments, centroids, counts, n, iterations, !changed);
+	}
+
+	/**
+	 * Finds the closest and second closest centroids of an example
+	 */
+	private static void assignClosest(double[] data, int i, int n, double[] centroids, int k, int[] assignments, double[] upperBounds, double[] lowerBounds) {
+		int closest = 0;
+		double closestDistance = Double.POSITIVE_INFINITY;
+		double secondClosestDistance = Double.POSITIVE_INFINITY;
+		int rowOffset = i * n;
+		for (int c = 0; c < k; c++) {
+			double distance = squaredDistance(data, rowOffset, centroids, c * n, n);
+			if (distance < closestDistance) {
+				secondClosestDistance = closestDistance;
+				closestDistance = distance;
+				closest = c;
+			} else if (distance < secondClosestDistance) {
+				secondClosestDistance = distance;
 			}
-			for (int x = 0; x < n; x++) {
-				centroids.set(centroidIndex, x, centroids.get(c, x) / centroidsCount[c]);
+		}
+		assignments[i] = closest;
+		upperBounds[i] = Math.sqrt(closestDistance);
+		lowerBounds[i] = Math.sqrt(secondClosestDistance);
+	}
+
+	/**
+	 * Removes the centroids of empty clusters
+	 */
+	private static KMeansResult compact(int[] assignments, double[] centroids, int[] counts, int n, int iterations, boolean converged) {
+		int k = counts.length;
+		int[] newIndices = new int[k];
+		int numCentroids = 0;
+		for (int c = 0; c < k; c++) {
+			if (counts[c] > 0) {
+				System.arraycopy(centroids, c * n, centroids, numCentroids * n, n);
+				newIndices[c] = numCentroids++;
 			}
-			centroidIndex += 1;
 		}
-		if (centroidIndex == numberOfCentroids) {
-			return centroids;
+		if (numCentroids < k) {
+			for (int i = 0; i < assignments.length; i++) {
+				assignments[i] = newIndices[assignments[i]];
+			}
+		}
+		SimpleMatrix centroidMatrix = new SimpleMatrix(numCentroids, n, true, Arrays.copyOf(centroids, numCentroids * n));
+		return new KMeansResult(assignments, centroidMatrix, iterations, converged);
+	}
+
+	private static double cost(double[] data, int m, int n, int[] closestCentroids, double[] centroids) {
+		double sum = 0.0;
+		for (int i = 0; i < m; i++) {
+			sum += squaredDistance(data, i * n, centroids, closestCentroids[i] * n, n);
 		}
-		return centroids.rows(0, centroidIndex);
+		return sum / m;
+	}
+
+	private static void addRow(double[] source, int sourceOffset, double[] destination, int destinationOffset, int n, double scale) {
+		for (int x = 0; x < n; x++) {
+			destination[destinationOffset + x] += scale * source[sourceOffset + x];
+		}
+	}
+
+	static double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int n) {
+		double sum = 0.0;
+		for (int x = 0; x < n; x++) {
+			double difference = a[aOffset + x] - b[bOffset + x];
+			sum += difference * difference;
+		}
+		return sum;
 	}
 
 	public static class KMeansResult {
 
 		private final int[] closestCentroids;
 		private final SimpleMatrix centroids;
+		private final int iterations;
+		private final boolean converged;
 
-		private KMeansResult(int[] closestCentroids, SimpleMatrix centroids) {
+		private KMeansResult(int[] closestCentroids, SimpleMatrix centroids, int iterations, boolean converged) {
 			this.closestCentroids = closestCentroids;
 			this.centroids = centroids;
+			this.iterations = iterations;
+			this.converged = converged;
 		}
 
 		public int[] getClosestCentroids() {
@@ -121,5 +513,59 @@ public class KMeansClustering {
 		public SimpleMatrix getCentroids() {
 			return centroids;
 		}
+
+		/**
+		 * @return the number of times the centroids were moved
+		 */
+		public int getIterations() {
+			return iterations;
+		}
+
+		/**
+		 * @return true if iteration stopped because no example changed cluster
+		 */
+		public boolean hasConverged() {
+			return converged;
+		}
+	}
+
+	public static class KMeansSweepResult {
+
+		private final int numberOfCentroids;
+		private final KMeansResult result;
+		private final double cost;
+		private final long nanos;
+
+		private KMeansSweepResult(int numberOfCentroids, KMeansResult result, double cost, long nanos) {
+			this.numberOfCentroids = numberOfCentroids;
+			this.result = result;
+			this.cost = cost;
+			this.nanos = nanos;
+		}
+
+		public int getNumberOfCentroids() {
+			return numberOfCentroids;
+		}
+
+		/**
+		 * @return the result of the restart with the lowest cost
+		 */
+		public KMeansResult getResult() {
+			return result;
+		}
+
+		/**
+		 * @return the lowest mean squared distance of the examples to their closest centroids over every restart
+		 */
+		public double getCost() {
+			return cost;
+		}
+
+		/**
+		 * @return the total time spent clustering with this number of centroids over every restart
+		 */
+		public long getNanos() {
+			return nanos;
+		}
 	}
 }
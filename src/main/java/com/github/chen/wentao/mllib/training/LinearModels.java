@@ -0,0 +1,180 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.training.optimization.Optimizer;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Training of models of n + 1 feature parameters whose hypothesis is a function of the weighted sum z of the features of an example,
+ * such as {@link LinearRegression} and {@link LogisticRegression}. Both use the canonical link of their loss, so the gradient of the loss of
+ * an example with respect to z is the hypothesis minus the target and the models only differ in their {@link ExampleLoss}.
+ * <p>
+ * Every cost is the mean loss of the examples plus lambda / 2 times the squared parameters (except the bias parameter), over the number of examples.
+ */
+final class LinearModels {
+
+	private LinearModels() {
+	}
+
+	/**
+	 * Hypothesis and loss of a single example
+	 */
+	interface ExampleLoss {
+
+		/**
+		 * @param z the weighted sum of the features of an example (including the bias parameter)
+		 * @return the hypothesis of the example
+		 */
+		double hypothesis(double z);
+
+		/**
+		 * @param hypothesis the hypothesis of an example
+		 * @param y the target value of the example
+		 * @return the loss of the example
+		 */
+		double cost(double hypothesis, double y);
+	}
+
+	/**
+	 * Computes the unregularized cost and gradient summed over every example of a batch in a single pass over its examples
+	 *
+	 * @param loss the loss of a single example
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param batch the training examples with n features and their target values
+	 * @param features (n) array used to store the features of one example
+	 * @param gradient (n + 1) vector which the gradient sum is written to (or null to only compute the cost)
+	 * @return the sum of the cost of every example of the batch
+	 */
+	static double batchCost(ExampleLoss loss, DMatrixRMaj theta, FullDataSet batch, double[] features, DMatrixRMaj gradient) {
+		DataSet dataSet = batch.getDataSet();
+		DataSetTarget target = batch.getDataSetTarget();
+		assert(dataSet.numFeatures() + 1 == theta.numRows); // correct number of features
+		assert(target.numColumns() == 1); // is vector
+
+		int n = dataSet.numFeatures();
+		double[] t = theta.data;
+		if (gradient != null) {
+			gradient.zero();
+		}
+		double cost = 0.0;
+		for (int i = 0, m = dataSet.numExamples(); i < m; i++) {
+			dataSet.copyExample(i, features, 0);
+			double z = t[0];
+			for (int x = 0; x < n; x++) {
+				z += t[x + 1] * features[x];
+			}
+			double y = target.get(i);
+			double hypothesis = loss.hypothesis(z);
+			cost += loss.cost(hypothesis, y);
+			if (gradient != null) {
+				double error = hypothesis - y;
+				double[] g = gradient.data;
+				g[0] += error;
+				for (int x = 0; x < n; x++) {
+					g[x + 1] += error * features[x];
+				}
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Adds the regularization term to an unregularized gradient sum and averages it over the training examples
+	 *
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param m the number of training examples
+	 * @param gradient (n + 1) vector of the gradient summed over every training example
+	 */
+	static void regularizeGradient(DMatrixRMaj theta, double lambda, double m, DMatrixRMaj gradient) {
+		if (lambda > 0) {
+			for (int k = 1; k < gradient.numRows; k++) { // By convention, bias term is not penalized
+				gradient.data[k] += lambda * theta.data[k];
+			}
+		}
+		CommonOps_DDRM.divide(gradient, m);
+	}
+
+	/**
+	 * Calculates the regularization term which is added to a cost summed over the training examples
+	 *
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return lambda / 2 times the sum of the squared parameters except the bias parameter
+	 */
+	static double regularizationCost(DMatrixRMaj theta, double lambda) {
+		double regularizationCost = 0.0;
+		if (lambda > 0) {
+			for (int k = 1; k < theta.numRows; k++) { // By convention, bias term is not penalized
+				regularizationCost += theta.data[k] * theta.data[k];
+			}
+			regularizationCost *= lambda / 2.0;
+		}
+		return regularizationCost;
+	}
+
+	/**
+	 * Calculates the cost for a stream of batches given parameters theta, reading one batch at a time
+	 *
+	 * @param loss the loss of a single example
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param dataSetStream the batches of training examples with n features and their target values
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return double of the cost of the parameters for every example of the stream
+	 */
+	static double costFunction(ExampleLoss loss, FeatureParameters theta, BatchFullDataSetStream dataSetStream, double lambda) {
+		assert(lambda >= 0 && Double.isFinite(lambda));
+
+		DMatrixRMaj parameters = theta.getMatrix().getDDRM();
+		double[] features = new double[parameters.numRows - 1];
+		double cost = 0.0;
+		long m = 0;
+		for (int i = 0; i < dataSetStream.numBatches(); i++) {
+			FullDataSet batch = dataSetStream.getBatch(i);
+			cost += batchCost(loss, parameters, batch, features, null);
+			m += batch.numExamples();
+		}
+		return (cost + regularizationCost(parameters, lambda)) / m;
+	}
+
+	/**
+	 * Performs mini-batch gradient descent over a stream of batches, taking one step of the optimizer per batch.
+	 * Only one batch is held in memory at a time and examples are read directly from the batch without adding a bias column,
+	 * so the memory used does not depend on the size of the data set.
+	 *
+	 * @param loss the loss of a single example
+	 * @param dataSetStream the batches of training examples with n features and their target values.
+	 *                      Iteration i trains on batch i, so the stream should continue into further epochs past its number of batches.
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of batches to be trained on
+	 * @param policy the conditions under which training stops early (its relative tolerance compares the mean batch cost of consecutive epochs)
+	 * @return n + 1 vector of the optimal parameters theta and the report of the training run
+	 */
+	static TrainingResult<FeatureParameters> gradientDescent(ExampleLoss loss, BatchFullDataSetStream dataSetStream, FeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		assert(initialTheta.numFeatures() > 0);
+		assert(lambda >= 0 && Double.isFinite(lambda));
+
+		ConvergenceMonitor<FeatureParameters> monitor = policy.start(dataSetStream.numBatches());
+		SimpleMatrix theta = initialTheta.getMatrix().copy();
+		DMatrixRMaj[] parameters = {theta.getDDRM()};
+		DMatrixRMaj[] gradients = {new DMatrixRMaj(theta.numRows(), 1)};
+		double[] features = new double[theta.numRows() - 1];
+		FeatureParameters model = new FeatureParameters(theta);
+		int iterations = 0;
+		while (iterations < numIterations) {
+			FullDataSet batch = dataSetStream.getBatch(iterations);
+			double m = batch.numExamples();
+			double cost = batchCost(loss, parameters[0], batch, features, gradients[0]);
+			regularizeGradient(parameters[0], lambda, m, gradients[0]);
+			if (monitor.hasConverged(iterations, (cost + regularizationCost(parameters[0], lambda)) / m, gradients, model)) {
+				break;
+			}
+			optimizer.update(parameters, gradients);
+			iterations++;
+		}
+		return new TrainingResult<>(model, monitor.finish(iterations));
+	}
+}
@@ -1,9 +1,17 @@
 package com.github.chen.wentao.mllib.training;
 
 import com.github.chen.wentao.mllib.data.DataUtil;
+import com.github.chen.wentao.mllib.training.optimization.ConjugateGradientMinimizer;
+import com.github.chen.wentao.mllib.training.optimization.LBFGSMinimizer;
+import com.github.chen.wentao.mllib.training.optimization.Minimizer;
+import com.github.chen.wentao.mllib.training.optimization.Optimizer;
 import com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
 import org.ejml.simple.SimpleMatrix;
 
+import java.util.function.Supplier;
+
 public class LinearRegression {
 
 	public static AlgorithmHypothesis getHypothesis(FeatureParameters theta) {
@@ -14,10 +22,58 @@ public class LinearRegression {
 		return (dataSet, target) -> LinearRegression.gradientDescent(dataSet, target, initial, alpha, lambda, numIterations);
 	}
 
+	public static SupervisedLearningAlgorithm<FeatureParameters> getAlgorithm(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations) {
+		return getAlgorithm(initial, optimizerGenerator, lambda, numIterations, ConvergencePolicy.none());
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters> getAlgorithm(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		return (dataSet, target) -> LinearRegression.gradientDescent(dataSet, target, initial, optimizerGenerator.get(), lambda, numIterations, policy).getParameters();
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters> getAlgorithm(FeatureParameters initial, Supplier<Minimizer> minimizerGenerator, double lambda) {
+		return (dataSet, target) -> LinearRegression.minimize(dataSet, target, initial, minimizerGenerator.get(), lambda);
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters> getLBFGSAlgorithm(FeatureParameters initial, double lambda, int maxIterations) {
+		return getAlgorithm(initial, () -> new LBFGSMinimizer(maxIterations), lambda);
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters> getConjugateGradientAlgorithm(FeatureParameters initial, double lambda, int maxIterations) {
+		return getAlgorithm(initial, () -> new ConjugateGradientMinimizer(maxIterations), lambda);
+	}
+
+	public static StreamSupervisedLearningAlgorithm<FeatureParameters> getStreamAlgorithm(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations) {
+		return getStreamAlgorithm(initial, optimizerGenerator, lambda, numIterations, ConvergencePolicy.none());
+	}
+
+	public static StreamSupervisedLearningAlgorithm<FeatureParameters> getStreamAlgorithm(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		return dataSetStream -> LinearRegression.gradientDescent(dataSetStream, initial, optimizerGenerator.get(), lambda, numIterations, policy).getParameters();
+	}
+
 	public static CostFunction<FeatureParameters> getCostFunction(double lambda) {
 		return (theta, dataSet, target) -> costFunction(theta, dataSet, target, lambda);
 	}
 
+	public static StreamCostFunction<FeatureParameters> getStreamCostFunction(double lambda) {
+		return (theta, dataSetStream) -> costFunction(theta, dataSetStream, lambda);
+	}
+
+	/**
+	 * Half of the squared error of an example, so that the cost is the same as {@link #costFunction(FeatureParameters, DataSet, DataSetTarget, double)}
+	 */
+	static final LinearModels.ExampleLoss SQUARED_ERROR = new LinearModels.ExampleLoss() {
+		@Override
+		public double hypothesis(double z) {
+			return z;
+		}
+
+		@Override
+		public double cost(double hypothesis, double y) {
+			double error = hypothesis - y;
+			return error * error / 2.0;
+		}
+	};
+
 	/**
 	 * Calculates the hypothesis value for a data set given parameters theta
 	 *
@@ -134,6 +190,194 @@ public class LinearRegression {
 		return theta;
 	}
 
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer}.
+	 *
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @return n + 1 vector of the optimal parameters theta
+	 */
+	public static FeatureParameters gradientDescent(DataSet dataSet, DataSetTarget target, FeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations) {
+		return gradientDescent(dataSet, target, initialTheta, optimizer, lambda, numIterations, ConvergencePolicy.none()).getParameters();
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer} until it converges.
+	 *
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param policy the conditions under which training stops early
+	 * @return n + 1 vector of the optimal parameters theta and the report of the training run
+	 */
+	public static TrainingResult<FeatureParameters> gradientDescent(DataSet dataSet, DataSetTarget target, FeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		return gradientDescent(DataUtil.addBiasColumn(dataSet.getMatrix()), target.getMatrix(), initialTheta.getMatrix(), optimizer, lambda, numIterations, policy.start());
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer}.
+	 *
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias value)
+	 * @param target (m) vector of the target values for each m training examples
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param monitor the monitor which decides when training has converged
+	 * @return n + 1 vector of the optimal parameters theta and the report of the training run
+	 */
+	private static TrainingResult<FeatureParameters> gradientDescent(SimpleMatrix dataSet, SimpleMatrix target, SimpleMatrix initialTheta, Optimizer optimizer, double lambda, int numIterations, ConvergenceMonitor<FeatureParameters> monitor) {
+		assert(initialTheta.numCols() == 1); // is vector
+		assert(initialTheta.numRows() == dataSet.numCols()); // correct number of features
+		assert(dataSet.numRows() == target.numRows()); // correct number of training examples
+		assert(target.numCols() == 1); // is vector
+		assert(lambda >= 0 && Double.isFinite(lambda));
+
+		SimpleMatrix theta = initialTheta.copy();
+		DMatrixRMaj[] parameters = {theta.getDDRM()};
+		DMatrixRMaj[] gradients = {new DMatrixRMaj(theta.numRows(), 1)};
+		DMatrixRMaj errors = new DMatrixRMaj(dataSet.numRows(), 1);
+		FeatureParameters model = new FeatureParameters(theta);
+		int iterations = 0;
+		while (iterations < numIterations) {
+			gradient(parameters[0], dataSet.getDDRM(), target.getDDRM(), lambda, errors, gradients[0]);
+			double cost = monitor.requiresCost() ? cost(parameters[0], target.getDDRM(), lambda, errors) : Double.NaN;
+			if (monitor.hasConverged(iterations, cost, gradients, model)) {
+				break;
+			}
+			optimizer.update(parameters, gradients);
+			iterations++;
+		}
+		return new TrainingResult<>(model, monitor.finish(iterations));
+	}
+
+	/**
+	 * Computes the gradient of the cost function into a preallocated vector
+	 *
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias value)
+	 * @param target (m) vector of the target values for each m training examples
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param errors (m) vector used to store the difference between the hypothesis and the target values
+	 * @param gradient (n + 1) vector which the gradient is written to
+	 */
+	private static void gradient(DMatrixRMaj theta, DMatrixRMaj dataSet, DMatrixRMaj target, double lambda, DMatrixRMaj errors, DMatrixRMaj gradient) {
+		double m = dataSet.numRows;
+		CommonOps_DDRM.mult(dataSet, theta, errors);
+		CommonOps_DDRM.subtractEquals(errors, target);
+		CommonOps_DDRM.multTransA(dataSet, errors, gradient);
+		LinearModels.regularizeGradient(theta, lambda, m, gradient);
+	}
+
+	/**
+	 * Calculates the cost from the errors computed by {@link #gradient(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, double, DMatrixRMaj, DMatrixRMaj)}
+	 *
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param target (m) vector of the target values for each m training examples
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param errors (m) vector of the difference between the hypothesis and the target values
+	 * @return double of the cost of the parameters for the data set
+	 */
+	private static double cost(DMatrixRMaj theta, DMatrixRMaj target, double lambda, DMatrixRMaj errors) {
+		double cost = 0.0;
+		for (int k = 0; k < errors.numRows; k++) {
+			cost += errors.data[k] * errors.data[k];
+		}
+		return (cost / 2.0 + LinearModels.regularizationCost(theta, lambda)) / target.numRows;
+	}
+
+	/**
+	 * Calculates the cost for a stream of batches given parameters theta, reading one batch at a time
+	 *
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param dataSetStream the batches of training examples with n features and their target values
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return double of the cost of the parameters for every example of the stream
+	 */
+	public static double costFunction(FeatureParameters theta, BatchFullDataSetStream dataSetStream, double lambda) {
+		return LinearModels.costFunction(SQUARED_ERROR, theta, dataSetStream, lambda);
+	}
+
+	/**
+	 * Performs mini-batch gradient descent over a stream of batches, taking one step of the optimizer per batch
+	 *
+	 * @param dataSetStream the batches of training examples with n features and their target values
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of batches to be trained on
+	 * @return n + 1 vector of the optimal parameters theta
+	 */
+	public static FeatureParameters gradientDescent(BatchFullDataSetStream dataSetStream, FeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations) {
+		return gradientDescent(dataSetStream, initialTheta, optimizer, lambda, numIterations, ConvergencePolicy.none()).getParameters();
+	}
+
+	/**
+	 * Performs mini-batch gradient descent over a stream of batches, taking one step of the optimizer per batch.
+	 * Only one batch is held in memory at a time and examples are read directly from the batch without adding a bias column,
+	 * so the memory used does not depend on the size of the data set.
+	 *
+	 * @param dataSetStream the batches of training examples with n features and their target values.
+	 *                      Iteration i trains on batch i, so the stream should continue into further epochs past its number of batches.
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of batches to be trained on
+	 * @param policy the conditions under which training stops early (its relative tolerance compares the mean batch cost of consecutive epochs)
+	 * @return n + 1 vector of the optimal parameters theta and the report of the training run
+	 */
+	public static TrainingResult<FeatureParameters> gradientDescent(BatchFullDataSetStream dataSetStream, FeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		return LinearModels.gradientDescent(SQUARED_ERROR, dataSetStream, initialTheta, optimizer, lambda, numIterations, policy);
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with a {@link Minimizer} such as L-BFGS or nonlinear conjugate gradient,
+	 * which choose their own step sizes and usually converge in far fewer iterations than gradient descent.
+	 *
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param minimizer the minimizer which searches for the optimal parameters
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return n + 1 vector of the optimal parameters theta
+	 */
+	public static FeatureParameters minimize(DataSet dataSet, DataSetTarget target, FeatureParameters initialTheta, Minimizer minimizer, double lambda) {
+		return new FeatureParameters(minimize(DataUtil.addBiasColumn(dataSet.getMatrix()), target.getMatrix(), initialTheta.getMatrix(), minimizer, lambda));
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with a {@link Minimizer}
+	 *
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias value)
+	 * @param target (m) vector of the target values for each m training examples
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param minimizer the minimizer which searches for the optimal parameters
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return n + 1 vector of the optimal parameters theta
+	 */
+	private static SimpleMatrix minimize(SimpleMatrix dataSet, SimpleMatrix target, SimpleMatrix initialTheta, Minimizer minimizer, double lambda) {
+		assert(initialTheta.numCols() == 1); // is vector
+		assert(initialTheta.numRows() == dataSet.numCols()); // correct number of features
+		assert(dataSet.numRows() == target.numRows()); // correct number of training examples
+		assert(target.numCols() == 1); // is vector
+		assert(lambda >= 0 && Double.isFinite(lambda));
+
+		SimpleMatrix theta = initialTheta.copy();
+		DMatrixRMaj errors = new DMatrixRMaj(dataSet.numRows(), 1);
+		minimizer.minimize((parameters, gradient) -> {
+			gradient(parameters, dataSet.getDDRM(), target.getDDRM(), lambda, errors, gradient);
+			return cost(parameters, target.getDDRM(), lambda, errors);
+		}, theta.getDDRM());
+		return theta;
+	}
+
 	/**
 	 * Solves for the optimal parameters theta which minimizes the cost function for a data set.
 	 * <i>Recommended over gradient descent for small number of features (n ~ 1000 to 10000).</i>
@@ -1,9 +1,20 @@
 package com.github.chen.wentao.mllib.training;
 
 import com.github.chen.wentao.mllib.data.DataUtil;
+import com.github.chen.wentao.mllib.training.optimization.ConjugateGradientMinimizer;
+import com.github.chen.wentao.mllib.training.optimization.GradientDescentOptimizer;
+import com.github.chen.wentao.mllib.training.optimization.LBFGSMinimizer;
+import com.github.chen.wentao.mllib.training.optimization.Minimizer;
+import com.github.chen.wentao.mllib.training.optimization.Optimizer;
 import com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
 import org.ejml.simple.SimpleMatrix;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
 import static com.github.chen.wentao.mllib.data.DataUtil.sigmoid;
 import static com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil.ones;
 
@@ -33,10 +44,50 @@ public class LogisticRegression {
 		return (dataSet, target) -> LogisticRegression.gradientDescentMulti(dataSet, target, initial, alpha, lambda, numIterations);
 	}
 
+	public static SupervisedLearningAlgorithm<FeatureParameters> getAlgorithm(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations) {
+		return getAlgorithm(initial, optimizerGenerator, lambda, numIterations, ConvergencePolicy.none());
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters> getAlgorithm(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		return (dataSet, target) -> LogisticRegression.gradientDescent(dataSet, target, initial, optimizerGenerator.get(), lambda, numIterations, policy).getParameters();
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters[]> getAlgorithmMulti(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations) {
+		return getAlgorithmMulti(initial, optimizerGenerator, lambda, numIterations, ConvergencePolicy.none());
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters[]> getAlgorithmMulti(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		return (dataSet, target) -> parametersOf(LogisticRegression.gradientDescentMulti(dataSet, target, initial, optimizerGenerator, lambda, numIterations, policy));
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters> getAlgorithm(FeatureParameters initial, Supplier<Minimizer> minimizerGenerator, double lambda) {
+		return (dataSet, target) -> LogisticRegression.minimize(dataSet, target, initial, minimizerGenerator.get(), lambda);
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters> getLBFGSAlgorithm(FeatureParameters initial, double lambda, int maxIterations) {
+		return getAlgorithm(initial, () -> new LBFGSMinimizer(maxIterations), lambda);
+	}
+
+	public static SupervisedLearningAlgorithm<FeatureParameters> getConjugateGradientAlgorithm(FeatureParameters initial, double lambda, int maxIterations) {
+		return getAlgorithm(initial, () -> new ConjugateGradientMinimizer(maxIterations), lambda);
+	}
+
+	public static StreamSupervisedLearningAlgorithm<FeatureParameters> getStreamAlgorithm(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations) {
+		return getStreamAlgorithm(initial, optimizerGenerator, lambda, numIterations, ConvergencePolicy.none());
+	}
+
+	public static StreamSupervisedLearningAlgorithm<FeatureParameters> getStreamAlgorithm(FeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		return dataSetStream -> LogisticRegression.gradientDescent(dataSetStream, initial, optimizerGenerator.get(), lambda, numIterations, policy).getParameters();
+	}
+
 	public static CostFunction<FeatureParameters> getCostFunction(double lambda) {
 		return (theta, dataSet, target) -> costFunction(theta, dataSet, target, lambda);
 	}
 
+	public static StreamCostFunction<FeatureParameters> getStreamCostFunction(double lambda) {
+		return (theta, dataSetStream) -> costFunction(theta, dataSetStream, lambda);
+	}
+
 	public static CostFunction<FeatureParameters[]> getCostFunctionMulti(double lambda) {
 		return (thetas, dataSet, target) -> costFunctionMulti(thetas, dataSet, target, lambda);
 	}
@@ -44,6 +95,22 @@ public class LogisticRegression {
 	private static final double SIGMOID_SCALE = Math.nextDown(1.0);
 	private static final double SIGMOID_OFFSET = Double.MIN_VALUE;
 
+	/**
+	 * Cross entropy of the sigmoid hypothesis of an example, the same as in {@link #costFunction(FeatureParameters, DataSet, DataSetTarget, double)}
+	 */
+	static final LinearModels.ExampleLoss LOG_LOSS = new LinearModels.ExampleLoss() {
+		@Override
+		public double hypothesis(double z) {
+			return sigmoid(z);
+		}
+
+		@Override
+		public double cost(double hypothesis, double y) {
+			double h = hypothesis * SIGMOID_SCALE + SIGMOID_OFFSET; // Avoid taking the logarithm of 0.0
+			return -(y * Math.log(h) + (1.0 - y) * Math.log(1.0 - h));
+		}
+	};
+
 	/**
 	 * Calculates the hypothesis value for a data set given parameters theta
 	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
@@ -297,6 +364,238 @@ public class LogisticRegression {
 		return theta;
 	}
 
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer}.
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be either 0 or 1)
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @return n + 1 vector of the optimal parameters theta
+	 */
+	public static FeatureParameters gradientDescent(DataSet dataSet, DataSetTarget target, FeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations) {
+		return gradientDescent(dataSet, target, initialTheta, optimizer, lambda, numIterations, ConvergencePolicy.none()).getParameters();
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer} until it converges.
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be either 0 or 1)
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param policy the conditions under which training stops early
+	 * @return n + 1 vector of the optimal parameters theta and the report of the training run
+	 */
+	public static TrainingResult<FeatureParameters> gradientDescent(DataSet dataSet, DataSetTarget target, FeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		return gradientDescent(DataUtil.addBiasColumn(dataSet.getMatrix()), target.getMatrix(), initialTheta.getMatrix(), optimizer, lambda, numIterations, policy.start());
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer}.
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be either 0 or 1)
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param monitor the monitor which decides when training has converged
+	 * @return n + 1 vector of the optimal parameters theta and the report of the training run
+	 */
+	private static TrainingResult<FeatureParameters> gradientDescent(SimpleMatrix dataSet, SimpleMatrix target, SimpleMatrix initialTheta, Optimizer optimizer, double lambda, int numIterations, ConvergenceMonitor<FeatureParameters> monitor) {
+		assert(initialTheta.numCols() == 1); // is vector
+		assert(initialTheta.numRows() == dataSet.numCols()); // correct number of features
+		assert(dataSet.numRows() == target.numRows()); // correct number of training examples
+		assert(target.numCols() == 1); // is vector
+		assertValidTargetValues(target, 2);
+		assert(lambda >= 0 && Double.isFinite(lambda));
+
+		SimpleMatrix theta = initialTheta.copy();
+		DMatrixRMaj[] parameters = {theta.getDDRM()};
+		DMatrixRMaj[] gradients = {new DMatrixRMaj(theta.numRows(), 1)};
+		DMatrixRMaj errors = new DMatrixRMaj(dataSet.numRows(), 1);
+		FeatureParameters model = new FeatureParameters(theta);
+		int iterations = 0;
+		while (iterations < numIterations) {
+			gradient(parameters[0], dataSet.getDDRM(), target.getDDRM(), lambda, errors, gradients[0]);
+			double cost = monitor.requiresCost() ? cost(parameters[0], target.getDDRM(), lambda, errors) : Double.NaN;
+			if (monitor.hasConverged(iterations, cost, gradients, model)) {
+				break;
+			}
+			optimizer.update(parameters, gradients);
+			iterations++;
+		}
+		return new TrainingResult<>(model, monitor.finish(iterations));
+	}
+
+	/**
+	 * Computes the gradient of the cost function into a preallocated vector
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be either 0 or 1)
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param errors (m) vector used to store the difference between the hypothesis and the target values
+	 * @param gradient (n + 1) vector which the gradient is written to
+	 */
+	private static void gradient(DMatrixRMaj theta, DMatrixRMaj dataSet, DMatrixRMaj target, double lambda, DMatrixRMaj errors, DMatrixRMaj gradient) {
+		double m = dataSet.numRows;
+		CommonOps_DDRM.mult(dataSet, theta, errors);
+		for (int k = 0; k < errors.numRows; k++) {
+			errors.data[k] = sigmoid(errors.data[k]) - target.data[k];
+		}
+		CommonOps_DDRM.multTransA(dataSet, errors, gradient);
+		LinearModels.regularizeGradient(theta, lambda, m, gradient);
+	}
+
+	/**
+	 * Calculates the cost from the errors computed by {@link #gradient(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, double, DMatrixRMaj, DMatrixRMaj)}
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param target (m) vector of the target values for each m training examples (each element should be either 0 or 1)
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param errors (m) vector of the difference between the hypothesis and the target values
+	 * @return double of the cost of the parameters for the data set
+	 */
+	private static double cost(DMatrixRMaj theta, DMatrixRMaj target, double lambda, DMatrixRMaj errors) {
+		double cost = 0.0;
+		for (int k = 0; k < errors.numRows; k++) {
+			double y = target.data[k];
+			double hypothesis = (errors.data[k] + y) * SIGMOID_SCALE + SIGMOID_OFFSET; // Avoid taking the logarithm of 0.0
+			cost -= y * Math.log(hypothesis) + (1.0 - y) * Math.log(1.0 - hypothesis);
+		}
+		return (cost + LinearModels.regularizationCost(theta, lambda)) / target.numRows;
+	}
+
+	/**
+	 * Calculates the cost for a stream of batches given parameters theta, reading one batch at a time
+	 *
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter)
+	 * @param dataSetStream the batches of training examples with n features and their target values
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return double of the cost of the parameters for every example of the stream
+	 */
+	public static double costFunction(FeatureParameters theta, BatchFullDataSetStream dataSetStream, double lambda) {
+		return LinearModels.costFunction(LOG_LOSS, theta, dataSetStream, lambda);
+	}
+
+	/**
+	 * Performs mini-batch gradient descent over a stream of batches, taking one step of the optimizer per batch
+	 *
+	 * @param dataSetStream the batches of training examples with n features and their target values (each target value should be either 0 or 1)
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of batches to be trained on
+	 * @return n + 1 vector of the optimal parameters theta
+	 */
+	public static FeatureParameters gradientDescent(BatchFullDataSetStream dataSetStream, FeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations) {
+		return gradientDescent(dataSetStream, initialTheta, optimizer, lambda, numIterations, ConvergencePolicy.none()).getParameters();
+	}
+
+	/**
+	 * Performs mini-batch gradient descent over a stream of batches, taking one step of the optimizer per batch.
+	 * Only one batch is held in memory at a time and examples are read directly from the batch without adding a bias column,
+	 * so the memory used does not depend on the size of the data set.
+	 *
+	 * @param dataSetStream the batches of training examples with n features and their target values (each target value should be either 0 or 1).
+	 *                      Iteration i trains on batch i, so the stream should continue into further epochs past its number of batches.
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of batches to be trained on
+	 * @param policy the conditions under which training stops early (its relative tolerance compares the mean batch cost of consecutive epochs)
+	 * @return n + 1 vector of the optimal parameters theta and the report of the training run
+	 */
+	public static TrainingResult<FeatureParameters> gradientDescent(BatchFullDataSetStream dataSetStream, FeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		return LinearModels.gradientDescent(LOG_LOSS, dataSetStream, initialTheta, optimizer, lambda, numIterations, policy);
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with a {@link Minimizer} such as L-BFGS or nonlinear conjugate gradient,
+	 * which choose their own step sizes and usually converge in far fewer iterations than gradient descent.
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be either 0 or 1)
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param minimizer the minimizer which searches for the optimal parameters
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return n + 1 vector of the optimal parameters theta
+	 */
+	public static FeatureParameters minimize(DataSet dataSet, DataSetTarget target, FeatureParameters initialTheta, Minimizer minimizer, double lambda) {
+		return new FeatureParameters(minimize(DataUtil.addBiasColumn(dataSet.getMatrix()), target.getMatrix(), initialTheta.getMatrix(), minimizer, lambda));
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with a {@link Minimizer}
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be either 0 or 1)
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param minimizer the minimizer which searches for the optimal parameters
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return n + 1 vector of the optimal parameters theta
+	 */
+	private static SimpleMatrix minimize(SimpleMatrix dataSet, SimpleMatrix target, SimpleMatrix initialTheta, Minimizer minimizer, double lambda) {
+		assert(initialTheta.numCols() == 1); // is vector
+		assert(initialTheta.numRows() == dataSet.numCols()); // correct number of features
+		assert(dataSet.numRows() == target.numRows()); // correct number of training examples
+		assert(target.numCols() == 1); // is vector
+		assert(lambda >= 0 && Double.isFinite(lambda));
+
+		SimpleMatrix theta = initialTheta.copy();
+		DMatrixRMaj errors = new DMatrixRMaj(dataSet.numRows(), 1);
+		minimizer.minimize((parameters, gradient) -> {
+			gradient(parameters, dataSet.getDDRM(), target.getDDRM(), lambda, errors, gradient);
+			return cost(parameters, target.getDDRM(), lambda, errors);
+		}, theta.getDDRM());
+		return theta;
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer} for each label.
+	 * Trains {@code labels} number of classifiers and uses one-vs-all strategy to perform multi-class classification
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be either an integer greater or equal to 0 and less than the number of labels)
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizerGenerator supplies a new optimizer for the classifier of each label
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @return (number of labels)-length array of n + 1 vectors of the optimal parameters theta
+	 */
+	public static FeatureParameters[] gradientDescentMulti(DataSet dataSet, DataSetTarget target, FeatureParameters initialTheta, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations) {
+		return parametersOf(gradientDescentMulti(dataSet, target, initialTheta, optimizerGenerator, lambda, numIterations, ConvergencePolicy.none()));
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer} for each label until each classifier converges.
+	 * Trains {@code labels} number of classifiers and uses one-vs-all strategy to perform multi-class classification
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be either an integer greater or equal to 0 and less than the number of labels)
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizerGenerator supplies a new optimizer for the classifier of each label
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param policy the conditions under which training of each classifier stops early
+	 * @return the optimal parameters theta and the report of the training run of the classifier of every label, in the order of the labels
+	 */
+	public static List<TrainingResult<FeatureParameters>> gradientDescentMulti(DataSet dataSet, DataSetTarget target, FeatureParameters initialTheta, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy) {
+		assert(initialTheta.numFeatures() == dataSet.numFeatures() + 1); // correct number of features
+		SimpleMatrix dataSetMatrix = DataUtil.addBiasColumn(dataSet.getMatrix());
+		SimpleMatrix targetMatrix = target.getMatrix();
+		assertValidTargetValues(targetMatrix, target.numLabels());
+
+		ConvergenceReport[] reports = new ConvergenceReport[target.numLabels()];
+		SimpleMatrix[] labelThetas = gradientDescentMulti(dataSetMatrix, targetMatrix, initialTheta.getMatrix(), target.numLabels(), optimizerGenerator, lambda, numIterations, policy, reports);
+		List<TrainingResult<FeatureParameters>> results = new ArrayList<>(labelThetas.length);
+		for (int i = 0; i < labelThetas.length; i++) {
+			results.add(new TrainingResult<>(new FeatureParameters(labelThetas[i]), reports[i]));
+		}
+		return results;
+	}
+
+	private static FeatureParameters[] parametersOf(List<TrainingResult<FeatureParameters>> results) {
+		return results.stream().map(TrainingResult::getParameters).toArray(FeatureParameters[]::new);
+	}
+
 	/**
 	 * Performs gradient descent to find the optimal parameters theta which minimizes the cost function for a data set.
 	 * Trains {@code labels} number of classifiers and uses one-vs-all strategy to perform multi-class classification
@@ -340,12 +639,121 @@ public class LogisticRegression {
 		// Add bias values
 		dataSet = DataUtil.addBiasColumn(dataSet);
 
-		SimpleMatrix[] labelGradientDescents = new SimpleMatrix[labels];
-		for (int i = 0; i < labels; i++) {
-			SimpleMatrix binaryTarget = SimpleMatrixUtil.filterEquals(target, i);
-			labelGradientDescents[i] = gradientDescent(dataSet, binaryTarget, initialTheta, alpha, lambda, numIterations);
+		return gradientDescentMulti(dataSet, target, initialTheta, labels, () -> new GradientDescentOptimizer(alpha), lambda, numIterations, ConvergencePolicy.none(), new ConvergenceReport[labels]);
+	}
+
+	/**
+	 * Minimizes the cost function of every one-vs-all classifier at once.
+	 * The errors of all classifiers still training are computed together so each iteration only needs one
+	 * (m) x (n + 1) x (labels) product for the hypotheses and one for the gradients, instead of two matrix-vector products per label.
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias value)
+	 * @param target (m) vector of the target values for each m training examples (each element should be either an integer greater or equal to 0 and less than the number of labels)
+	 * @param initialTheta (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param labels the number of different labels used
+	 * @param optimizerGenerator supplies a new optimizer for the classifier of each label
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param policy the conditions under which training of each classifier stops early
+	 * @param reports (number of labels)-length array which the report of the training run of each classifier is written to
+	 * @return (number of labels)-length array of n + 1 vectors of the optimal parameters theta
+	 */
+	private static SimpleMatrix[] gradientDescentMulti(SimpleMatrix dataSet, SimpleMatrix target, SimpleMatrix initialTheta, int labels, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<FeatureParameters> policy, ConvergenceReport[] reports) {
+		assert(initialTheta.numCols() == 1); // is vector
+		assert(initialTheta.numRows() == dataSet.numCols()); // correct number of features
+		assert(dataSet.numRows() == target.numRows()); // correct number of training examples
+		assert(target.numCols() == 1); // is vector
+		assert(lambda >= 0 && Double.isFinite(lambda));
+
+		final int m = dataSet.numRows();
+		final int features = dataSet.numCols();
+		DMatrixRMaj x = dataSet.getDDRM();
+		int[] targetLabels = new int[m];
+		for (int i = 0; i < m; i++) {
+			targetLabels[i] = (int) target.get(i);
+		}
+
+		SimpleMatrix[] thetas = new SimpleMatrix[labels];
+		DMatrixRMaj[][] parameters = new DMatrixRMaj[labels][];
+		DMatrixRMaj[][] gradients = new DMatrixRMaj[labels][];
+		Optimizer[] optimizers = new Optimizer[labels];
+		FeatureParameters[] models = new FeatureParameters[labels];
+		List<ConvergenceMonitor<FeatureParameters>> monitors = new ArrayList<>(labels);
+		int[] active = new int[labels]; // Labels whose classifiers are still training
+		for (int label = 0; label < labels; label++) {
+			thetas[label] = initialTheta.copy();
+			parameters[label] = new DMatrixRMaj[] {thetas[label].getDDRM()};
+			gradients[label] = new DMatrixRMaj[] {new DMatrixRMaj(features, 1)};
+			optimizers[label] = optimizerGenerator.get();
+			models[label] = new FeatureParameters(thetas[label]);
+			monitors.add(policy.start());
+			active[label] = label;
+		}
+
+		DMatrixRMaj activeThetas = new DMatrixRMaj(labels, features);
+		DMatrixRMaj errors = new DMatrixRMaj(m, labels);
+		DMatrixRMaj activeGradients = new DMatrixRMaj(labels, features);
+		int numActive = labels;
+		int iterations = 0;
+		while (numActive > 0 && iterations < numIterations) {
+			activeThetas.reshape(numActive, features);
+			errors.reshape(m, numActive);
+			activeGradients.reshape(numActive, features);
+			for (int c = 0; c < numActive; c++) {
+				System.arraycopy(parameters[active[c]][0].data, 0, activeThetas.data, c * features, features);
+			}
+
+			CommonOps_DDRM.multTransB(x, activeThetas, errors);
+			for (int i = 0; i < m; i++) {
+				int rowOffset = i * numActive;
+				for (int c = 0; c < numActive; c++) {
+					errors.data[rowOffset + c] = sigmoid(errors.data[rowOffset + c]) - (targetLabels[i] == active[c] ? 1.0 : 0.0);
+				}
+			}
+			CommonOps_DDRM.multTransA(errors, x, activeGradients);
+
+			int remaining = 0;
+			for (int c = 0; c < numActive; c++) {
+				int label = active[c];
+				DMatrixRMaj theta = parameters[label][0];
+				DMatrixRMaj gradient = gradients[label][0];
+				System.arraycopy(activeGradients.data, c * features, gradient.data, 0, features);
+				LinearModels.regularizeGradient(theta, lambda, m, gradient);
+				ConvergenceMonitor<FeatureParameters> monitor = monitors.get(label);
+				double cost = monitor.requiresCost() ? labelCost(theta, targetLabels, label, lambda, errors, c) : Double.NaN;
+				if (monitor.hasConverged(iterations, cost, gradients[label], models[label])) {
+					reports[label] = monitor.finish(iterations);
+				} else {
+					optimizers[label].update(parameters[label], gradients[label]);
+					active[remaining++] = label;
+				}
+			}
+			numActive = remaining;
+			iterations++;
+		}
+		for (int c = 0; c < numActive; c++) {
+			reports[active[c]] = monitors.get(active[c]).finish(iterations);
+		}
+		return thetas;
+	}
+
+	/**
+	 * Calculates the cost of one classifier from a column of errors computed for every classifier
+	 * @param theta (n + 1) vector of n parameter features (and bias parameter) of the classifier
+	 * @param targetLabels (m) array of the target label of each training example
+	 * @param label the label the classifier predicts
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param errors (m) x (k) matrix of the difference between the hypothesis and the target values of k classifiers
+	 * @param column the column of {@code errors} of the classifier
+	 * @return double of the cost of the parameters for the data set
+	 */
+	private static double labelCost(DMatrixRMaj theta, int[] targetLabels, int label, double lambda, DMatrixRMaj errors, int column) {
+		double cost = 0.0;
+		for (int k = 0; k < targetLabels.length; k++) {
+			double y = targetLabels[k] == label ? 1.0 : 0.0;
+			double hypothesis = (errors.data[k * errors.numCols + column] + y) * SIGMOID_SCALE + SIGMOID_OFFSET; // Avoid taking the logarithm of 0.0
+			cost -= y * Math.log(hypothesis) + (1.0 - y) * Math.log(1.0 - hypothesis);
 		}
-		return labelGradientDescents;
+		return (cost + LinearModels.regularizationCost(theta, lambda)) / targetLabels.length;
 	}
 
 	private static void assertValidTargetValues(SimpleMatrix target, int labels) {
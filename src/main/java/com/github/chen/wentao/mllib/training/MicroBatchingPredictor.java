@@ -0,0 +1,161 @@
+package com.github.chen.wentao.mllib.training;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves concurrent requests to a {@link CompiledNeuralNetwork} by grouping them into batches on a background thread,
+ * so the weights of every layer are read once per batch instead of once per request.
+ * <p>
+ * The background thread takes every request already waiting when it becomes free, up to a maximum batch size.
+ * With a maximum delay of 0, a lone request is computed immediately and requests are only grouped when they arrive faster than they are served,
+ * which keeps latency at the cost of a single example under light load. A positive delay holds the first request of a batch
+ * until the batch is full or the delay has passed, which trades latency for larger batches.
+ */
+public class MicroBatchingPredictor implements Closeable {
+
+	private final CompiledNeuralNetwork network;
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+	private final Thread thread;
+	private volatile boolean closed;
+
+	/**
+	 * @param network the network which computes the outputs
+	 * @param maxBatchSize the maximum number of requests computed together (greater than 0)
+	 * @param maxDelay the maximum time the first request of a batch waits for more requests (greater or equal to 0)
+	 * @param unit the unit of the delay
+	 */
+	public MicroBatchingPredictor(CompiledNeuralNetwork network, int maxBatchSize, long maxDelay, TimeUnit unit) {
+		assert maxBatchSize > 0;
+		assert maxDelay >= 0;
+
+		this.network = network;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		this.thread = new Thread(this::serve, "inference-batcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Queues an example to be computed in the next batch
+	 * @param features the (s0) features of the example, which must not be modified until the result is complete
+	 * @return the future (sL) outputs of the example
+	 * @throws IllegalArgumentException if the number of features does not match the input layer of the network
+	 */
+	public CompletableFuture<double[]> submit(double... features) {
+		if (features.length != network.numInputs()) { // Checked here, since a wrong length would fail the whole batch or be silently truncated
+			throw new IllegalArgumentException("Expected " + network.numInputs() + " features but found " + features.length);
+		}
+		if (closed) {
+			throw new IllegalStateException("Predictor is closed");
+		}
+		Request request = new Request(features);
+		queue.add(request);
+		if (closed && queue.remove(request)) {
+			request.result.completeExceptionally(new CancellationException("Predictor is closed"));
+		}
+		return request.result;
+	}
+
+	/**
+	 * Computes the outputs of an example in the next batch, waiting for the result
+	 * @param features the (s0) features of the example
+	 * @return the (sL) outputs of the example
+	 * @throws IllegalArgumentException if the number of features does not match the input layer of the network
+	 */
+	public double[] compute(double... features) {
+		try {
+			return submit(features).join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	private void serve() {
+		final int inputs = network.numInputs();
+		final int outputs = network.numOutputs();
+		double[] batchInputs = new double[maxBatchSize * inputs];
+		double[] batchOutputs = new double[maxBatchSize * outputs];
+		List<Request> batch = new ArrayList<>(maxBatchSize);
+		try {
+			while (!closed) {
+				batch.add(queue.take());
+				queue.drainTo(batch, maxBatchSize - batch.size());
+				if (maxDelayNanos > 0) {
+					long deadline = System.nanoTime() + maxDelayNanos;
+					long remaining;
+					while (batch.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0) {
+						Request request = queue.poll(remaining, TimeUnit.NANOSECONDS);
+						if (request == null) {
+							break;
+						}
+						batch.add(request);
+						queue.drainTo(batch, maxBatchSize - batch.size());
+					}
+				}
+
+				int m = batch.size();
+				try {
+					for (int k = 0; k < m; k++) {
+						System.arraycopy(batch.get(k).features, 0, batchInputs, k * inputs, inputs);
+					}
+					network.compute(batchInputs, 0, m, batchOutputs, 0);
+					for (int k = 0; k < m; k++) {
+						double[] result = new double[outputs];
+						System.arraycopy(batchOutputs, k * outputs, result, 0, outputs);
+						batch.get(k).result.complete(result);
+					}
+				} catch (RuntimeException | Error e) {
+					for (Request request : batch) {
+						request.result.completeExceptionally(e);
+					}
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			// Closed while waiting for requests
+		} finally {
+			for (Request request : batch) {
+				request.result.completeExceptionally(new CancellationException("Predictor is closed"));
+			}
+			Request request;
+			while ((request = queue.poll()) != null) {
+				request.result.completeExceptionally(new CancellationException("Predictor is closed"));
+			}
+		}
+	}
+
+	/**
+	 * Stops the background thread, cancelling requests which were not computed yet
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		thread.interrupt();
+	}
+
+	private static final class Request {
+
+		private final double[] features;
+		private final CompletableFuture<double[]> result = new CompletableFuture<>();
+
+		private Request(double[] features) {
+			this.features = features;
+		}
+	}
+}
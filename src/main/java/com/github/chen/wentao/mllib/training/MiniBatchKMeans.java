@@ -0,0 +1,194 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Random;
+
+/**
+ * Mini-batch k-means (Sculley, Web-Scale K-Means Clustering) which clusters data sets that are only available in batches.
+ * Every example moves its closest centroid towards it with a learning rate of 1 / (number of examples assigned to the centroid so far),
+ * so each centroid is the running mean of the examples it has been assigned. Only the (k) x (n) centroids and their counts are kept
+ * between batches, and training can continue whenever new batches arrive.
+ */
+public class MiniBatchKMeans {
+
+	private final int numberOfCentroids;
+	private final int numFeatures;
+	private final Random random;
+	private final double[] centroids; // (k) x (n) row-major centroids
+	private final long[] counts; // Number of examples assigned to each centroid so far
+	private int[] assignments = new int[0]; // Closest centroid of each example of the current batch
+	private boolean initialized;
+
+	/**
+	 * @param numberOfCentroids the number of clusters (greater than 0)
+	 * @param numFeatures the number of features of every example
+	 * @param random the source of randomness used to choose the initial centroids
+	 */
+	public MiniBatchKMeans(int numberOfCentroids, int numFeatures, Random random) {
+		assert numberOfCentroids > 0;
+		assert numFeatures > 0;
+
+		this.numberOfCentroids = numberOfCentroids;
+		this.numFeatures = numFeatures;
+		this.random = random;
+		this.centroids = new double[numberOfCentroids * numFeatures];
+		this.counts = new long[numberOfCentroids];
+	}
+
+	/**
+	 * Trains a new model on every batch of a stream
+	 * @param dataSetStream the batches of training examples
+	 * @param random the source of randomness used to choose the initial centroids
+	 * @param numberOfCentroids the number of clusters (greater than 0)
+	 * @param epochs the number of passes over the stream (greater than 0)
+	 * @return the trained model
+	 * @throws IllegalArgumentException if the number of epochs is not positive or the stream has no batches
+	 */
+	public static MiniBatchKMeans fit(BatchFullDataSetStream dataSetStream, Random random, int numberOfCentroids, int epochs) {
+		if (epochs <= 0) {
+			throw new IllegalArgumentException("Number of epochs must be positive but was " + epochs);
+		}
+		final int batches = dataSetStream.numBatches();
+		if (batches <= 0) {
+			throw new IllegalArgumentException("Stream has no batches");
+		}
+		DataSet first = dataSetStream.getBatch(0).getDataSet();
+		MiniBatchKMeans model = new MiniBatchKMeans(numberOfCentroids, first.numFeatures(), random);
+		model.partialFit(first);
+		for (long i = 1, end = (long) epochs * batches; i < end; i++) {
+			model.partialFit(dataSetStream.getBatch((int) (i % batches)).getDataSet());
+		}
+		return model;
+	}
+
+	/**
+	 * Continues training on a range of batches of a stream, so that consecutive calls can resume where the previous one stopped
+	 * @param dataSetStream the batches of training examples
+	 * @param startBatch the index of the first batch to train on (greater or equal to 0)
+	 * @param numBatches the number of batches to train on (greater than 0)
+	 * @return {@code this}
+	 * @throws IllegalArgumentException if the index of the first batch is negative or the number of batches is not positive
+	 */
+	public MiniBatchKMeans partialFit(BatchDataSetStream dataSetStream, int startBatch, int numBatches) {
+		if (startBatch < 0) {
+			throw new IllegalArgumentException("Index of the first batch must not be negative but was " + startBatch);
+		}
+		if (numBatches <= 0) {
+			throw new IllegalArgumentException("Number of batches must be positive but was " + numBatches);
+		}
+
+		for (int i = 0; i < numBatches; i++) {
+			partialFit(dataSetStream.getBatch(startBatch + i));
+		}
+		return this;
+	}
+
+	/**
+	 * Continues training on a batch of examples.
+	 * The centroids are initialized with k-means++ on the first batch, which must have at least k examples.
+	 * @param batch (b) x (n) matrix of b training examples and n features
+	 * @return {@code this}
+	 */
+	public MiniBatchKMeans partialFit(DataSet batch) {
+		assert batch.numFeatures() == numFeatures; // Correct number of features
+
+		double[] data = batch.getMatrix().getDDRM().data;
+		int b = batch.numExamples();
+		final int n = numFeatures;
+		if (!initialized) {
+			assert b >= numberOfCentroids;
+			System.arraycopy(KMeansClustering.kMeansPlusPlus(data, null, b, n, random, numberOfCentroids), 0, centroids, 0, centroids.length);
+			initialized = true;
+		}
+
+		// Assign the whole batch before moving any centroid
+		if (assignments.length < b) {
+			assignments = new int[b];
+		}
+		for (int i = 0; i < b; i++) {
+			assignments[i] = closestCentroid(data, i * n);
+		}
+		for (int i = 0; i < b; i++) {
+			int c = assignments[i];
+			counts[c]++;
+			double learningRate = 1.0 / counts[c];
+			int centroidOffset = c * n;
+			int rowOffset = i * n;
+			for (int x = 0; x < n; x++) {
+				centroids[centroidOffset + x] += learningRate * (data[rowOffset + x] - centroids[centroidOffset + x]);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Finds the closest centroid of every example of a data set
+	 * @param dataSet (m) x (n) matrix of m examples and n features
+	 * @return (m) array of the index of the closest centroid of each example
+	 */
+	public int[] predict(DataSet dataSet) {
+		assert initialized;
+		assert dataSet.numFeatures() == numFeatures; // Correct number of features
+
+		double[] data = dataSet.getMatrix().getDDRM().data;
+		int[] closestCentroids = new int[dataSet.numExamples()];
+		for (int i = 0; i < closestCentroids.length; i++) {
+			closestCentroids[i] = closestCentroid(data, i * numFeatures);
+		}
+		return closestCentroids;
+	}
+
+	/**
+	 * Calculates the mean squared distance of every example of a stream to its closest centroid
+	 * @param dataSetStream the batches of examples
+	 * @return double of the cost of the centroids for the stream
+	 */
+	public double cost(BatchFullDataSetStream dataSetStream) {
+		assert initialized;
+
+		double sum = 0.0;
+		long m = 0;
+		for (int i = 0, batches = dataSetStream.numBatches(); i < batches; i++) {
+			DataSet batch = dataSetStream.getBatch(i).getDataSet();
+			double[] data = batch.getMatrix().getDDRM().data;
+			for (int k = 0, b = batch.numExamples(); k < b; k++) {
+				int rowOffset = k * numFeatures;
+				sum += KMeansClustering.squaredDistance(data, rowOffset, centroids, closestCentroid(data, rowOffset) * numFeatures, numFeatures);
+			}
+			m += batch.numExamples();
+		}
+		return sum / m;
+	}
+
+	private int closestCentroid(double[] data, int rowOffset) {
+		int closest = 0;
+		double closestDistance = Double.POSITIVE_INFINITY;
+		for (int c = 0; c < numberOfCentroids; c++) {
+			double distance = KMeansClustering.squaredDistance(data, rowOffset, centroids, c * numFeatures, numFeatures);
+			if (distance < closestDistance) {
+				closest = c;
+				closestDistance = distance;
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * @return (k) x (n) matrix of a copy of the centroids
+	 */
+	public SimpleMatrix getCentroids() {
+		return new SimpleMatrix(numberOfCentroids, numFeatures, true, centroids);
+	}
+
+	/**
+	 * @return the number of examples assigned to a centroid so far
+	 */
+	public long getCount(int centroid) {
+		return counts[centroid];
+	}
+
+	public int numCentroids() {
+		return numberOfCentroids;
+	}
+}
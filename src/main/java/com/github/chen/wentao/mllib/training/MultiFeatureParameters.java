@@ -0,0 +1,40 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.simple.SimpleMatrix;
+
+public class MultiFeatureParameters implements MatrixWrapper {
+
+	private final SimpleMatrix theta;
+
+	public MultiFeatureParameters(int numFeatures, int numLabels) {
+		this(new SimpleMatrix(numFeatures, numLabels));
+	}
+
+	/**
+	 * @param theta (n + 1) x (k) matrix of n parameter features (and bias parameter) for each of k labels
+	 */
+	public MultiFeatureParameters(SimpleMatrix theta) {
+		this.theta = theta;
+	}
+
+	@Override
+	public SimpleMatrix getMatrix() {
+		return theta;
+	}
+
+	public double get(int featureIndex, int label) {
+		return theta.get(featureIndex, label);
+	}
+
+	public FeatureParameters getLabelParameters(int label) {
+		return new FeatureParameters(theta.extractVector(false, label));
+	}
+
+	public int numFeatures() {
+		return theta.numRows();
+	}
+
+	public int numLabels() {
+		return theta.numCols();
+	}
+}
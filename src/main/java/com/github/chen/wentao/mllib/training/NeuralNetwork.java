@@ -1,25 +1,32 @@
 package com.github.chen.wentao.mllib.training;
 
 import com.github.chen.wentao.mllib.data.DataUtil;
+import com.github.chen.wentao.mllib.training.optimization.GradientDescentOptimizer;
+import com.github.chen.wentao.mllib.training.optimization.Optimizer;
 import com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil;
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.data.MatrixType;
 import org.ejml.simple.SimpleMatrix;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Supplier;
 import java.util.function.ToIntBiFunction;
 
-import static com.github.chen.wentao.mllib.data.DataUtil.sigmoid;
-import static com.github.chen.wentao.mllib.data.DataUtil.sigmoidGrad;
-import static com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil.ones;
-
 public class NeuralNetwork implements Serializable {
 
 	private static final long serialVersionUID = 4117915678580746872L;
+	private static final String ACTIVATION_FILE_NAME = "activations.nnact";
 
 	public static AlgorithmHypothesis getPredictorHypothesis(NeuralNetwork network) {
 		return network::predict;
@@ -57,6 +64,26 @@ public class NeuralNetwork implements Serializable {
 		};
 	}
 
+	public static SupervisedLearningAlgorithm<NeuralNetwork> getParallelMiniBatchAlgorithm(Supplier<NeuralNetwork> networkGenerator, double alpha, double lambda, int numIterations, int batchSize, ForkJoinPool pool, int numShards) {
+		return (dataSet, target) -> {
+			NeuralNetwork network = networkGenerator.get();
+			network.trainMiniBatchParallel(dataSet, target, alpha, lambda, numIterations, batchSize, pool, numShards);
+			return network;
+		};
+	}
+
+	public static SupervisedLearningAlgorithm<NeuralNetwork> getParallelAlgorithm(Supplier<NeuralNetwork> networkGenerator, double alpha, double lambda, int numIterations, ForkJoinPool pool, int numShards) {
+		return (dataSet, target) -> {
+			NeuralNetwork network = networkGenerator.get();
+			network.trainParallel(dataSet, target, alpha, lambda, numIterations, pool, numShards);
+			return network;
+		};
+	}
+
+	public static SupervisedLearningAlgorithm<NeuralNetwork> getParallelAlgorithm(Supplier<NeuralNetwork> networkGenerator, double alpha, double lambda, int numIterations, ForkJoinPool pool) {
+		return getParallelAlgorithm(networkGenerator, alpha, lambda, numIterations, pool, pool.getParallelism());
+	}
+
 	public static StreamSupervisedLearningAlgorithm<NeuralNetwork> getStreamAlgorithm(Supplier<NeuralNetwork> networkGenerator, double alpha, double lambda, int numIterations) {
 		return dataSet -> {
 			NeuralNetwork network = networkGenerator.get();
@@ -65,6 +92,58 @@ public class NeuralNetwork implements Serializable {
 		};
 	}
 
+	public static SupervisedLearningAlgorithm<NeuralNetwork> getAlgorithm(Supplier<NeuralNetwork> networkGenerator, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations) {
+		return getAlgorithm(networkGenerator, optimizerGenerator, lambda, numIterations, ConvergencePolicy.none());
+	}
+
+	public static SupervisedLearningAlgorithm<NeuralNetwork> getAlgorithm(Supplier<NeuralNetwork> networkGenerator, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<NeuralNetwork> policy) {
+		return (dataSet, target) -> {
+			NeuralNetwork network = networkGenerator.get();
+			network.train(dataSet, target, optimizerGenerator.get(), lambda, numIterations, policy);
+			return network;
+		};
+	}
+
+	public static SupervisedLearningAlgorithm<NeuralNetwork> getMiniBatchAlgorithm(Supplier<NeuralNetwork> networkGenerator, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, int batchSize) {
+		return getMiniBatchAlgorithm(networkGenerator, optimizerGenerator, lambda, numIterations, batchSize, ConvergencePolicy.none());
+	}
+
+	public static SupervisedLearningAlgorithm<NeuralNetwork> getMiniBatchAlgorithm(Supplier<NeuralNetwork> networkGenerator, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, int batchSize, ConvergencePolicy<NeuralNetwork> policy) {
+		return (dataSet, target) -> {
+			NeuralNetwork network = networkGenerator.get();
+			network.trainMiniBatch(dataSet, target, optimizerGenerator.get(), lambda, numIterations, batchSize, policy);
+			return network;
+		};
+	}
+
+	public static SupervisedLearningAlgorithm<NeuralNetwork> getShuffledMiniBatchAlgorithm(Supplier<NeuralNetwork> networkGenerator, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, int batchSize, EpochBatchSampler.LastBatch lastBatch, long seed, ConvergencePolicy<NeuralNetwork> policy) {
+		return (dataSet, target) -> {
+			NeuralNetwork network = networkGenerator.get();
+			network.trainMiniBatch(new EpochBatchSampler(dataSet, target, batchSize, lastBatch, seed), optimizerGenerator.get(), lambda, numIterations, policy);
+			return network;
+		};
+	}
+
+	public static SupervisedLearningAlgorithm<NeuralNetwork> getParallelMiniBatchAlgorithm(Supplier<NeuralNetwork> networkGenerator, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, int batchSize, ForkJoinPool pool, int numShards) {
+		return (dataSet, target) -> {
+			NeuralNetwork network = networkGenerator.get();
+			network.trainMiniBatchParallel(dataSet, target, optimizerGenerator.get(), lambda, numIterations, batchSize, pool, numShards);
+			return network;
+		};
+	}
+
+	public static StreamSupervisedLearningAlgorithm<NeuralNetwork> getStreamAlgorithm(Supplier<NeuralNetwork> networkGenerator, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations) {
+		return getStreamAlgorithm(networkGenerator, optimizerGenerator, lambda, numIterations, ConvergencePolicy.none());
+	}
+
+	public static StreamSupervisedLearningAlgorithm<NeuralNetwork> getStreamAlgorithm(Supplier<NeuralNetwork> networkGenerator, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<NeuralNetwork> policy) {
+		return dataSet -> {
+			NeuralNetwork network = networkGenerator.get();
+			network.trainMiniBatch(dataSet, optimizerGenerator.get(), lambda, numIterations, policy);
+			return network;
+		};
+	}
+
 	public static CostFunction<NeuralNetwork> getCostFunction(double lambda) {
 		return (network, dataSet, target) -> network.costFunction(dataSet, target, lambda);
 	}
@@ -74,23 +153,81 @@ public class NeuralNetwork implements Serializable {
 	}
 
 	private final SimpleMatrix[] thetas;
+	private final Activation[] activationFunctions; // Activation function of layer i + 1 (null if deserialized from a network saved before activations were pluggable)
+	private transient NeuralNetworkWorkspace workspace;
+	private transient FloatNeuralNetworkWorkspace floatWorkspace;
+	private transient boolean singlePrecision;
 
+	/**
+	 * Creates a network with the sigmoid activation function in every layer
+	 * @param thetas the weights of every layer
+	 */
 	public NeuralNetwork(SimpleMatrix[] thetas) {
+		this(thetas, sigmoidActivations(thetas.length));
+	}
+
+	/**
+	 * Creates a network with an activation function for every layer
+	 * @param thetas the weights of every layer
+	 * @param activationFunctions the activation function of every layer except the input layer where the activation function of
+	 *                            the output layer is either {@link Activation#SIGMOID} or {@link Activation#SOFTMAX}
+	 * @throws IllegalArgumentException if there is not one activation function per layer or an activation function is not supported in its layer
+	 */
+	public NeuralNetwork(SimpleMatrix[] thetas, Activation[] activationFunctions) {
 		for (int i = 1; i < thetas.length; i++) {
 			assert(thetas[i - 1].numRows() + 1 == thetas[i].numCols()); // correct number of neurons per layer (with bias)
 		}
+		// Checked even without assertions, since an invalid activation function only fails later in the middle of training
+		if (activationFunctions.length != thetas.length) {
+			throw new IllegalArgumentException("Expected " + thetas.length + " activation functions but found " + activationFunctions.length);
+		}
+		for (int i = 0; i < activationFunctions.length - 1; i++) {
+			if (!activationFunctions[i].isHiddenActivation()) {
+				throw new IllegalArgumentException(activationFunctions[i] + " is not supported in hidden layer " + (i + 1));
+			}
+		}
+		if (activationFunctions.length > 0 && !activationFunctions[activationFunctions.length - 1].isOutputActivation()) {
+			throw new IllegalArgumentException(activationFunctions[activationFunctions.length - 1] + " is not supported in the output layer");
+		}
 
 		this.thetas = thetas;
+		this.activationFunctions = activationFunctions.clone();
 	}
 
 	public static NeuralNetwork emptyNetwork(int... numNeurons) {
+		return emptyNetwork(Activation.SIGMOID, Activation.SIGMOID, numNeurons);
+	}
+
+	/**
+	 * Creates a network with all weights set to 0
+	 * @param hiddenActivation the activation function of every hidden layer
+	 * @param outputActivation the activation function of the output layer (either {@link Activation#SIGMOID} or {@link Activation#SOFTMAX})
+	 * @param numNeurons the number of neurons of every layer (without bias) from the input layer to the output layer
+	 * @return the network
+	 */
+	public static NeuralNetwork emptyNetwork(Activation hiddenActivation, Activation outputActivation, int... numNeurons) {
 		assert numNeurons.length >= 2;
 
 		SimpleMatrix[] thetas = new SimpleMatrix[numNeurons.length - 1];
+		Activation[] activationFunctions = new Activation[thetas.length];
 		for (int i = 0; i < thetas.length; i++) {
 			thetas[i] = new SimpleMatrix(numNeurons[i + 1], numNeurons[i] + 1, MatrixType.DDRM);
+			activationFunctions[i] = i == thetas.length - 1 ? outputActivation : hiddenActivation;
 		}
-		return new NeuralNetwork(thetas);
+		return new NeuralNetwork(thetas, activationFunctions);
+	}
+
+	private static Activation[] sigmoidActivations(int numThetas) {
+		Activation[] activationFunctions = new Activation[numThetas];
+		Arrays.fill(activationFunctions, Activation.SIGMOID);
+		return activationFunctions;
+	}
+
+	/**
+	 * Networks serialized before activation functions were pluggable only used the sigmoid function
+	 */
+	private Object readResolve() {
+		return activationFunctions == null ? new NeuralNetwork(thetas) : this;
 	}
 
 	/**
@@ -99,8 +236,13 @@ public class NeuralNetwork implements Serializable {
 	 * @return {@code this}
 	 */
 	public NeuralNetwork randomlyInitialize(Random random) {
-		for (SimpleMatrix theta : thetas) {
-			double epsilon = Math.sqrt(6.0 / (theta.numCols() + theta.numRows()));
+		for (int layer = 0; layer < thetas.length; layer++) {
+			SimpleMatrix theta = thetas[layer];
+			Activation activation = activationFunctions[layer];
+			// Rectified units only pass half of their inputs, so their weights are scaled up to keep the variance of the activations constant
+			double epsilon = activation == Activation.RELU || activation == Activation.LEAKY_RELU
+					? Math.sqrt(6.0 / theta.numCols())
+					: Math.sqrt(6.0 / (theta.numCols() + theta.numRows()));
 			double epsilonDouble = 2.0 * epsilon;
 			for (int i = theta.getNumElements() - 1; i >= 0; i--) {
 				theta.set(i, random.nextDouble() * epsilonDouble - epsilon);
@@ -143,11 +285,40 @@ public class NeuralNetwork implements Serializable {
 		return layer == 0 ? thetas[0].numCols() - 1 : thetas[layer - 1].numRows();
 	}
 
+	/**
+	 * Selects whether {@code this} network is trained and evaluated in single precision.
+	 * In single precision, the activations and errors of every layer take half the memory, so batches twice as large fit in the same cache and memory.
+	 * The weights themselves stay in double precision, and the gradients are accumulated over chunks of examples, averaged and applied in double precision.
+	 * This setting only affects training (including the shards of {@code trainParallel} and {@code trainMiniBatchParallel}) and {@link #compute(DataSet)}
+	 * or {@link #predict(DataSet)} and is not saved with the network.
+	 * @param singlePrecision true to compute in single precision, false to compute in double precision (the default)
+	 * @return {@code this}
+	 */
+	public NeuralNetwork setSinglePrecision(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+		return this;
+	}
+
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	/**
+	 * Returns the activation function of a layer
+	 * @param layer the index of the layer (greater than 0 since the input layer has no activation function)
+	 * @return the activation function of the neurons of the layer
+	 */
+	public Activation getActivation(int layer) {
+		assert 0 < layer && layer < numLayers();
+
+		return activationFunctions[layer - 1];
+	}
+
 	public double costFunction(DataSet dataSet, DataSetTarget target, double lambda) {
-		return costFunction(thetas, dataSet.getMatrix(), targetToMatrix(target), lambda);
+		return costFunction(thetas, activationFunctions, dataSet.getMatrix(), targetToMatrix(target), lambda);
 	}
 
-	private static double costFunction(SimpleMatrix[] thetas, SimpleMatrix dataSet, SimpleMatrix target, double lambda) {
+	private static double costFunction(SimpleMatrix[] thetas, Activation[] activationFunctions, SimpleMatrix dataSet, SimpleMatrix target, double lambda) {
 		assert(dataSet.numCols() + 1 == thetas[0].numCols()); // correct number of input features
 		for (int i = 1; i < thetas.length; i++) {
 			assert(thetas[i - 1].numRows() + 1 == thetas[i].numCols()); // correct number of neurons per layer (with bias)
@@ -158,12 +329,13 @@ public class NeuralNetwork implements Serializable {
 
 		double m = dataSet.numRows();
 
-		SimpleMatrix[] activations = NeuralNetwork.feedForward(thetas, dataSet);
+		SimpleMatrix[] activations = NeuralNetwork.feedForward(thetas, activationFunctions, dataSet);
 		SimpleMatrix lastLayer = activations[activations.length - 1].transpose(); // For convenience
 
 		// Compute cost
 		double regularizationCost = regularizationCost(thetas, lambda);
-		return (target.negative().elementMult(lastLayer.elementLog()).minus(ones(target).minus(target).elementMult(ones(lastLayer).minus(lastLayer).elementLog())).elementSum() + regularizationCost) / m;
+		double cost = activationFunctions[activationFunctions.length - 1].cost(lastLayer.getDDRM().data, target.getDDRM().data, target.getNumElements());
+		return (cost + regularizationCost) / m;
 	}
 
 	public double costFunction(BatchFullDataSetStream dataSetStream, double lambda) {
@@ -195,27 +367,25 @@ public class NeuralNetwork implements Serializable {
 	}
 
 	public DataSetTarget predict(DataSet dataSet, double threshold) {
-		return new DataSetTarget(predict(thetas, dataSet.getMatrix(), threshold), 2);
+		return new DataSetTarget(predict(output(dataSet.getMatrix()), threshold), 2);
 	}
 
 	public DataSetTarget predictMulti(DataSet dataSet) {
-		return new DataSetTarget(predictMulti(thetas, dataSet.getMatrix()), numOutputs());
+		return new DataSetTarget(predictMulti(output(dataSet.getMatrix())), numOutputs());
 	}
 
-	private static SimpleMatrix predict(SimpleMatrix[] thetas, SimpleMatrix dataSet, double threshold) {
-		double[] predictions = new double[dataSet.numRows()];
-		SimpleMatrix output = compute(thetas, dataSet);
-		for (int i = 0, m = dataSet.numRows(); i < m; i++) {
+	private static SimpleMatrix predict(SimpleMatrix output, double threshold) {
+		double[] predictions = new double[output.numRows()];
+		for (int i = 0, m = output.numRows(); i < m; i++) {
 			predictions[i] = output.get(i, 0) >= threshold ? 1.0 : 0.0;
 		}
 		return new SimpleMatrix(predictions.length, 1, true, predictions);
 	}
 
-	private static SimpleMatrix predictMulti(SimpleMatrix[] thetas, SimpleMatrix dataSet) {
-		double[] predictions = new double[dataSet.numRows()];
-		SimpleMatrix output = compute(thetas, dataSet);
+	private static SimpleMatrix predictMulti(SimpleMatrix output) {
+		double[] predictions = new double[output.numRows()];
 		int outputs = output.numCols();
-		for (int i = 0, m = dataSet.numRows(); i < m; i++) {
+		for (int i = 0, m = output.numRows(); i < m; i++) {
 			int max = 0;
 			double maxValue = output.get(i, 0);
 			for (int j = 1; j < outputs; j++) {
@@ -231,11 +401,28 @@ public class NeuralNetwork implements Serializable {
 	}
 
 	public SimpleMatrix compute(DataSet dataSet) {
-		return compute(thetas, dataSet.getMatrix());
+		return output(dataSet.getMatrix());
+	}
+
+	/**
+	 * Compiles {@code this} network into an inference-only form for serving predictions with low latency
+	 * @return the compiled network with a copy of the current weights
+	 */
+	public CompiledNeuralNetwork compile() {
+		return new CompiledNeuralNetwork(this);
+	}
+
+	/**
+	 * Computes the output of {@code this} network in the selected precision
+	 * @param dataSet (m) x (s0) matrix of examples
+	 * @return (m) x (sL) matrix of the activations of the output layer
+	 */
+	private SimpleMatrix output(SimpleMatrix dataSet) {
+		return singlePrecision ? FloatNeuralNetworkWorkspace.compute(toDDRM(thetas), activationFunctions, dataSet.getDDRM()) : compute(thetas, activationFunctions, dataSet);
 	}
 
-	private static SimpleMatrix compute(SimpleMatrix[] thetas, SimpleMatrix dataSet) {
-		SimpleMatrix[] activations = feedForward(thetas, dataSet);
+	private static SimpleMatrix compute(SimpleMatrix[] thetas, Activation[] activationFunctions, SimpleMatrix dataSet) {
+		SimpleMatrix[] activations = feedForward(thetas, activationFunctions, dataSet);
 		return activations[activations.length - 1].transpose();
 	}
 
@@ -245,10 +432,10 @@ public class NeuralNetwork implements Serializable {
 	 * @return a ({@link #numLayers()})-length array of (si) x (m) matrices where si is the number of neurons in layer i of each neuron activation value
 	 */
 	public SimpleMatrix[] feedForward(DataSet dataSet) {
-		return feedForward(thetas, dataSet.getMatrix());
+		return feedForward(thetas, activationFunctions, dataSet.getMatrix());
 	}
 
-	private static SimpleMatrix[] feedForward(SimpleMatrix[] thetas, SimpleMatrix dataSet) {
+	private static SimpleMatrix[] feedForward(SimpleMatrix[] thetas, Activation[] activationFunctions, SimpleMatrix dataSet) {
 		assert(dataSet.numCols() + 1 == thetas[0].numCols()); // correct number of input features
 		for (int i = 1; i < thetas.length; i++) {
 			assert(thetas[i - 1].numRows() + 1 == thetas[i].numCols()); // correct number of neurons per layer (with bias)
@@ -260,12 +447,23 @@ public class NeuralNetwork implements Serializable {
 		SimpleMatrix[] activations = new SimpleMatrix[layers];
 		activations[0] = DataUtil.addBiasColumn(dataSet).transpose();
 		for (int i = 1; i < layers - 1; i++) {
-			activations[i] = DataUtil.addBiasRow(sigmoid(thetas[i - 1].mult(activations[i - 1])));
+			activations[i] = DataUtil.addBiasRow(activate(activationFunctions[i - 1], thetas[i - 1].mult(activations[i - 1])));
 		}
-		activations[layers - 1] = sigmoid(thetas[layers - 2].mult(activations[layers - 2]));
+		activations[layers - 1] = activate(activationFunctions[layers - 2], thetas[layers - 2].mult(activations[layers - 2]));
 		return activations;
 	}
 
+	/**
+	 * Applies an activation function in place
+	 * @param activation the activation function
+	 * @param weightedInputs (s) x (m) matrix of weighted inputs which is overwritten
+	 * @return the activations
+	 */
+	private static SimpleMatrix activate(Activation activation, SimpleMatrix weightedInputs) {
+		activation.apply(weightedInputs.getDDRM().data, 0, weightedInputs.numRows(), weightedInputs.numCols());
+		return weightedInputs;
+	}
+
 	/**
 	 * Computes the gradients for each neuron given a data set and the target values
 	 * @param dataSet the data set used to compute the gradients
@@ -274,10 +472,10 @@ public class NeuralNetwork implements Serializable {
 	 * @return a ({@link #numLayers()})-length array of (m) x (si) matrices where si is the number of neurons in layer i of each neuron gradient value
 	 */
 	public SimpleMatrix[] backPropagation(DataSet dataSet, DataSetTarget target, double lambda) {
-		return backPropagation(thetas, dataSet.getMatrix(), targetToMatrix(target), lambda);
+		return backPropagation(thetas, activationFunctions, dataSet.getMatrix(), targetToMatrix(target), lambda);
 	}
 
-	private static SimpleMatrix[] backPropagation(SimpleMatrix[] thetas, SimpleMatrix dataSet, SimpleMatrix target, double lambda) {
+	private static SimpleMatrix[] backPropagation(SimpleMatrix[] thetas, Activation[] activationFunctions, SimpleMatrix dataSet, SimpleMatrix target, double lambda) {
 		assert(dataSet.numCols() + 1 == thetas[0].numCols()); // correct number of input features
 		for (int i = 1; i < thetas.length; i++) {
 			assert(thetas[i - 1].numRows() + 1 == thetas[i].numCols()); // correct number of neurons per layer (with bias)
@@ -286,27 +484,19 @@ public class NeuralNetwork implements Serializable {
 		assert(dataSet.numRows() == target.numRows()); // correct number of training examples
 		assert(lambda >= 0 && Double.isFinite(lambda));
 
-		SimpleMatrix[] activations = feedForward(thetas, dataSet);
+		SimpleMatrix[] activations = feedForward(thetas, activationFunctions, dataSet);
 
-		// Init
-		SimpleMatrix[] deltas = new SimpleMatrix[thetas.length];
+		// Calculate gradients for the whole batch at once (each column of a delta matrix is one training example)
 		SimpleMatrix[] grads = new SimpleMatrix[thetas.length];
-		for (int i = 0; i < deltas.length; i++) {
-			int rows = thetas[i].numRows();
-			int cols = thetas[i].numCols();
-			deltas[i] = new SimpleMatrix(rows, cols, MatrixType.DDRM);
-			grads[i] = new SimpleMatrix(rows, cols, MatrixType.DDRM);
-		}
-
-		// Calculate gradients
-		for (int i = 0, m = dataSet.numRows(); i < m; i++) {
-			deltas[deltas.length - 1] = activations[deltas.length].cols(i, i + 1).minus(target.rows(i, i + 1).transpose());
-			for (int j = deltas.length - 2; j >= 0; j--) {
-				deltas[j] = thetas[j + 1].transpose().mult(deltas[j + 1]).elementMult(sigmoidGrad(activations[j + 1].cols(i, i + 1))).rows(1, activations[j + 1].numRows());
-			}
-			for (int j = 0; j < grads.length; j++) {
-				grads[j] = grads[j].plus(deltas[j].mult(activations[j].cols(i, i + 1).transpose()));
-			}
+		SimpleMatrix delta = activations[grads.length].minus(target.transpose());
+		grads[grads.length - 1] = delta.mult(activations[grads.length - 1].transpose());
+		for (int j = grads.length - 2; j >= 0; j--) {
+			SimpleMatrix weightedDelta = thetas[j + 1].transpose().mult(delta);
+			int m = weightedDelta.numCols();
+			delta = new SimpleMatrix(weightedDelta.numRows() - 1, m, MatrixType.DDRM);
+			// The derivative of the activation function is computed from the activations of the layer (skipping its bias row)
+			activationFunctions[j].backward(weightedDelta.getDDRM().data, m, activations[j + 1].getDDRM().data, m, delta.getDDRM().data, 0, delta.getNumElements());
+			grads[j] = delta.mult(activations[j].transpose());
 		}
 
 		double m = dataSet.numRows();
@@ -324,10 +514,10 @@ public class NeuralNetwork implements Serializable {
 	}
 
 	public SimpleMatrix[] numericalGradient(DataSet dataSet, DataSetTarget target, double lambda, double epsilon) {
-		return numericalGradient(thetas, dataSet.getMatrix(), targetToMatrix(target), lambda, epsilon);
+		return numericalGradient(thetas, activationFunctions, dataSet.getMatrix(), targetToMatrix(target), lambda, epsilon);
 	}
 
-	private static SimpleMatrix[] numericalGradient(SimpleMatrix[] thetasOriginal, SimpleMatrix dataSet, SimpleMatrix target, double lambda, double epsilon) {
+	private static SimpleMatrix[] numericalGradient(SimpleMatrix[] thetasOriginal, Activation[] activationFunctions, SimpleMatrix dataSet, SimpleMatrix target, double lambda, double epsilon) {
 		assert(dataSet.numCols() + 1 == thetasOriginal[0].numCols()); // correct number of input features
 		for (int i = 1; i < thetasOriginal.length; i++) {
 			assert(thetasOriginal[i - 1].numRows() + 1 == thetasOriginal[i].numCols()); // correct number of neurons per layer (with bias)
@@ -348,9 +538,10 @@ public class NeuralNetwork implements Serializable {
 			for (int i = 0, n = theta.getNumElements(); i < n; i++) {
 				double original = theta.get(i);
 				theta.set(i, original - epsilon);
-				double cost1 = costFunction(thetas, dataSet, target, lambda);
+				double cost1 = costFunction(thetas, activationFunctions, dataSet, target, lambda);
 				theta.set(i, original + epsilon);
-				double cost2 = costFunction(thetas, dataSet, target, lambda);
+				double cost2 = costFunction(thetas, activationFunctions, dataSet, target, lambda);
+				theta.set(i, original);
 				grad.set(i, (cost2 - cost1) / epsilonDouble);
 			}
 			grads[layer] = grad;
@@ -359,7 +550,49 @@ public class NeuralNetwork implements Serializable {
 	}
 
 	public void train(DataSet dataSet, DataSetTarget target, double alpha, double lambda, int numIterations) {
-		train(this.thetas, dataSet.getMatrix(), targetToMatrix(target), alpha, lambda, numIterations);
+		train(dataSet, target, new GradientDescentOptimizer(alpha), lambda, numIterations);
+	}
+
+	public void train(DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda, int numIterations) {
+		train(dataSet, target, optimizer, lambda, numIterations, ConvergencePolicy.none());
+	}
+
+	/**
+	 * Updates {@code this} network in place with a single optimization step on a batch of new examples, so the network can be trained
+	 * incrementally as examples arrive. The same optimizer should be passed to every call so its state (such as momentum or moment estimates)
+	 * carries over from the previous batches, and the buffers used for back propagation are reused between calls.
+	 * @param dataSet the new training examples
+	 * @param target the target values of the new training examples
+	 * @param optimizer the optimizer which updates the weights from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return the cost of the batch before the update
+	 */
+	public double partialFit(DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda) {
+		assert dataSet.numExamples() > 0;
+		assert lambda >= 0 && Double.isFinite(lambda);
+
+		BackPropagator workspace = workspace();
+		DMatrixRMaj[] weights = toDDRM(thetas);
+		DMatrixRMaj dataSetMatrix = dataSet.getMatrix().getDDRM();
+		workspace.loadBatch(dataSetMatrix, targetToMatrix(target).getDDRM(), 0, dataSetMatrix.numRows);
+		workspace.backPropagation(weights, lambda);
+		double cost = workspace.cost(weights, lambda);
+		optimizer.update(weights, workspace.getGradients());
+		return cost;
+	}
+
+	/**
+	 * Trains {@code this} network over the full batch until it converges
+	 * @param dataSet the training examples
+	 * @param target the target values of the training examples
+	 * @param optimizer the optimizer which updates the weights from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param policy the conditions under which training stops early
+	 * @return the report of the training run
+	 */
+	public ConvergenceReport train(DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda, int numIterations, ConvergencePolicy<NeuralNetwork> policy) {
+		return train(workspace(), dataSet.getMatrix(), targetToMatrix(target), optimizer, lambda, numIterations, policy.start());
 	}
 
 	public void print(int numChar, int precision) {
@@ -368,15 +601,122 @@ public class NeuralNetwork implements Serializable {
 		}
 	}
 
-	private static void train(SimpleMatrix[] thetas, SimpleMatrix dataSet, SimpleMatrix target, double alpha, double lambda, int numIterations) {
-		assert (alpha > 0 && Double.isFinite(alpha));
-
+	private ConvergenceReport train(BackPropagator workspace, SimpleMatrix dataSet, SimpleMatrix target, Optimizer optimizer, double lambda, int numIterations, ConvergenceMonitor<NeuralNetwork> monitor) {
+		DMatrixRMaj[] weights = toDDRM(thetas);
+		workspace.loadBatch(dataSet.getDDRM(), target.getDDRM(), 0, dataSet.numRows());
 		for (int i = 0; i < numIterations; i++) {
-			SimpleMatrix[] grad = backPropagation(thetas, dataSet, target, lambda);
-			for (int layer = 0; layer < thetas.length; layer++) {
-				thetas[layer] = thetas[layer].minus(grad[layer].scale(alpha));
+			workspace.backPropagation(weights, lambda);
+			if (hasConverged(workspace, weights, lambda, i, monitor)) {
+				return monitor.finish(i);
 			}
+			optimizer.update(weights, workspace.getGradients());
 		}
+		return monitor.finish(numIterations);
+	}
+
+	/**
+	 * Checks whether training has converged after back propagating a batch but before updating the weights
+	 * @param workspace the workspace of the last back propagation
+	 * @param weights the weights used for the last back propagation
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param iterations the number of completed iterations (weight updates)
+	 * @param monitor the monitor of the training run
+	 * @return true if training should stop
+	 */
+	private boolean hasConverged(BackPropagator workspace, DMatrixRMaj[] weights, double lambda, int iterations, ConvergenceMonitor<NeuralNetwork> monitor) {
+		double cost = monitor.requiresCost() ? workspace.cost(weights, lambda) : Double.NaN;
+		return monitor.hasConverged(iterations, cost, workspace.getGradients(), this);
+	}
+
+	/**
+	 * Trains {@code this} network with full batch gradient descent, computing the gradients of each iteration in parallel
+	 * @param dataSet the training examples
+	 * @param target the target values of the training examples
+	 * @param alpha the learning rate (greater than 0)
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the number of iterations to be performed
+	 * @param pool the pool which computes the gradients
+	 * @param numShards the number of parts every batch is split into (the results are reproducible for a fixed number of shards)
+	 */
+	public void trainParallel(DataSet dataSet, DataSetTarget target, double alpha, double lambda, int numIterations, ForkJoinPool pool, int numShards) {
+		trainParallel(dataSet, target, new GradientDescentOptimizer(alpha), lambda, numIterations, pool, numShards);
+	}
+
+	/**
+	 * Trains {@code this} network over the full batch, computing the gradients of each iteration in parallel
+	 * @param dataSet the training examples
+	 * @param target the target values of the training examples
+	 * @param optimizer the optimizer which updates the weights from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the number of iterations to be performed
+	 * @param pool the pool which computes the gradients
+	 * @param numShards the number of parts every batch is split into (the results are reproducible for a fixed number of shards)
+	 */
+	public void trainParallel(DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda, int numIterations, ForkJoinPool pool, int numShards) {
+		trainParallel(dataSet, target, optimizer, lambda, numIterations, pool, numShards, ConvergencePolicy.none());
+	}
+
+	/**
+	 * Trains {@code this} network over the full batch until it converges, computing the gradients of each iteration in parallel
+	 * @param dataSet the training examples
+	 * @param target the target values of the training examples
+	 * @param optimizer the optimizer which updates the weights from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param pool the pool which computes the gradients
+	 * @param numShards the number of parts every batch is split into (the results are reproducible for a fixed number of shards)
+	 * @param policy the conditions under which training stops early
+	 * @return the report of the training run
+	 */
+	public ConvergenceReport trainParallel(DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda, int numIterations, ForkJoinPool pool, int numShards, ConvergencePolicy<NeuralNetwork> policy) {
+		return train(new ParallelNeuralNetworkWorkspace(thetas, activationFunctions, pool, numShards, singlePrecision), dataSet.getMatrix(), targetToMatrix(target), optimizer, lambda, numIterations, policy.start());
+	}
+
+	/**
+	 * Trains {@code this} network with mini-batch gradient descent, computing the gradients of each batch in parallel
+	 * @param dataSet the training examples
+	 * @param target the target values of the training examples
+	 * @param alpha the learning rate (greater than 0)
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the number of iterations to be performed
+	 * @param batchSize the number of training examples in each batch
+	 * @param pool the pool which computes the gradients
+	 * @param numShards the number of parts every batch is split into (the results are reproducible for a fixed number of shards)
+	 */
+	public void trainMiniBatchParallel(DataSet dataSet, DataSetTarget target, double alpha, double lambda, int numIterations, int batchSize, ForkJoinPool pool, int numShards) {
+		trainMiniBatchParallel(dataSet, target, new GradientDescentOptimizer(alpha), lambda, numIterations, batchSize, pool, numShards);
+	}
+
+	/**
+	 * Trains {@code this} network over mini-batches, computing the gradients of each batch in parallel
+	 * @param dataSet the training examples
+	 * @param target the target values of the training examples
+	 * @param optimizer the optimizer which updates the weights from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the number of iterations to be performed
+	 * @param batchSize the number of training examples in each batch
+	 * @param pool the pool which computes the gradients
+	 * @param numShards the number of parts every batch is split into (the results are reproducible for a fixed number of shards)
+	 */
+	public void trainMiniBatchParallel(DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda, int numIterations, int batchSize, ForkJoinPool pool, int numShards) {
+		trainMiniBatchParallel(dataSet, target, optimizer, lambda, numIterations, batchSize, pool, numShards, ConvergencePolicy.none());
+	}
+
+	/**
+	 * Trains {@code this} network over mini-batches until it converges, computing the gradients of each batch in parallel
+	 * @param dataSet the training examples
+	 * @param target the target values of the training examples
+	 * @param optimizer the optimizer which updates the weights from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param batchSize the number of training examples in each batch
+	 * @param pool the pool which computes the gradients
+	 * @param numShards the number of parts every batch is split into (the results are reproducible for a fixed number of shards)
+	 * @param policy the conditions under which training stops early
+	 * @return the report of the training run
+	 */
+	public ConvergenceReport trainMiniBatchParallel(DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda, int numIterations, int batchSize, ForkJoinPool pool, int numShards, ConvergencePolicy<NeuralNetwork> policy) {
+		return trainMiniBatch(new ParallelNeuralNetworkWorkspace(thetas, activationFunctions, pool, numShards, singlePrecision), dataSet, target, optimizer, lambda, numIterations, batchSize, policy);
 	}
 
 	public void trainStochastic(DataSet dataSet, DataSetTarget target, double alpha, double lambda, int numIterations) {
@@ -384,65 +724,175 @@ public class NeuralNetwork implements Serializable {
 	}
 
 	public void trainMiniBatch(DataSet dataSet, DataSetTarget target, double alpha, double lambda, int numIterations, int batchSize) {
+		trainMiniBatch(dataSet, target, new GradientDescentOptimizer(alpha), lambda, numIterations, batchSize);
+	}
+
+	public void trainMiniBatch(DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda, int numIterations, int batchSize) {
+		trainMiniBatch(dataSet, target, optimizer, lambda, numIterations, batchSize, ConvergencePolicy.none());
+	}
+
+	/**
+	 * Trains {@code this} network over mini-batches until it converges
+	 * @param dataSet the training examples
+	 * @param target the target values of the training examples
+	 * @param optimizer the optimizer which updates the weights from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param batchSize the number of training examples in each batch
+	 * @param policy the conditions under which training stops early
+	 * @return the report of the training run
+	 */
+	public ConvergenceReport trainMiniBatch(DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda, int numIterations, int batchSize, ConvergencePolicy<NeuralNetwork> policy) {
+		return trainMiniBatch(workspace(), dataSet, target, optimizer, lambda, numIterations, batchSize, policy);
+	}
+
+	private ConvergenceReport trainMiniBatch(BackPropagator workspace, DataSet dataSet, DataSetTarget target, Optimizer optimizer, double lambda, int numIterations, int batchSize, ConvergencePolicy<NeuralNetwork> policy) {
 		if (batchSize == dataSet.numExamples()) {
-			train(this.thetas, dataSet.getMatrix(), targetToMatrix(target), alpha, lambda, numIterations);
+			return train(workspace, dataSet.getMatrix(), targetToMatrix(target), optimizer, lambda, numIterations, policy.start());
 		} else {
-			trainMiniBatch(this.thetas, dataSet.getMatrix(), targetToMatrix(target), alpha, lambda, numIterations, batchSize);
+			EpochBatchSampler sampler = new EpochBatchSampler(dataSet, target, batchSize, EpochBatchSampler.LastBatch.KEEP);
+			return trainMiniBatch(workspace, sampler, optimizer, lambda, numIterations, policy.start(sampler.numBatches()));
 		}
 	}
 
-	private static void trainMiniBatch(SimpleMatrix[] thetas, SimpleMatrix dataSet, SimpleMatrix target, double alpha, double lambda, int numIterations, int batchSize) {
-		assert (alpha > 0 && Double.isFinite(alpha));
+	/**
+	 * Trains {@code this} network over the mini-batches of a sampler until it converges.
+	 * Examples are gathered directly from the matrices of the sampled data set, so no batch is ever copied into a matrix of its own.
+	 * @param sampler the sampler of the training batches
+	 * @param optimizer the optimizer which updates the weights from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed (which may span several epochs)
+	 * @param policy the conditions under which training stops early
+	 * @return the report of the training run
+	 */
+	public ConvergenceReport trainMiniBatch(EpochBatchSampler sampler, Optimizer optimizer, double lambda, int numIterations, ConvergencePolicy<NeuralNetwork> policy) {
+		return trainMiniBatch(workspace(), sampler, optimizer, lambda, numIterations, policy.start(sampler.numBatches()));
+	}
 
-		int m = dataSet.numRows();
-		for (int i = 0, batchIndex = 0; i < numIterations; i++, batchIndex++) {
-			int rowsStart = batchIndex * batchSize;
-			int rowsEnd = rowsStart + batchSize;
-			if (rowsEnd >= m) {
-				rowsEnd = m;
-				batchIndex = 0;
-			}
-			SimpleMatrix dataSetBatch = dataSet.rows(rowsStart, rowsEnd);
-			SimpleMatrix targetBatch = target.rows(rowsStart, rowsEnd);
-			SimpleMatrix[] grad = backPropagation(thetas, dataSetBatch, targetBatch, lambda);
-			for (int layer = 0; layer < thetas.length; layer++) {
-				thetas[layer] = thetas[layer].minus(grad[layer].scale(alpha));
+	private ConvergenceReport trainMiniBatch(BackPropagator workspace, EpochBatchSampler sampler, Optimizer optimizer, double lambda, int numIterations, ConvergenceMonitor<NeuralNetwork> monitor) {
+		DMatrixRMaj[] weights = toDDRM(thetas);
+		FullDataSet dataSet = sampler.getDataSet();
+		DMatrixRMaj dataSetMatrix = dataSet.getDataSet().getMatrix().getDDRM();
+		DMatrixRMaj targetMatrix = targetToMatrix(dataSet.getDataSetTarget()).getDDRM();
+		for (int i = 0; i < numIterations; i++) {
+			workspace.loadBatch(dataSetMatrix, targetMatrix, sampler.getBatchIndices(i));
+			workspace.backPropagation(weights, lambda);
+			if (hasConverged(workspace, weights, lambda, i, monitor)) {
+				return monitor.finish(i);
 			}
+			optimizer.update(weights, workspace.getGradients());
 		}
+		return monitor.finish(numIterations);
 	}
 
     public void trainMiniBatch(BatchFullDataSetStream batchGenerator, double alpha, double lambda, int numIterations) {
-        trainMiniBatch(this.thetas, batchGenerator, alpha, lambda, numIterations);
+        trainMiniBatch(batchGenerator, new GradientDescentOptimizer(alpha), lambda, numIterations);
+    }
+
+    public void trainMiniBatch(BatchFullDataSetStream batchGenerator, Optimizer optimizer, double lambda, int numIterations) {
+        trainMiniBatch(batchGenerator, optimizer, lambda, numIterations, ConvergencePolicy.none());
     }
 
-    private void trainMiniBatch(SimpleMatrix[] thetas, BatchFullDataSetStream batchGenerator, double alpha, double lambda, int numIterations) {
-        assert (alpha > 0 && Double.isFinite(alpha));
+    /**
+     * Trains {@code this} network over a stream of batches until it converges
+     * @param batchGenerator the stream of training batches
+     * @param optimizer the optimizer which updates the weights from their gradients
+     * @param lambda the regularization parameter (greater or equal to 0)
+     * @param numIterations the maximum number of iterations to be performed
+     * @param policy the conditions under which training stops early
+     * @return the report of the training run
+     */
+    public ConvergenceReport trainMiniBatch(BatchFullDataSetStream batchGenerator, Optimizer optimizer, double lambda, int numIterations, ConvergencePolicy<NeuralNetwork> policy) {
+        return trainMiniBatch(workspace(), batchGenerator, optimizer, lambda, numIterations, policy.start(batchGenerator.numBatches()));
+    }
 
+    private ConvergenceReport trainMiniBatch(BackPropagator workspace, BatchFullDataSetStream batchGenerator, Optimizer optimizer, double lambda, int numIterations, ConvergenceMonitor<NeuralNetwork> monitor) {
+        DMatrixRMaj[] weights = toDDRM(thetas);
         for (int i = 0; i < numIterations; i++) {
             FullDataSet batch = batchGenerator.getBatch(i);
-            SimpleMatrix dataSetBatch = batch.getDataSet().getMatrix();
-            SimpleMatrix targetBatch = targetToMatrix(batch.getDataSetTarget());
-            SimpleMatrix[] grad = backPropagation(thetas, dataSetBatch, targetBatch, lambda);
-            for (int layer = 0; layer < thetas.length; layer++) {
-                thetas[layer] = thetas[layer].minus(grad[layer].scale(alpha));
+            DMatrixRMaj dataSetBatch = batch.getDataSet().getMatrix().getDDRM();
+            DMatrixRMaj targetBatch = targetToMatrix(batch.getDataSetTarget()).getDDRM();
+            workspace.loadBatch(dataSetBatch, targetBatch, 0, dataSetBatch.numRows);
+            workspace.backPropagation(weights, lambda);
+            if (hasConverged(workspace, weights, lambda, i, monitor)) {
+                return monitor.finish(i);
             }
+            optimizer.update(weights, workspace.getGradients());
         }
+        return monitor.finish(numIterations);
     }
 
+	private static DMatrixRMaj[] toDDRM(SimpleMatrix[] matrices) {
+		DMatrixRMaj[] ddrm = new DMatrixRMaj[matrices.length];
+		for (int i = 0; i < matrices.length; i++) {
+			ddrm[i] = matrices[i].getDDRM();
+		}
+		return ddrm;
+	}
+
+	/**
+	 * Returns the training buffers of {@code this} network in the selected precision, creating them if the layers have changed since they were last used
+	 * @return the training workspace of {@code this} network
+	 */
+	private BackPropagator workspace() {
+		if (singlePrecision) {
+			return floatWorkspace();
+		}
+		if (workspace == null || !workspace.matches(thetas, activationFunctions)) {
+			workspace = new NeuralNetworkWorkspace(thetas, activationFunctions);
+		}
+		return workspace;
+	}
+
+	private FloatNeuralNetworkWorkspace floatWorkspace() {
+		if (floatWorkspace == null || !floatWorkspace.matches(thetas, activationFunctions)) {
+			floatWorkspace = new FloatNeuralNetworkWorkspace(thetas, activationFunctions);
+		}
+		return floatWorkspace;
+	}
+
 	public static NeuralNetwork loadFromFileBinary(String directoryName) throws IOException {
 		String[] fileNames = new File(directoryName).list((dir, name) -> name.toLowerCase().endsWith(".nnbin"));
-		if (fileNames == null) throw new IOException();
+		if (fileNames == null) {
+			throw new IOException(directoryName + " is not a directory");
+		}
 		SimpleMatrix[] thetas = new SimpleMatrix[fileNames.length];
 		for (int i = 0; i < thetas.length; i++) {
 			thetas[i] = SimpleMatrix.loadBinary(directoryName + "/" + i + ".nnbin");
 		}
-		return new NeuralNetwork(thetas);
+		// Networks saved before activation functions were pluggable have no activation file and only used the sigmoid function
+		Path activationFile = Paths.get(directoryName, ACTIVATION_FILE_NAME);
+		if (!Files.exists(activationFile)) {
+			return new NeuralNetwork(thetas);
+		}
+		List<String> names = Files.readAllLines(activationFile, StandardCharsets.UTF_8);
+		Activation[] activationFunctions = new Activation[thetas.length];
+		for (int i = 0; i < activationFunctions.length; i++) {
+			if (i >= names.size()) {
+				throw new IOException("Missing activation function of layer " + (i + 1));
+			}
+			try {
+				activationFunctions[i] = Activation.valueOf(names.get(i).trim());
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Unknown activation function of layer " + (i + 1) + ": " + names.get(i), e);
+			}
+		}
+		try {
+			return new NeuralNetwork(thetas, activationFunctions);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid activation functions in " + activationFile, e);
+		}
 	}
 
 	public void saveToFileBinary(String directory) throws IOException {
 		for (int i = 0; i < thetas.length; i++) {
 			thetas[i].saveToFileBinary(directory + "/" + i + ".nnbin");
 		}
+		List<String> names = new ArrayList<>(activationFunctions.length);
+		for (Activation activation : activationFunctions) {
+			names.add(activation.name());
+		}
+		Files.write(Paths.get(directory, ACTIVATION_FILE_NAME), names, StandardCharsets.UTF_8);
 	}
 
 	private SimpleMatrix targetToMatrix(DataSetTarget target) {
@@ -0,0 +1,110 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.ReshapeMatrix;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Reusable buffers for training a {@link NeuralNetwork} without allocating matrices on every iteration.
+ * Buffers are reshaped for each batch and only grow when a batch larger than any previous batch is loaded,
+ * so a training loop with a constant batch size allocates nothing after its first iteration.
+ */
+class NeuralNetworkWorkspace extends AbstractNeuralNetworkWorkspace {
+
+	private final DMatrixRMaj[] activations; // (si + 1) x (m) activations of layer i with a bias row (except for the output layer)
+	private final DMatrixRMaj[] deltas; // (s(i+1)) x (m) errors of layer i + 1
+	private final DMatrixRMaj[] weightedDeltas; // (si + 1) x (m) product of thetas[i] transpose and deltas[i]
+	private final DMatrixRMaj target; // (sL) x (m) target values of the output layer
+
+	NeuralNetworkWorkspace(SimpleMatrix[] thetas, Activation[] activationFunctions) {
+		super(thetas, activationFunctions);
+
+		final int layers = thetas.length + 1;
+		activations = new DMatrixRMaj[layers];
+		for (int i = 0; i < layers; i++) {
+			activations[i] = new DMatrixRMaj(i == layers - 1 ? numNeurons[i] : numNeurons[i] + 1, 0);
+		}
+		deltas = new DMatrixRMaj[thetas.length];
+		weightedDeltas = new DMatrixRMaj[thetas.length];
+		for (int i = 0; i < thetas.length; i++) {
+			deltas[i] = new DMatrixRMaj(numNeurons[i + 1], 0);
+			weightedDeltas[i] = new DMatrixRMaj(numNeurons[i] + 1, 0);
+		}
+		target = new DMatrixRMaj(numNeurons[layers - 1], 0);
+
+		ReshapeMatrix[] batchBuffers = new ReshapeMatrix[layers + 2 * thetas.length + 1];
+		System.arraycopy(activations, 0, batchBuffers, 0, layers);
+		System.arraycopy(deltas, 0, batchBuffers, layers, thetas.length);
+		System.arraycopy(weightedDeltas, 0, batchBuffers, layers + thetas.length, thetas.length);
+		batchBuffers[batchBuffers.length - 1] = target;
+		setBatchBuffers(batchBuffers);
+	}
+
+	@Override
+	void copyExamples(DMatrixRMaj dataSet, DMatrixRMaj target, int[] rows, int start, int end) {
+		int m = end - start;
+		double[] input = activations[0].data;
+		int n = dataSet.numCols;
+		for (int k = 0; k < m; k++) {
+			input[k] = 1.0; // Bias row
+		}
+		for (int k = 0; k < m; k++) {
+			int rowOffset = (rows == null ? start + k : rows[start + k]) * n;
+			for (int x = 0; x < n; x++) {
+				input[(x + 1) * m + k] = dataSet.data[rowOffset + x];
+			}
+		}
+
+		int outputs = target.numCols;
+		for (int k = 0; k < m; k++) {
+			int rowOffset = (rows == null ? start + k : rows[start + k]) * outputs;
+			for (int y = 0; y < outputs; y++) {
+				this.target.data[y * m + k] = target.data[rowOffset + y];
+			}
+		}
+	}
+
+	@Override
+	void feedForward(DMatrixRMaj[] thetas) {
+		final int m = batchSize;
+		final int layers = activations.length;
+		for (int i = 1; i < layers; i++) {
+			DMatrixRMaj activation = activations[i];
+			if (i == layers - 1) {
+				CommonOps_DDRM.mult(thetas[i - 1], activations[i - 1], activation);
+				activationFunctions[i - 1].apply(activation.data, 0, activation.numRows, m);
+			} else {
+				// Compute the weighted inputs into the delta buffer of this layer (unused until back propagation)
+				DMatrixRMaj product = deltas[i - 1];
+				CommonOps_DDRM.mult(thetas[i - 1], activations[i - 1], product);
+				for (int k = 0; k < m; k++) {
+					activation.data[k] = 1.0; // Bias row
+				}
+				System.arraycopy(product.data, 0, activation.data, m, product.getNumElements());
+				activationFunctions[i - 1].apply(activation.data, m, product.numRows, m);
+			}
+		}
+	}
+
+	@Override
+	void computeGradientSums(DMatrixRMaj[] thetas) {
+		final int m = batchSize;
+		final int last = deltas.length - 1;
+		CommonOps_DDRM.subtract(activations[last + 1], target, deltas[last]);
+		CommonOps_DDRM.multTransB(deltas[last], activations[last], grads[last]);
+		for (int j = last - 1; j >= 0; j--) {
+			DMatrixRMaj weightedDelta = weightedDeltas[j + 1];
+			CommonOps_DDRM.multTransA(thetas[j + 1], deltas[j + 1], weightedDelta);
+			// The derivative of the activation function is computed from the activations of the layer (skipping its bias row)
+			activationFunctions[j].backward(weightedDelta.data, m, activations[j + 1].data, m, deltas[j].data, 0, deltas[j].getNumElements());
+			CommonOps_DDRM.multTransB(deltas[j], activations[j], grads[j]);
+		}
+	}
+
+	@Override
+	double costSum() {
+		double[] output = activations[activations.length - 1].data;
+		return activationFunctions[activationFunctions.length - 1].cost(output, target.data, target.getNumElements());
+	}
+}
@@ -0,0 +1,38 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.training.optimization.Optimizer;
+
+/**
+ * Linear regression trained incrementally by {@link #partialFit(DataSet, DataSetTarget)} with the cost function of {@link LinearRegression}
+ */
+public class OnlineLinearRegression extends OnlineRegression {
+
+	/**
+	 * @param initial (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients, which is only used by this model
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 */
+	public OnlineLinearRegression(FeatureParameters initial, Optimizer optimizer, double lambda) {
+		super(initial, optimizer, lambda, LinearRegression.SQUARED_ERROR);
+	}
+
+	/**
+	 * Creates a model whose parameters are initially 0
+	 * @param numFeatures the number of features n of every example
+	 * @param optimizer the optimizer which updates the parameters from their gradients, which is only used by this model
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 */
+	public OnlineLinearRegression(int numFeatures, Optimizer optimizer, double lambda) {
+		this(new FeatureParameters(new double[numFeatures + 1]), optimizer, lambda);
+	}
+
+	/**
+	 * Calculates the hypothesis value for a data set given the current parameters
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias - first column vector should only 1s)
+	 * @return m vector of the hypothesis value for each training example
+	 * @see LinearRegression#hypothesis(FeatureParameters, DataSet)
+	 */
+	public DataSetTarget hypothesis(DataSet dataSet) {
+		return LinearRegression.hypothesis(getParameters(), dataSet);
+	}
+}
@@ -0,0 +1,48 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.training.optimization.Optimizer;
+
+/**
+ * Logistic regression trained incrementally by {@link #partialFit(DataSet, DataSetTarget)} with the cost function of {@link LogisticRegression}
+ */
+public class OnlineLogisticRegression extends OnlineRegression {
+
+	/**
+	 * @param initial (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients, which is only used by this model
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 */
+	public OnlineLogisticRegression(FeatureParameters initial, Optimizer optimizer, double lambda) {
+		super(initial, optimizer, lambda, LogisticRegression.LOG_LOSS);
+	}
+
+	/**
+	 * Creates a model whose parameters are initially 0
+	 * @param numFeatures the number of features n of every example
+	 * @param optimizer the optimizer which updates the parameters from their gradients, which is only used by this model
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 */
+	public OnlineLogisticRegression(int numFeatures, Optimizer optimizer, double lambda) {
+		this(new FeatureParameters(new double[numFeatures + 1]), optimizer, lambda);
+	}
+
+	/**
+	 * Calculates the hypothesis value for a data set given the current parameters
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias - first column vector should only 1s)
+	 * @return m vector of the hypothesis value for each training example
+	 * @see LogisticRegression#hypothesis(FeatureParameters, DataSet)
+	 */
+	public DataSetTarget hypothesis(DataSet dataSet) {
+		return LogisticRegression.hypothesis(getParameters(), dataSet);
+	}
+
+	/**
+	 * Predicts whether each data example is 0 or 1 using the current parameters with a threshold at 0.5
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias - first column vector should only 1s)
+	 * @return m vector of the prediction for each training example
+	 * @see LogisticRegression#predict(FeatureParameters, DataSet)
+	 */
+	public DataSetTarget predict(DataSet dataSet) {
+		return LogisticRegression.predict(getParameters(), dataSet);
+	}
+}
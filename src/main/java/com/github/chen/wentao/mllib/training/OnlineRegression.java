@@ -0,0 +1,121 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.training.optimization.Optimizer;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Model of n + 1 feature parameters which is trained incrementally on batches of examples as they arrive.
+ * The parameters and the state of the optimizer (such as momentum or moment estimates) are kept between batches,
+ * so every update takes time proportional to the size of its batch and continues where the previous update stopped.
+ * Updates and reads of the parameters are synchronized, so the model can be read while another thread trains it.
+ */
+public abstract class OnlineRegression {
+
+	private final SimpleMatrix theta;
+	private final DMatrixRMaj[] parameters;
+	private final DMatrixRMaj[] gradients;
+	private final double[] features;
+	private final Optimizer optimizer;
+	private final double lambda;
+	private final LinearModels.ExampleLoss loss;
+	private int numUpdates;
+	private long numExamples;
+
+	/**
+	 * @param initial (n + 1) vector of initial n parameter features (and bias parameter)
+	 * @param optimizer the optimizer which updates the parameters from their gradients, which is only used by this model
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param loss the loss of a single example
+	 */
+	OnlineRegression(FeatureParameters initial, Optimizer optimizer, double lambda, LinearModels.ExampleLoss loss) {
+		assert initial.numFeatures() > 0;
+		assert lambda >= 0 && Double.isFinite(lambda);
+
+		this.theta = initial.getMatrix().copy();
+		this.parameters = new DMatrixRMaj[] {theta.getDDRM()};
+		this.gradients = new DMatrixRMaj[] {new DMatrixRMaj(theta.numRows(), 1)};
+		this.features = new double[theta.numRows() - 1];
+		this.optimizer = optimizer;
+		this.lambda = lambda;
+		this.loss = loss;
+	}
+
+	/**
+	 * Updates the parameters with a single optimization step on a batch of new examples
+	 * @param dataSet (b) x (n) matrix of b new training examples and n features
+	 * @param target (b) vector of the target values of the new training examples
+	 * @return the regularized cost of the batch before the update
+	 */
+	public double partialFit(DataSet dataSet, DataSetTarget target) {
+		return partialFit(new FullDataSet(dataSet, target));
+	}
+
+	/**
+	 * Updates the parameters with a single optimization step on a batch of new examples
+	 * @param batch the new training examples with n features and their target values
+	 * @return the regularized cost of the batch before the update
+	 */
+	public synchronized double partialFit(FullDataSet batch) {
+		assert batch.numExamples() > 0;
+
+		double m = batch.numExamples();
+		double costSum = LinearModels.batchCost(loss, parameters[0], batch, features, gradients[0]);
+		double cost = (costSum + LinearModels.regularizationCost(parameters[0], lambda)) / m;
+		LinearModels.regularizeGradient(parameters[0], lambda, m, gradients[0]);
+		optimizer.update(parameters, gradients);
+		numUpdates++;
+		numExamples += batch.numExamples();
+		return cost;
+	}
+
+	/**
+	 * Updates the parameters with one optimization step on each of a range of batches of a stream,
+	 * so that consecutive calls can resume where the previous one stopped
+	 * @param dataSetStream the batches of new training examples
+	 * @param startBatch the index of the first batch to train on (greater or equal to 0)
+	 * @param numBatches the number of batches to train on (greater than 0)
+	 * @return the mean cost of the batches before their updates
+	 * @throws IllegalArgumentException if the index of the first batch is negative or the number of batches is not positive
+	 */
+	public double partialFit(BatchFullDataSetStream dataSetStream, int startBatch, int numBatches) {
+		if (startBatch < 0) {
+			throw new IllegalArgumentException("Index of the first batch must not be negative but was " + startBatch);
+		}
+		if (numBatches <= 0) {
+			throw new IllegalArgumentException("Number of batches must be positive but was " + numBatches);
+		}
+
+		double totalCost = 0.0;
+		for (int i = 0; i < numBatches; i++) {
+			totalCost += partialFit(dataSetStream.getBatch(startBatch + i));
+		}
+		return totalCost / numBatches;
+	}
+
+	/**
+	 * Returns a copy of the current parameters, which is not affected by later updates
+	 * @return (n + 1) vector of n parameter features (and bias parameter)
+	 */
+	public synchronized FeatureParameters getParameters() {
+		return new FeatureParameters(theta.copy());
+	}
+
+	/**
+	 * @return the number of batches trained on so far
+	 */
+	public synchronized int getNumUpdates() {
+		return numUpdates;
+	}
+
+	/**
+	 * @return the number of examples trained on so far
+	 */
+	public synchronized long getNumExamples() {
+		return numExamples;
+	}
+
+	public double getLambda() {
+		return lambda;
+	}
+}
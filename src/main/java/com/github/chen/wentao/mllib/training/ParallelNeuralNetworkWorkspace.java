@@ -0,0 +1,116 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Computes the gradients of a {@link NeuralNetwork} by splitting every batch into a fixed number of contiguous shards.
+ * Each shard is back propagated on a {@link ForkJoinPool} into its own {@link NeuralNetworkWorkspace} (or {@link FloatNeuralNetworkWorkspace}
+ * in single precision) and the double precision partial gradient sums are reduced in shard order, so the result only depends on the
+ * number of shards and never on thread scheduling.
+ */
+class ParallelNeuralNetworkWorkspace implements BackPropagator {
+
+	private final ForkJoinPool pool;
+	private final AbstractNeuralNetworkWorkspace[] shards;
+	private final int[] shardStarts;
+	private final int[] shardEnds;
+	private final ForkJoinTask<?>[] tasks;
+	private DMatrixRMaj dataSet;
+	private DMatrixRMaj target;
+	private int[] rows; // Indices of the examples of the batch (or null if the batch is a range of examples)
+	private int batchSize;
+	private int numActiveShards;
+	private boolean loaded;
+
+	ParallelNeuralNetworkWorkspace(SimpleMatrix[] thetas, Activation[] activationFunctions, ForkJoinPool pool, int numShards, boolean singlePrecision) {
+		assert numShards > 0;
+
+		this.pool = pool;
+		this.shards = new AbstractNeuralNetworkWorkspace[numShards];
+		for (int i = 0; i < numShards; i++) {
+			shards[i] = singlePrecision ? new FloatNeuralNetworkWorkspace(thetas, activationFunctions) : new NeuralNetworkWorkspace(thetas, activationFunctions);
+		}
+		this.shardStarts = new int[numShards];
+		this.shardEnds = new int[numShards];
+		this.tasks = new ForkJoinTask<?>[numShards];
+	}
+
+	@Override
+	public void loadBatch(DMatrixRMaj dataSet, DMatrixRMaj target, int rowStart, int rowEnd) {
+		assert 0 <= rowStart && rowStart < rowEnd && rowEnd <= dataSet.numRows;
+
+		loadBatch(dataSet, target, null, rowStart, rowEnd);
+	}
+
+	@Override
+	public void loadBatch(DMatrixRMaj dataSet, DMatrixRMaj target, int[] rows) {
+		assert rows.length > 0;
+
+		loadBatch(dataSet, target, rows, 0, rows.length);
+	}
+
+	private void loadBatch(DMatrixRMaj dataSet, DMatrixRMaj target, int[] rows, int start, int end) {
+		this.dataSet = dataSet;
+		this.target = target;
+		this.rows = rows;
+		this.batchSize = end - start;
+		this.loaded = false; // Shards copy their examples in parallel on the next back propagation
+
+		int m = end - start;
+		numActiveShards = Math.min(shards.length, m);
+		for (int i = 0; i < numActiveShards; i++) {
+			shardStarts[i] = start + (int) ((long) m * i / numActiveShards);
+			shardEnds[i] = start + (int) ((long) m * (i + 1) / numActiveShards);
+		}
+	}
+
+	@Override
+	public void backPropagation(DMatrixRMaj[] thetas, double lambda) {
+		boolean load = !loaded;
+		int[] rows = this.rows;
+		for (int i = 0; i < numActiveShards; i++) {
+			AbstractNeuralNetworkWorkspace shard = shards[i];
+			int shardStart = shardStarts[i];
+			int shardEnd = shardEnds[i];
+			tasks[i] = pool.submit(() -> {
+				if (load) {
+					shard.loadBatch(dataSet, target, rows, shardStart, shardEnd);
+				}
+				shard.feedForward(thetas);
+				shard.computeGradientSums(thetas);
+			});
+		}
+		loaded = true;
+
+		// Reduce partial sums in a fixed order for reproducible results
+		DMatrixRMaj[] grads = shards[0].getGradients();
+		tasks[0].join();
+		for (int i = 1; i < numActiveShards; i++) {
+			tasks[i].join();
+			DMatrixRMaj[] shardGrads = shards[i].getGradients();
+			for (int layer = 0; layer < grads.length; layer++) {
+				CommonOps_DDRM.addEquals(grads[layer], shardGrads[layer]);
+			}
+		}
+		shards[0].regularize(thetas, lambda, batchSize);
+	}
+
+	@Override
+	public DMatrixRMaj[] getGradients() {
+		return shards[0].getGradients();
+	}
+
+	@Override
+	public double cost(DMatrixRMaj[] thetas, double lambda) {
+		double costSum = 0.0;
+		for (int i = 0; i < numActiveShards; i++) {
+			costSum += shards[i].costSum();
+		}
+		return (costSum + AbstractNeuralNetworkWorkspace.regularizationCost(thetas, lambda)) / batchSize;
+	}
+}
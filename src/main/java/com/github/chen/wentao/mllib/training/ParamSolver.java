@@ -1,7 +1,16 @@
 package com.github.chen.wentao.mllib.training;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class ParamSolver {
@@ -14,6 +23,19 @@ public class ParamSolver {
 		)).orElse(null);
 	}
 
+	/**
+	 * Finds the test value with the lowest cross validation cost by training every test value concurrently
+	 * @param executor the executor which trains the test values (its number of threads bounds the number of concurrent trainings)
+	 * @return the test value with the lowest cross validation cost (the first in stream order if tied) or null if there are no test values
+	 */
+	public static <T, S> T findOptimalParams(Function<T, SupervisedLearningAlgorithm<S>> learningAlgorithmGenerator, Function<T, CostFunction<S>> costFunctionGenerator, Function<T, FullDataSet> trainingDataSetGenerator, FullDataSet crossValidationDataSet, Stream<T> testValues, Executor executor) {
+		DataSet cvDataSet = crossValidationDataSet.getDataSet();
+		DataSetTarget cvDataSetTarget = crossValidationDataSet.getDataSetTarget();
+		List<T> candidates = testValues.collect(Collectors.toList());
+		double[] costs = evaluate(candidates, v -> cvCost(learningAlgorithmGenerator, costFunctionGenerator, trainingDataSetGenerator, cvDataSet, cvDataSetTarget, v), executor);
+		return candidates.isEmpty() ? null : candidates.get(argMin(costs));
+	}
+
 	private static <T, S> double cvCost(Function<T, SupervisedLearningAlgorithm<S>> learningAlgorithmGenerator, Function<T, CostFunction<S>> costFunctionGenerator, Function<T, FullDataSet> trainingDataSetGenerator, DataSet cvDataSet, DataSetTarget cvDataSetTarget, T value) {
 		FullDataSet trainDataSubset = trainingDataSetGenerator.apply(value);
 		SupervisedLearningAlgorithm<S> algorithm = learningAlgorithmGenerator.apply(value);
@@ -28,6 +50,17 @@ public class ParamSolver {
 		)).orElse(null);
 	}
 
+	/**
+	 * Finds the test value with the lowest cross validation cost by training every test value concurrently
+	 * @param executor the executor which trains the test values (its number of threads bounds the number of concurrent trainings)
+	 * @return the test value with the lowest cross validation cost (the first in stream order if tied) or null if there are no test values
+	 */
+	public static <T, S> T findOptimalParams(Function<T, SupervisedLearningAlgorithm<S>> learningAlgorithmGenerator, Function<T, CostFunction<S>> costFunctionGenerator, TrainCVTestDataSet fullDataSet, Stream<T> testValues, Executor executor) {
+		List<T> candidates = testValues.collect(Collectors.toList());
+		double[] costs = evaluate(candidates, v -> cvCost(learningAlgorithmGenerator, costFunctionGenerator, fullDataSet, v), executor);
+		return candidates.isEmpty() ? null : candidates.get(argMin(costs));
+	}
+
 	private static <T, S> double cvCost(Function<T, SupervisedLearningAlgorithm<S>> learningAlgorithmGenerator, Function<T, CostFunction<S>> costFunctionGenerator, TrainCVTestDataSet fullDataSet, T value) {
 		FullDataSet trainDataSubset = fullDataSet.getFullTrainingSet();
 		DataSet cvDataSet = fullDataSet.getCrossValidationSet();
@@ -37,4 +70,148 @@ public class ParamSolver {
 		S optimalParamsTrain = algorithm.findOptimalParameters(trainDataSubset.getDataSet(), trainDataSubset.getDataSetTarget());
 		return costFunction.apply(optimalParamsTrain, cvDataSet, cvDataSetTarget);
 	}
+
+	/**
+	 * Successive halving (Jamieson and Talwalkar): trains every candidate with a small number of iterations, keeps the
+	 * 1 / {@code eta} candidates with the lowest cross validation cost and repeats with {@code eta} times as many iterations
+	 * until the maximum number of iterations is reached. Once a single candidate is left it is trained with the maximum number of iterations directly,
+	 * so the winner is always evaluated after the full training budget.
+	 * <p>
+	 * A learning algorithm only receives a candidate and a number of iterations, so survivors are retrained from scratch every round
+	 * instead of resuming from the parameters of their previous round. This keeps rounds independent (a candidate is scored the same regardless of
+	 * which round trains it) at the cost of repeating earlier rounds: a candidate which survives to the last round is trained for up to
+	 * {@code eta / (eta - 1)} times the iterations of its final round in total (1.5 times for {@code eta = 3}). The extra work is spent on the
+	 * few survivors, so the total budget grows by less than that factor.
+	 * @param learningAlgorithmGenerator generates the learning algorithm of a candidate which trains for a number of iterations
+	 * @param costFunctionGenerator generates the cross validation cost function of a candidate
+	 * @param fullDataSet the training and cross validation sets
+	 * @param candidates the candidates to be tested
+	 * @param minIterations the number of iterations of the first round (greater than 0)
+	 * @param maxIterations the maximum number of iterations of any round (greater or equal to {@code minIterations})
+	 * @param eta the factor by which the candidates are reduced every round (greater than 1, usually 3)
+	 * @param executor the executor which trains the candidates of a round concurrently
+	 * @return the candidate with the lowest cross validation cost in the last round or null if there are no candidates
+	 */
+	public static <T, S> T successiveHalving(BiFunction<T, Integer, SupervisedLearningAlgorithm<S>> learningAlgorithmGenerator, Function<T, CostFunction<S>> costFunctionGenerator, TrainCVTestDataSet fullDataSet, List<T> candidates, int minIterations, int maxIterations, int eta, Executor executor) {
+		Candidate<T> best = successiveHalvingCandidate(learningAlgorithmGenerator, costFunctionGenerator, fullDataSet, candidates, minIterations, maxIterations, eta, executor);
+		return best == null ? null : best.value;
+	}
+
+	/**
+	 * Hyperband (Li et al.): runs successive halving in several brackets which trade the number of random candidates against the
+	 * number of iterations of the first round, so it does not depend on guessing how early candidates can be compared.
+	 * The winner of every bracket is trained with the maximum number of iterations, so the brackets are compared at the same budget.
+	 * As in {@link #successiveHalving}, survivors are retrained from scratch every round
+	 * @param learningAlgorithmGenerator generates the learning algorithm of a candidate which trains for a number of iterations
+	 * @param costFunctionGenerator generates the cross validation cost function of a candidate
+	 * @param fullDataSet the training and cross validation sets
+	 * @param sampler samples a random candidate
+	 * @param random the source of randomness passed to the sampler
+	 * @param maxIterations the maximum number of iterations a candidate is trained for (greater than 0)
+	 * @param eta the factor by which the candidates are reduced every round (greater than 1, usually 3)
+	 * @param executor the executor which trains the candidates of a round concurrently
+	 * @return the candidate with the lowest cross validation cost among the winners of every bracket
+	 */
+	public static <T, S> T hyperband(BiFunction<T, Integer, SupervisedLearningAlgorithm<S>> learningAlgorithmGenerator, Function<T, CostFunction<S>> costFunctionGenerator, TrainCVTestDataSet fullDataSet, Function<Random, T> sampler, Random random, int maxIterations, int eta, Executor executor) {
+		assert maxIterations > 0;
+		assert eta > 1;
+
+		int maxBracket = 0;
+		while (Math.pow(eta, maxBracket + 1) <= maxIterations) {
+			maxBracket++;
+		}
+		Candidate<T> best = null;
+		for (int bracket = maxBracket; bracket >= 0; bracket--) {
+			int numCandidates = (int) Math.ceil((maxBracket + 1.0) / (bracket + 1.0) * Math.pow(eta, bracket));
+			int minIterations = Math.max(1, (int) (maxIterations / Math.pow(eta, bracket)));
+			List<T> candidates = Stream.generate(() -> sampler.apply(random)).limit(numCandidates).collect(Collectors.toList());
+			Candidate<T> winner = successiveHalvingCandidate(learningAlgorithmGenerator, costFunctionGenerator, fullDataSet, candidates, minIterations, maxIterations, eta, executor);
+			if (best == null || winner.cost < best.cost) {
+				best = winner;
+			}
+		}
+		return best.value;
+	}
+
+	private static <T, S> Candidate<T> successiveHalvingCandidate(BiFunction<T, Integer, SupervisedLearningAlgorithm<S>> learningAlgorithmGenerator, Function<T, CostFunction<S>> costFunctionGenerator, TrainCVTestDataSet fullDataSet, List<T> candidates, int minIterations, int maxIterations, int eta, Executor executor) {
+		assert minIterations > 0 && minIterations <= maxIterations;
+		assert eta > 1;
+
+		if (candidates.isEmpty()) {
+			return null;
+		}
+		List<T> remaining = candidates;
+		int iterations = candidates.size() == 1 ? maxIterations : minIterations;
+		while (true) {
+			final int roundIterations = iterations; // Every round trains from scratch, since the generator cannot resume from earlier parameters
+			double[] costs = evaluate(remaining, v -> cvCost(value -> learningAlgorithmGenerator.apply(value, roundIterations), costFunctionGenerator, fullDataSet, v), executor);
+			int[] order = IntStream.range(0, remaining.size()).boxed()
+					.sorted(Comparator.comparingDouble(i -> costs[i]))
+					.mapToInt(Integer::intValue).toArray(); // Stable, so ties keep their original order
+			if (iterations >= maxIterations) {
+				return new Candidate<>(remaining.get(order[0]), costs[order[0]]);
+			}
+			int keep = Math.max(1, remaining.size() / eta);
+			List<T> survivors = new ArrayList<>(keep);
+			for (int i = 0; i < keep; i++) {
+				survivors.add(remaining.get(order[i]));
+			}
+			remaining = survivors;
+			iterations = keep == 1 ? maxIterations : (int) Math.min((long) iterations * eta, maxIterations); // Nothing left to compare before the full budget
+		}
+	}
+
+	/**
+	 * Grid of every combination of two lists of values
+	 * @param first the values of the first parameter
+	 * @param second the values of the second parameter
+	 * @param combiner combines a value of each parameter into a test value
+	 * @return the test values in row-major order of the grid
+	 */
+	public static <A, B, T> Stream<T> grid(List<A> first, List<B> second, BiFunction<A, B, T> combiner) {
+		return first.stream().flatMap(a -> second.stream().map(b -> combiner.apply(a, b)));
+	}
+
+	/**
+	 * Random search which samples a number of test values
+	 * @param sampler samples a random test value
+	 * @param random the source of randomness passed to the sampler
+	 * @param count the number of test values
+	 * @return the sampled test values (sampled eagerly so the sequence does not depend on the order of evaluation)
+	 */
+	public static <T> Stream<T> random(Function<Random, T> sampler, Random random, int count) {
+		List<T> values = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			values.add(sampler.apply(random));
+		}
+		return values.stream();
+	}
+
+	private static <T> double[] evaluate(List<T> candidates, ToDoubleFunction<T> cost, Executor executor) {
+		List<CompletableFuture<Double>> futures = candidates.stream()
+				.map(candidate -> CompletableFuture.supplyAsync(() -> cost.applyAsDouble(candidate), executor))
+				.collect(Collectors.toList());
+		return futures.stream().mapToDouble(CompletableFuture::join).toArray();
+	}
+
+	private static int argMin(double[] costs) {
+		int min = 0;
+		for (int i = 1; i < costs.length; i++) {
+			if (Double.compare(costs[i], costs[min]) < 0) { // NaN costs of diverged candidates are never chosen over finite costs
+				min = i;
+			}
+		}
+		return min;
+	}
+
+	private static class Candidate<T> {
+
+		private final T value;
+		private final double cost;
+
+		private Candidate(T value, double cost) {
+			this.value = value;
+			this.cost = cost;
+		}
+	}
 }
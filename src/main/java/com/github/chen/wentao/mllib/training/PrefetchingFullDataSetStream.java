@@ -0,0 +1,125 @@
+package com.github.chen.wentao.mllib.training;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decorates a stream by loading the batches after the last requested batch on a background thread,
+ * so reading and decoding batches overlaps with training on the current batch.
+ * <p>
+ * Batches are assumed to be requested sequentially, either in increasing or in decreasing order (the direction of the last two requests),
+ * and indices past the number of batches are prefetched as further epochs.
+ * At most {@code depth} batches are loaded ahead and held in a ring of slots indexed by the batch index modulo {@code depth},
+ * which bounds the memory of the decorator. A requested batch which was not prefetched is loaded synchronously.
+ * Every call to the underlying stream is made from the single background thread, so the underlying stream need not be thread-safe.
+ */
+public class PrefetchingFullDataSetStream implements BatchFullDataSetStream, Closeable {
+
+	private final BatchFullDataSetStream dataSetStream;
+	private final ExecutorService executor;
+	private final int[] slotIndices; // Index of the batch loaded in every slot (or -1 if the slot is empty)
+	private final Future<?>[] slotBatches;
+	private int lastIndex = -1;
+	private int direction = 1;
+
+	/**
+	 * @param dataSetStream the stream to be decorated
+	 * @param depth the maximum number of batches loaded ahead of the last requested batch (greater than 0)
+	 */
+	public PrefetchingFullDataSetStream(BatchFullDataSetStream dataSetStream, int depth) {
+		assert depth > 0;
+
+		this.dataSetStream = dataSetStream;
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "batch-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.slotIndices = new int[depth];
+		this.slotBatches = new Future<?>[depth];
+		Arrays.fill(slotIndices, -1);
+	}
+
+	@Override
+	public FullDataSet getBatch(int batchIndex) {
+		Future<?> batch;
+		synchronized (this) {
+			if (lastIndex >= 0 && batchIndex == lastIndex - 1) {
+				direction = -1;
+			} else if (batchIndex == lastIndex + 1) {
+				direction = 1;
+			}
+			lastIndex = batchIndex;
+
+			int slot = Math.floorMod(batchIndex, slotIndices.length);
+			if (slotIndices[slot] == batchIndex) {
+				batch = slotBatches[slot];
+				slotIndices[slot] = -1;
+				slotBatches[slot] = null;
+			} else {
+				// Batches ahead of a different position would delay this batch on the background thread
+				for (int k = 0; k < slotBatches.length; k++) {
+					if (slotBatches[k] != null) {
+						slotBatches[k].cancel(false);
+						slotBatches[k] = null;
+						slotIndices[k] = -1;
+					}
+				}
+				batch = executor.submit(() -> dataSetStream.getBatch(batchIndex));
+			}
+			prefetch(batchIndex);
+		}
+		try {
+			return (FullDataSet) batch.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for batch " + batchIndex);
+		}
+	}
+
+	/**
+	 * Schedules the batches following a batch in the current direction, replacing batches which are no longer ahead
+	 */
+	private void prefetch(int batchIndex) {
+		for (int k = 1; k <= slotIndices.length; k++) {
+			int index = batchIndex + k * direction;
+			if (index < 0) {
+				break;
+			}
+			int slot = Math.floorMod(index, slotIndices.length);
+			if (slotIndices[slot] != index) {
+				if (slotBatches[slot] != null) {
+					slotBatches[slot].cancel(false);
+				}
+				slotIndices[slot] = index;
+				slotBatches[slot] = executor.submit(() -> dataSetStream.getBatch(index));
+			}
+		}
+	}
+
+	@Override
+	public int numBatches() {
+		return dataSetStream.numBatches();
+	}
+
+	/**
+	 * Stops the background thread, discarding batches which were loaded but not requested
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,333 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.data.DataUtil;
+import com.github.chen.wentao.mllib.training.optimization.GradientDescentOptimizer;
+import com.github.chen.wentao.mllib.training.optimization.LBFGSMinimizer;
+import com.github.chen.wentao.mllib.training.optimization.Minimizer;
+import com.github.chen.wentao.mllib.training.optimization.Optimizer;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.function.Supplier;
+
+/**
+ * Multinomial logistic regression which models the probability of every label with a single (n + 1) x (k) parameter matrix.
+ * Unlike the one-vs-all classifiers of {@link LogisticRegression}, the probabilities of all labels sum to 1 and every label
+ * is scored with one matrix product.
+ */
+public class SoftmaxRegression {
+
+	public static AlgorithmHypothesis getHypothesis(MultiFeatureParameters theta) {
+		return dataSet -> SoftmaxRegression.hypothesis(theta, dataSet);
+	}
+
+	public static AlgorithmHypothesis getPredictorHypothesis(MultiFeatureParameters theta) {
+		return dataSet -> SoftmaxRegression.predict(theta, dataSet);
+	}
+
+	public static SupervisedLearningAlgorithm<MultiFeatureParameters> getAlgorithm(MultiFeatureParameters initial, double alpha, double lambda, int numIterations) {
+		return getAlgorithm(initial, () -> new GradientDescentOptimizer(alpha), lambda, numIterations);
+	}
+
+	public static SupervisedLearningAlgorithm<MultiFeatureParameters> getAlgorithm(MultiFeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations) {
+		return getAlgorithm(initial, optimizerGenerator, lambda, numIterations, ConvergencePolicy.none());
+	}
+
+	public static SupervisedLearningAlgorithm<MultiFeatureParameters> getAlgorithm(MultiFeatureParameters initial, Supplier<Optimizer> optimizerGenerator, double lambda, int numIterations, ConvergencePolicy<MultiFeatureParameters> policy) {
+		return (dataSet, target) -> SoftmaxRegression.gradientDescent(dataSet, target, initial, optimizerGenerator.get(), lambda, numIterations, policy).getParameters();
+	}
+
+	public static SupervisedLearningAlgorithm<MultiFeatureParameters> getAlgorithm(MultiFeatureParameters initial, Supplier<Minimizer> minimizerGenerator, double lambda) {
+		return (dataSet, target) -> SoftmaxRegression.minimize(dataSet, target, initial, minimizerGenerator.get(), lambda);
+	}
+
+	public static SupervisedLearningAlgorithm<MultiFeatureParameters> getLBFGSAlgorithm(MultiFeatureParameters initial, double lambda, int maxIterations) {
+		return getAlgorithm(initial, () -> new LBFGSMinimizer(maxIterations), lambda);
+	}
+
+	public static CostFunction<MultiFeatureParameters> getCostFunction(double lambda) {
+		return (theta, dataSet, target) -> costFunction(theta, dataSet, target, lambda);
+	}
+
+	/**
+	 * Calculates the probability of every label for a data set given parameters theta
+	 * @param theta (n + 1) x (k) matrix of n parameter features (and bias parameter) for each of k labels
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @return (m) x (k) matrix of the probability of each label for each training example
+	 */
+	public static DataSetTarget hypothesis(MultiFeatureParameters theta, DataSet dataSet) {
+		return new DataSetTarget(hypothesis(theta.getMatrix(), DataUtil.addBiasColumn(dataSet.getMatrix())), theta.numLabels());
+	}
+
+	/**
+	 * Calculates the probability of every label for a data set given parameters theta
+	 * @param theta (n + 1) x (k) matrix of n parameter features (and bias parameter) for each of k labels
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias - first column vector should only 1s)
+	 * @return (m) x (k) matrix of the probability of each label for each training example
+	 */
+	private static SimpleMatrix hypothesis(SimpleMatrix theta, SimpleMatrix dataSet) {
+		assert(theta.numRows() == dataSet.numCols()); // correct number of features
+
+		SimpleMatrix probabilities = dataSet.mult(theta);
+		softmax(probabilities.getDDRM(), null);
+		return probabilities;
+	}
+
+	/**
+	 * Predicts the most probable label of each data example using parameters theta
+	 * @param theta (n + 1) x (k) matrix of n parameter features (and bias parameter) for each of k labels
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @return m vector of the predicted label for each training example
+	 */
+	public static DataSetTarget predict(MultiFeatureParameters theta, DataSet dataSet) {
+		return new DataSetTarget(predict(theta.getMatrix(), DataUtil.addBiasColumn(dataSet.getMatrix())), theta.numLabels());
+	}
+
+	/**
+	 * Predicts the most probable label of each data example using parameters theta.
+	 * The softmax function preserves order, so the label with the greatest score is chosen directly from the product.
+	 * @param theta (n + 1) x (k) matrix of n parameter features (and bias parameter) for each of k labels
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias - first column vector should only 1s)
+	 * @return m vector of the predicted label for each training example
+	 */
+	private static SimpleMatrix predict(SimpleMatrix theta, SimpleMatrix dataSet) {
+		assert(theta.numRows() == dataSet.numCols()); // correct number of features
+
+		DMatrixRMaj scores = new DMatrixRMaj(dataSet.numRows(), theta.numCols());
+		CommonOps_DDRM.mult(dataSet.getDDRM(), theta.getDDRM(), scores);
+		final int labels = scores.numCols;
+		double[] predictions = new double[scores.numRows];
+		for (int i = 0; i < predictions.length; i++) {
+			int rowOffset = i * labels;
+			int maxLabel = 0;
+			double maxLabelValue = scores.data[rowOffset];
+			for (int label = 1; label < labels; label++) {
+				double value = scores.data[rowOffset + label];
+				if (value > maxLabelValue) {
+					maxLabel = label;
+					maxLabelValue = value;
+				}
+			}
+			predictions[i] = maxLabel;
+		}
+		return new SimpleMatrix(predictions.length, 1, true, predictions);
+	}
+
+	/**
+	 * Calculates the cross-entropy cost for a data set given parameters theta
+	 * @param theta (n + 1) x (k) matrix of n parameter features (and bias parameter) for each of k labels
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be an integer greater or equal to 0 and less than k)
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return double of the cost of the parameters for the data set
+	 */
+	public static double costFunction(MultiFeatureParameters theta, DataSet dataSet, DataSetTarget target, double lambda) {
+		return costFunction(theta.getMatrix(), DataUtil.addBiasColumn(dataSet.getMatrix()), target.getMatrix(), lambda);
+	}
+
+	/**
+	 * Calculates the cross-entropy cost for a data set given parameters theta
+	 * @param theta (n + 1) x (k) matrix of n parameter features (and bias parameter) for each of k labels
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias value)
+	 * @param target (m) vector of the target values for each m training examples (each element should be an integer greater or equal to 0 and less than k)
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return double of the cost of the parameters for the data set
+	 */
+	private static double costFunction(SimpleMatrix theta, SimpleMatrix dataSet, SimpleMatrix target, double lambda) {
+		assert(theta.numRows() == dataSet.numCols()); // correct number of features
+		assert(dataSet.numRows() == target.numRows()); // correct number of training examples
+		assert(target.numCols() == 1); // is vector
+		assert(lambda >= 0 && Double.isFinite(lambda));
+		assert(dataSet.numRows() > 0);
+
+		DMatrixRMaj probabilities = new DMatrixRMaj(dataSet.numRows(), theta.numCols());
+		CommonOps_DDRM.mult(dataSet.getDDRM(), theta.getDDRM(), probabilities);
+		double cost = softmax(probabilities, toLabels(target, theta.numCols()));
+		return (cost + regularizationCost(theta.getDDRM(), lambda)) / dataSet.numRows();
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer}
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be an integer greater or equal to 0 and less than k)
+	 * @param initialTheta (n + 1) x (k) matrix of initial n parameter features (and bias parameter) for each of k labels
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @return (n + 1) x (k) matrix of the optimal parameters theta
+	 */
+	public static MultiFeatureParameters gradientDescent(DataSet dataSet, DataSetTarget target, MultiFeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations) {
+		return gradientDescent(dataSet, target, initialTheta, optimizer, lambda, numIterations, ConvergencePolicy.none()).getParameters();
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer} until it converges
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be an integer greater or equal to 0 and less than k)
+	 * @param initialTheta (n + 1) x (k) matrix of initial n parameter features (and bias parameter) for each of k labels
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param policy the conditions under which training stops early
+	 * @return (n + 1) x (k) matrix of the optimal parameters theta and the report of the training run
+	 */
+	public static TrainingResult<MultiFeatureParameters> gradientDescent(DataSet dataSet, DataSetTarget target, MultiFeatureParameters initialTheta, Optimizer optimizer, double lambda, int numIterations, ConvergencePolicy<MultiFeatureParameters> policy) {
+		return gradientDescent(DataUtil.addBiasColumn(dataSet.getMatrix()), target.getMatrix(), initialTheta.getMatrix(), optimizer, lambda, numIterations, policy.start());
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with an {@link Optimizer}.
+	 * Each iteration computes the scores of every label with one matrix product and the gradients of every label with another.
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias value)
+	 * @param target (m) vector of the target values for each m training examples (each element should be an integer greater or equal to 0 and less than k)
+	 * @param initialTheta (n + 1) x (k) matrix of initial n parameter features (and bias parameter) for each of k labels
+	 * @param optimizer the optimizer which updates the parameters from their gradients
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param numIterations the maximum number of iterations to be performed
+	 * @param monitor the monitor which decides when training has converged
+	 * @return (n + 1) x (k) matrix of the optimal parameters theta and the report of the training run
+	 */
+	private static TrainingResult<MultiFeatureParameters> gradientDescent(SimpleMatrix dataSet, SimpleMatrix target, SimpleMatrix initialTheta, Optimizer optimizer, double lambda, int numIterations, ConvergenceMonitor<MultiFeatureParameters> monitor) {
+		assert(initialTheta.numRows() == dataSet.numCols()); // correct number of features
+		assert(dataSet.numRows() == target.numRows()); // correct number of training examples
+		assert(target.numCols() == 1); // is vector
+		assert(lambda >= 0 && Double.isFinite(lambda));
+
+		int[] labels = toLabels(target, initialTheta.numCols());
+		SimpleMatrix theta = initialTheta.copy();
+		DMatrixRMaj[] parameters = {theta.getDDRM()};
+		DMatrixRMaj[] gradients = {new DMatrixRMaj(theta.numRows(), theta.numCols())};
+		DMatrixRMaj probabilities = new DMatrixRMaj(dataSet.numRows(), theta.numCols());
+		MultiFeatureParameters model = new MultiFeatureParameters(theta);
+		int iterations = 0;
+		while (iterations < numIterations) {
+			double cost = gradient(parameters[0], dataSet.getDDRM(), labels, lambda, probabilities, gradients[0]);
+			if (monitor.hasConverged(iterations, cost, gradients, model)) {
+				break;
+			}
+			optimizer.update(parameters, gradients);
+			iterations++;
+		}
+		return new TrainingResult<>(model, monitor.finish(iterations));
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with a {@link Minimizer} such as L-BFGS
+	 * @param dataSet (m) x (n) matrix of m training examples and n features
+	 * @param target (m) vector of the target values for each m training examples (each element should be an integer greater or equal to 0 and less than k)
+	 * @param initialTheta (n + 1) x (k) matrix of initial n parameter features (and bias parameter) for each of k labels
+	 * @param minimizer the minimizer which searches for the optimal parameters
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return (n + 1) x (k) matrix of the optimal parameters theta
+	 */
+	public static MultiFeatureParameters minimize(DataSet dataSet, DataSetTarget target, MultiFeatureParameters initialTheta, Minimizer minimizer, double lambda) {
+		return new MultiFeatureParameters(minimize(DataUtil.addBiasColumn(dataSet.getMatrix()), target.getMatrix(), initialTheta.getMatrix(), minimizer, lambda));
+	}
+
+	/**
+	 * Minimizes the cost function for a data set with a {@link Minimizer}
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias value)
+	 * @param target (m) vector of the target values for each m training examples (each element should be an integer greater or equal to 0 and less than k)
+	 * @param initialTheta (n + 1) x (k) matrix of initial n parameter features (and bias parameter) for each of k labels
+	 * @param minimizer the minimizer which searches for the optimal parameters
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @return (n + 1) x (k) matrix of the optimal parameters theta
+	 */
+	private static SimpleMatrix minimize(SimpleMatrix dataSet, SimpleMatrix target, SimpleMatrix initialTheta, Minimizer minimizer, double lambda) {
+		assert(initialTheta.numRows() == dataSet.numCols()); // correct number of features
+		assert(dataSet.numRows() == target.numRows()); // correct number of training examples
+		assert(target.numCols() == 1); // is vector
+		assert(lambda >= 0 && Double.isFinite(lambda));
+
+		int[] labels = toLabels(target, initialTheta.numCols());
+		SimpleMatrix theta = initialTheta.copy();
+		DMatrixRMaj probabilities = new DMatrixRMaj(dataSet.numRows(), theta.numCols());
+		minimizer.minimize((parameters, gradient) -> gradient(parameters, dataSet.getDDRM(), labels, lambda, probabilities, gradient), theta.getDDRM());
+		return theta;
+	}
+
+	/**
+	 * Computes the gradient of the cost function into a preallocated matrix
+	 * @param theta (n + 1) x (k) matrix of n parameter features (and bias parameter) for each of k labels
+	 * @param dataSet (m) x (n + 1) matrix of m training examples and n features (and bias value)
+	 * @param labels (m) array of the target label of each training example
+	 * @param lambda the regularization parameter (greater or equal to 0)
+	 * @param errors (m) x (k) matrix used to store the difference between the probabilities and the target values
+	 * @param gradient (n + 1) x (k) matrix which the gradient is written to
+	 * @return double of the cost of the parameters for the data set
+	 */
+	private static double gradient(DMatrixRMaj theta, DMatrixRMaj dataSet, int[] labels, double lambda, DMatrixRMaj errors, DMatrixRMaj gradient) {
+		double m = dataSet.numRows;
+		CommonOps_DDRM.mult(dataSet, theta, errors);
+		double cost = softmax(errors, labels);
+		for (int i = 0; i < labels.length; i++) {
+			errors.data[i * errors.numCols + labels[i]] -= 1.0;
+		}
+		CommonOps_DDRM.multTransA(dataSet, errors, gradient);
+		if (lambda > 0) {
+			for (int k = gradient.numCols, size = gradient.getNumElements(); k < size; k++) { // By convention, bias row is not penalized
+				gradient.data[k] += lambda * theta.data[k];
+			}
+		}
+		CommonOps_DDRM.divide(gradient, m);
+		return (cost + regularizationCost(theta, lambda)) / m;
+	}
+
+	/**
+	 * Replaces every row of scores by its softmax probabilities.
+	 * The maximum score of each row is subtracted before exponentiating so large scores do not overflow.
+	 * @param scores (m) x (k) matrix of the score of each label for each example
+	 * @param labels (m) array of the target label of each example or null if the cost is not needed
+	 * @return the sum of the negative log probabilities of the target labels (or 0 if {@code labels} is null)
+	 */
+	private static double softmax(DMatrixRMaj scores, int[] labels) {
+		final int k = scores.numCols;
+		double[] data = scores.data;
+		double cost = 0.0;
+		for (int i = 0; i < scores.numRows; i++) {
+			int rowOffset = i * k;
+			double max = data[rowOffset];
+			for (int label = 1; label < k; label++) {
+				max = Math.max(max, data[rowOffset + label]);
+			}
+			if (labels != null) {
+				cost -= data[rowOffset + labels[i]] - max;
+			}
+			double sum = 0.0;
+			for (int label = 0; label < k; label++) {
+				double exp = Math.exp(data[rowOffset + label] - max);
+				data[rowOffset + label] = exp;
+				sum += exp;
+			}
+			if (labels != null) {
+				cost += Math.log(sum); // Negative log probability of the target label without underflow
+			}
+			for (int label = 0; label < k; label++) {
+				data[rowOffset + label] /= sum;
+			}
+		}
+		return cost;
+	}
+
+	private static double regularizationCost(DMatrixRMaj theta, double lambda) {
+		double regularizationCost = 0.0;
+		if (lambda > 0) {
+			for (int k = theta.numCols, size = theta.getNumElements(); k < size; k++) { // By convention, bias row is not penalized
+				regularizationCost += theta.data[k] * theta.data[k];
+			}
+			regularizationCost *= lambda / 2.0;
+		}
+		return regularizationCost;
+	}
+
+	private static int[] toLabels(SimpleMatrix target, int numLabels) {
+		int[] labels = new int[target.getNumElements()];
+		for (int i = 0; i < labels.length; i++) {
+			double value = target.get(i);
+			assert(value % 1.0 == 0.0 && value >= 0.0 && value < numLabels);
+			labels[i] = (int) value;
+		}
+		return labels;
+	}
+}
@@ -1,7 +1,5 @@
 package com.github.chen.wentao.mllib.training;
 
-import org.ejml.simple.SimpleMatrix;
-
 import java.util.Random;
 
 public class TrainCVTestDataSet {
@@ -32,6 +30,10 @@ public class TrainCVTestDataSet {
 		return fromFullDataSet(fullDataSet, random, 0.6, 0.2, 0.2);
 	}
 
+	/**
+	 * Shuffles a data set and splits it into views of a training, a cross validation and a test set which share its matrices.
+	 * Every call to {@code getMatrix()} on one of the sets copies its examples.
+	 */
 	public static TrainCVTestDataSet fromFullDataSet(FullDataSet fullDataSet, Random random, double trainProportion, double cvProportion, double testProportion) {
 		fullDataSet = fullDataSet.shuffle(random);
 
@@ -48,18 +50,36 @@ public class TrainCVTestDataSet {
 		int cvSize = (int) (cvProportion * m);
 		int trainSize = m - cvSize - testSize;
 
-		SimpleMatrix dataSetMatrix = dataSet.getMatrix();
-		SimpleMatrix targetMatrix = target.getMatrix();
-
-		DataSet train = new DataSet(dataSetMatrix.extractMatrix(0, trainSize, 0, dataSetMatrix.numCols()));
-		DataSetTarget trainTarget = new DataSetTarget(targetMatrix.extractMatrix(0, trainSize, 0, targetMatrix.numCols()), target.numLabels());
-		DataSet cv = new DataSet(dataSetMatrix.extractMatrix(trainSize, trainSize + cvSize, 0, dataSetMatrix.numCols()));
-		DataSetTarget cvTarget = new DataSetTarget(targetMatrix.extractMatrix(trainSize, trainSize + cvSize, 0, targetMatrix.numCols()), target.numLabels());
-		DataSet test = new DataSet(dataSetMatrix.extractMatrix(trainSize + cvSize, dataSetMatrix.numRows(), 0, dataSetMatrix.numCols()));
-		DataSetTarget testTarget = new DataSetTarget(targetMatrix.extractMatrix(trainSize + cvSize, targetMatrix.numRows(), 0, targetMatrix.numCols()), target.numLabels());
+		// Views of the shuffled examples share the matrices of the full data set
+		DataSet train = dataSet.rows(0, trainSize);
+		DataSetTarget trainTarget = target.rows(0, trainSize);
+		DataSet cv = dataSet.rows(trainSize, trainSize + cvSize);
+		DataSetTarget cvTarget = target.rows(trainSize, trainSize + cvSize);
+		DataSet test = dataSet.rows(trainSize + cvSize, m);
+		DataSetTarget testTarget = target.rows(trainSize + cvSize, m);
 		return new TrainCVTestDataSet(train, trainTarget, cv, cvTarget, test, testTarget);
 	}
 
+	/**
+	 * Splits the training set into k folds for k-fold cross validation (the cross validation and test sets stay held out)
+	 * @param k the number of folds (at least 2 and at most the number of training examples)
+	 * @param random the source of randomness used to shuffle the examples
+	 * @return the folds
+	 */
+	public CrossValidationFolds kFold(int k, Random random) {
+		return CrossValidationFolds.kFold(fullTrainingSet, k, random);
+	}
+
+	/**
+	 * Splits the training set into k folds which each have about the same proportion of examples of every label
+	 * @param k the number of folds (at least 2 and at most the number of training examples)
+	 * @param random the source of randomness used to shuffle the examples
+	 * @return the folds
+	 */
+	public CrossValidationFolds stratifiedKFold(int k, Random random) {
+		return CrossValidationFolds.stratifiedKFold(fullTrainingSet, k, random);
+	}
+
 	public DataSet getTrainingSet() {
 		return trainingSet;
 	}
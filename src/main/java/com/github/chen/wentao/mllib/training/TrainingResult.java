@@ -0,0 +1,24 @@
+package com.github.chen.wentao.mllib.training;
+
+/**
+ * Parameters found by a training run controlled by a {@link ConvergencePolicy} together with the report of the run
+ * @param <T> the type of the trained model parameters
+ */
+public class TrainingResult<T> {
+
+	private final T parameters;
+	private final ConvergenceReport report;
+
+	TrainingResult(T parameters, ConvergenceReport report) {
+		this.parameters = parameters;
+		this.report = report;
+	}
+
+	public T getParameters() {
+		return parameters;
+	}
+
+	public ConvergenceReport getReport() {
+		return report;
+	}
+}
@@ -0,0 +1,68 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Adam which keeps bias-corrected moving averages of the gradients and of the squared gradients of every parameter
+ */
+public class AdamOptimizer implements Optimizer {
+
+	private final double alpha;
+	private final double beta1;
+	private final double beta2;
+	private final double epsilon;
+	private DMatrixRMaj[] firstMoments;
+	private DMatrixRMaj[] secondMoments;
+	private double beta1Power = 1.0;
+	private double beta2Power = 1.0;
+
+	/**
+	 * @param alpha the learning rate (greater than 0)
+	 * @param beta1 the decay rate of the first moment estimates (in range [0.0, 1.0))
+	 * @param beta2 the decay rate of the second moment estimates (in range [0.0, 1.0))
+	 * @param epsilon the small positive value added to the denominator for numerical stability
+	 */
+	public AdamOptimizer(double alpha, double beta1, double beta2, double epsilon) {
+		assert alpha > 0 && Double.isFinite(alpha);
+		assert beta1 >= 0 && beta1 < 1;
+		assert beta2 >= 0 && beta2 < 1;
+		assert epsilon > 0 && Double.isFinite(epsilon);
+
+		this.alpha = alpha;
+		this.beta1 = beta1;
+		this.beta2 = beta2;
+		this.epsilon = epsilon;
+	}
+
+	public AdamOptimizer(double alpha) {
+		this(alpha, 0.9, 0.999, 1.0e-8);
+	}
+
+	@Override
+	public void update(DMatrixRMaj[] parameters, DMatrixRMaj[] gradients) {
+		OptimizerUtil.assertSameDimensions(parameters, gradients);
+		if (firstMoments == null) {
+			firstMoments = OptimizerUtil.zerosLike(parameters);
+			secondMoments = OptimizerUtil.zerosLike(parameters);
+		}
+
+		beta1Power *= beta1;
+		beta2Power *= beta2;
+		double stepSize = alpha * Math.sqrt(1.0 - beta2Power) / (1.0 - beta1Power); // Bias correction of both moments
+		double correctedEpsilon = epsilon * Math.sqrt(1.0 - beta2Power);
+		double oneMinusBeta1 = 1.0 - beta1;
+		double oneMinusBeta2 = 1.0 - beta2;
+		for (int i = 0; i < parameters.length; i++) {
+			double[] parameter = parameters[i].data;
+			double[] gradient = gradients[i].data;
+			double[] firstMoment = firstMoments[i].data;
+			double[] secondMoment = secondMoments[i].data;
+			for (int k = 0, size = parameters[i].getNumElements(); k < size; k++) {
+				double g = gradient[k];
+				firstMoment[k] = beta1 * firstMoment[k] + oneMinusBeta1 * g;
+				secondMoment[k] = beta2 * secondMoment[k] + oneMinusBeta2 * g * g;
+				parameter[k] -= stepSize * firstMoment[k] / (Math.sqrt(secondMoment[k]) + correctedEpsilon);
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Nonlinear conjugate gradient with the Polak-Ribiere+ update and a strong Wolfe line search.
+ * The search restarts from the steepest descent direction every n iterations and whenever conjugacy is lost.
+ */
+public class ConjugateGradientMinimizer implements Minimizer {
+
+	private final int maxIterations;
+	private final double gradientTolerance;
+	private final double relativeTolerance;
+	private final LineSearch lineSearch = new LineSearch(0.1);
+
+	/**
+	 * @param maxIterations the maximum number of iterations (greater than 0)
+	 * @param gradientTolerance stops when the norm of the gradient is at most this value (greater or equal to 0)
+	 * @param relativeTolerance stops when the relative decrease of the function in an iteration is at most this value (greater or equal to 0)
+	 */
+	public ConjugateGradientMinimizer(int maxIterations, double gradientTolerance, double relativeTolerance) {
+		assert maxIterations > 0;
+		assert gradientTolerance >= 0 && relativeTolerance >= 0;
+
+		this.maxIterations = maxIterations;
+		this.gradientTolerance = gradientTolerance;
+		this.relativeTolerance = relativeTolerance;
+	}
+
+	public ConjugateGradientMinimizer(int maxIterations) {
+		this(maxIterations, 1.0e-6, 1.0e-12);
+	}
+
+	@Override
+	public int minimize(DifferentiableFunction function, DMatrixRMaj x) {
+		final int n = x.getNumElements();
+		DMatrixRMaj gradient = new DMatrixRMaj(x.numRows, x.numCols);
+		DMatrixRMaj xNew = new DMatrixRMaj(x.numRows, x.numCols);
+		DMatrixRMaj gradientNew = new DMatrixRMaj(x.numRows, x.numCols);
+		DMatrixRMaj direction = new DMatrixRMaj(x.numRows, x.numCols);
+
+		DMatrixRMaj start = x;
+		double value = function.evaluate(x, gradient);
+		for (int k = 0; k < n; k++) {
+			direction.data[k] = -gradient.data[k];
+		}
+		double slope = LineSearch.dot(gradient, direction);
+		double initialStep = Math.min(1.0, 1.0 / LineSearch.norm(gradient));
+		boolean steepest = true;
+		int iterations = 0;
+		while (iterations < maxIterations && LineSearch.norm(gradient) > gradientTolerance) {
+			if (!lineSearch.search(function, x, value, gradient, direction, initialStep, xNew, gradientNew)) {
+				if (steepest) {
+					break;
+				}
+				for (int k = 0; k < n; k++) {
+					direction.data[k] = -gradient.data[k];
+				}
+				slope = LineSearch.dot(gradient, direction);
+				initialStep = Math.min(1.0, 1.0 / LineSearch.norm(gradient));
+				steepest = true;
+				continue;
+			}
+			iterations++;
+
+			double gradientNormSquared = LineSearch.dot(gradient, gradient);
+			double beta = 0.0;
+			for (int k = 0; k < n; k++) {
+				beta += gradientNew.data[k] * (gradientNew.data[k] - gradient.data[k]);
+			}
+			beta = iterations % n == 0 ? 0.0 : Math.max(beta / gradientNormSquared, 0.0);
+			for (int k = 0; k < n; k++) {
+				direction.data[k] = beta * direction.data[k] - gradientNew.data[k];
+			}
+			double newSlope = LineSearch.dot(gradientNew, direction);
+			if (newSlope >= 0) {
+				for (int k = 0; k < n; k++) {
+					direction.data[k] = -gradientNew.data[k];
+				}
+				newSlope = LineSearch.dot(gradientNew, direction);
+				beta = 0.0;
+			}
+			steepest = beta == 0.0;
+			// Expect the same first-order change in the function as the previous step
+			initialStep = lineSearch.getStep() * slope / newSlope;
+			slope = newSlope;
+
+			double newValue = lineSearch.getValue();
+			boolean converged = value - newValue <= relativeTolerance * Math.max(Math.max(Math.abs(value), Math.abs(newValue)), 1.0);
+			DMatrixRMaj temp = x;
+			x = xNew;
+			xNew = temp;
+			temp = gradient;
+			gradient = gradientNew;
+			gradientNew = temp;
+			value = newValue;
+			if (converged) {
+				break;
+			}
+		}
+		if (x != start) {
+			start.set(x);
+		}
+		return iterations;
+	}
+}
@@ -0,0 +1,18 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * A scalar function of a vector of parameters which can compute its own gradient
+ */
+@FunctionalInterface
+public interface DifferentiableFunction {
+
+	/**
+	 * Evaluates the function and its gradient at a point
+	 * @param x the parameters (must not be modified)
+	 * @param gradient the matrix which the gradient at {@code x} is written to (same dimensions as {@code x})
+	 * @return the value of the function at {@code x}
+	 */
+	double evaluate(DMatrixRMaj x, DMatrixRMaj gradient);
+}
@@ -0,0 +1,30 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+
+/**
+ * Plain gradient descent with a fixed learning rate
+ */
+public class GradientDescentOptimizer implements Optimizer {
+
+	private final double alpha;
+
+	/**
+	 * @param alpha the learning rate (greater than 0)
+	 */
+	public GradientDescentOptimizer(double alpha) {
+		assert alpha > 0 && Double.isFinite(alpha);
+
+		this.alpha = alpha;
+	}
+
+	@Override
+	public void update(DMatrixRMaj[] parameters, DMatrixRMaj[] gradients) {
+		OptimizerUtil.assertSameDimensions(parameters, gradients);
+
+		for (int i = 0; i < parameters.length; i++) {
+			CommonOps_DDRM.addEquals(parameters[i], -alpha, gradients[i]);
+		}
+	}
+}
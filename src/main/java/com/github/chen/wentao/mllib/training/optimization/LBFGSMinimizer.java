@@ -0,0 +1,162 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Limited-memory BFGS which approximates the inverse Hessian from the most recent changes in position and gradient
+ * and chooses step sizes with a strong Wolfe line search
+ */
+public class LBFGSMinimizer implements Minimizer {
+
+	private final int maxIterations;
+	private final int memory;
+	private final double gradientTolerance;
+	private final double relativeTolerance;
+	private final LineSearch lineSearch = new LineSearch(0.9);
+
+	/**
+	 * Correction pairs are only stored if s.y > CURVATURE_EPSILON |y|^2, which keeps the approximation positive definite regardless of the scale of the function
+	 */
+	private static final double CURVATURE_EPSILON = 2.2e-16;
+
+	/**
+	 * @param maxIterations the maximum number of iterations (greater than 0)
+	 * @param memory the number of correction pairs stored (greater than 0, usually between 3 and 20)
+	 * @param gradientTolerance stops when the norm of the gradient is at most this value (greater or equal to 0)
+	 * @param relativeTolerance stops when the relative decrease of the function in an iteration is at most this value (greater or equal to 0)
+	 */
+	public LBFGSMinimizer(int maxIterations, int memory, double gradientTolerance, double relativeTolerance) {
+		assert maxIterations > 0;
+		assert memory > 0;
+		assert gradientTolerance >= 0 && relativeTolerance >= 0;
+
+		this.maxIterations = maxIterations;
+		this.memory = memory;
+		this.gradientTolerance = gradientTolerance;
+		this.relativeTolerance = relativeTolerance;
+	}
+
+	public LBFGSMinimizer(int maxIterations) {
+		this(maxIterations, 10, 1.0e-6, 1.0e-12);
+	}
+
+	@Override
+	public int minimize(DifferentiableFunction function, DMatrixRMaj x) {
+		final int n = x.getNumElements();
+		DMatrixRMaj gradient = new DMatrixRMaj(x.numRows, x.numCols);
+		DMatrixRMaj xNew = new DMatrixRMaj(x.numRows, x.numCols);
+		DMatrixRMaj gradientNew = new DMatrixRMaj(x.numRows, x.numCols);
+		DMatrixRMaj direction = new DMatrixRMaj(x.numRows, x.numCols);
+		double[][] s = new double[memory][n]; // Changes in position
+		double[][] y = new double[memory][n]; // Changes in gradient
+		double[] rho = new double[memory];
+		double[] sNew = new double[n]; // Candidate pair which is only stored if it passes the curvature test
+		double[] yNew = new double[n];
+		double[] coefficients = new double[memory];
+		int stored = 0;
+		int newest = -1;
+
+		DMatrixRMaj start = x;
+		double value = function.evaluate(x, gradient);
+		int iterations = 0;
+		while (iterations < maxIterations && LineSearch.norm(gradient) > gradientTolerance) {
+			computeDirection(gradient, direction, s, y, rho, coefficients, stored, newest);
+			if (LineSearch.dot(direction, gradient) >= 0) {
+				// The curvature information no longer gives a descent direction, fall back to steepest descent
+				stored = 0;
+				computeDirection(gradient, direction, s, y, rho, coefficients, stored, newest);
+			}
+			double initialStep = stored == 0 ? Math.min(1.0, 1.0 / LineSearch.norm(gradient)) : 1.0;
+			if (!lineSearch.search(function, x, value, gradient, direction, initialStep, xNew, gradientNew)) {
+				if (stored == 0) {
+					break;
+				}
+				stored = 0; // Retry with steepest descent
+				continue;
+			}
+			iterations++;
+
+			double curvature = 0.0;
+			double gradientChange = 0.0;
+			for (int k = 0; k < n; k++) {
+				sNew[k] = xNew.data[k] - x.data[k];
+				yNew[k] = gradientNew.data[k] - gradient.data[k];
+				curvature += sNew[k] * yNew[k];
+				gradientChange += yNew[k] * yNew[k];
+			}
+			if (curvature > CURVATURE_EPSILON * gradientChange) {
+				// Replace the oldest pair by swapping arrays (otherwise the pair is discarded to keep the approximation positive definite)
+				newest = (newest + 1) % memory;
+				double[] temp = s[newest];
+				s[newest] = sNew;
+				sNew = temp;
+				temp = y[newest];
+				y[newest] = yNew;
+				yNew = temp;
+				rho[newest] = 1.0 / curvature;
+				stored = Math.min(stored + 1, memory);
+			}
+
+			double newValue = lineSearch.getValue();
+			boolean converged = value - newValue <= relativeTolerance * Math.max(Math.max(Math.abs(value), Math.abs(newValue)), 1.0);
+			DMatrixRMaj temp = x;
+			x = xNew;
+			xNew = temp;
+			temp = gradient;
+			gradient = gradientNew;
+			gradientNew = temp;
+			value = newValue;
+			if (converged) {
+				break;
+			}
+		}
+		if (x != start) {
+			start.set(x);
+		}
+		return iterations;
+	}
+
+	/**
+	 * Computes the search direction with the two-loop recursion
+	 */
+	private static void computeDirection(DMatrixRMaj gradient, DMatrixRMaj direction, double[][] s, double[][] y, double[] rho, double[] coefficients, int stored, int newest) {
+		final int memory = s.length;
+		final int n = gradient.getNumElements();
+		double[] q = direction.data;
+		for (int k = 0; k < n; k++) {
+			q[k] = -gradient.data[k];
+		}
+		if (stored == 0) {
+			return;
+		}
+		for (int i = 0; i < stored; i++) {
+			int index = (newest - i + memory) % memory;
+			double coefficient = rho[index] * dot(s[index], q, n);
+			coefficients[index] = coefficient;
+			for (int k = 0; k < n; k++) {
+				q[k] -= coefficient * y[index][k];
+			}
+		}
+		// Scale by the curvature along the most recent change as the initial inverse Hessian
+		double gamma = 1.0 / (rho[newest] * dot(y[newest], y[newest], n));
+		for (int k = 0; k < n; k++) {
+			q[k] *= gamma;
+		}
+		for (int i = stored - 1; i >= 0; i--) {
+			int index = (newest - i + memory) % memory;
+			double beta = rho[index] * dot(y[index], q, n);
+			double coefficient = coefficients[index] - beta;
+			for (int k = 0; k < n; k++) {
+				q[k] += coefficient * s[index][k];
+			}
+		}
+	}
+
+	private static double dot(double[] a, double[] b, int n) {
+		double sum = 0.0;
+		for (int k = 0; k < n; k++) {
+			sum += a[k] * b[k];
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,146 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Line search which finds a step size satisfying the strong Wolfe conditions by bracketing and interpolation
+ * (algorithms 3.5 and 3.6 of Nocedal and Wright, Numerical Optimization)
+ */
+class LineSearch {
+
+	private static final double SUFFICIENT_DECREASE = 1.0e-4;
+	private static final int MAX_EVALUATIONS = 30;
+	private static final double MAX_STEP = 1.0e10;
+
+	private final double curvature;
+	private double step;
+	private double value;
+
+	/**
+	 * @param curvature the constant of the curvature condition (in range (1e-4, 1.0), 0.9 for quasi-Newton and 0.1 for conjugate gradient methods)
+	 */
+	LineSearch(double curvature) {
+		assert curvature > SUFFICIENT_DECREASE && curvature < 1.0;
+
+		this.curvature = curvature;
+	}
+
+	/**
+	 * Searches for a step size along a descent direction
+	 * @param function the function being minimized
+	 * @param x the current point
+	 * @param value the value of the function at {@code x}
+	 * @param gradient the gradient of the function at {@code x}
+	 * @param direction the descent direction
+	 * @param initialStep the first step size tried (greater than 0)
+	 * @param xNew the matrix which the new point is written to
+	 * @param gradientNew the matrix which the gradient at the new point is written to
+	 * @return true if a step satisfying the sufficient decrease condition was found
+	 */
+	boolean search(DifferentiableFunction function, DMatrixRMaj x, double value, DMatrixRMaj gradient, DMatrixRMaj direction, double initialStep, DMatrixRMaj xNew, DMatrixRMaj gradientNew) {
+		double slope = dot(gradient, direction);
+		assert slope < 0; // Descent direction
+
+		double previousStep = 0.0;
+		double previousValue = value;
+		double previousSlope = slope;
+		double step = initialStep;
+		for (int i = 0; i < MAX_EVALUATIONS; i++) {
+			double stepValue = evaluate(function, x, direction, step, xNew, gradientNew);
+			if (!Double.isFinite(stepValue) || stepValue > value + SUFFICIENT_DECREASE * step * slope || (i > 0 && stepValue >= previousValue)) {
+				return zoom(function, x, value, slope, direction, previousStep, step, previousValue, stepValue, previousSlope, xNew, gradientNew);
+			}
+			double stepSlope = dot(gradientNew, direction);
+			if (Math.abs(stepSlope) <= -curvature * slope) {
+				return accept(step, stepValue);
+			}
+			if (stepSlope >= 0) {
+				return zoom(function, x, value, slope, direction, step, previousStep, stepValue, previousValue, stepSlope, xNew, gradientNew);
+			}
+			previousStep = step;
+			previousValue = stepValue;
+			previousSlope = stepSlope;
+			step = Math.min(2.0 * step, MAX_STEP);
+		}
+		return accept(previousStep, previousValue) && restore(function, x, direction, xNew, gradientNew);
+	}
+
+	private boolean zoom(DifferentiableFunction function, DMatrixRMaj x, double value, double slope, DMatrixRMaj direction,
+						 double stepLow, double stepHigh, double valueLow, double valueHigh, double slopeLow, DMatrixRMaj xNew, DMatrixRMaj gradientNew) {
+		for (int i = 0; i < MAX_EVALUATIONS; i++) {
+			double width = stepHigh - stepLow;
+			// Minimizer of the quadratic interpolating the low value, low slope and high value, kept away from the interval ends
+			double denominator = 2.0 * (valueHigh - valueLow - slopeLow * width);
+			double step = denominator != 0.0 && Double.isFinite(valueHigh) ? stepLow - slopeLow * width * width / denominator : stepLow + 0.5 * width;
+			double low = Math.min(stepLow, stepHigh) + 0.1 * Math.abs(width);
+			double high = Math.max(stepLow, stepHigh) - 0.1 * Math.abs(width);
+			if (!(step >= low && step <= high)) {
+				step = stepLow + 0.5 * width;
+			}
+
+			double stepValue = evaluate(function, x, direction, step, xNew, gradientNew);
+			if (!Double.isFinite(stepValue) || stepValue > value + SUFFICIENT_DECREASE * step * slope || stepValue >= valueLow) {
+				stepHigh = step;
+				valueHigh = stepValue;
+			} else {
+				double stepSlope = dot(gradientNew, direction);
+				if (Math.abs(stepSlope) <= -curvature * slope) {
+					return accept(step, stepValue);
+				}
+				if (stepSlope * (stepHigh - stepLow) >= 0) {
+					stepHigh = stepLow;
+					valueHigh = valueLow;
+				}
+				stepLow = step;
+				valueLow = stepValue;
+				slopeLow = stepSlope;
+			}
+		}
+		// Fall back to the best step found, which satisfies the sufficient decrease condition if it is not 0
+		return accept(stepLow, valueLow) && restore(function, x, direction, xNew, gradientNew);
+	}
+
+	private boolean accept(double step, double value) {
+		this.step = step;
+		this.value = value;
+		return step > 0;
+	}
+
+	private boolean restore(DifferentiableFunction function, DMatrixRMaj x, DMatrixRMaj direction, DMatrixRMaj xNew, DMatrixRMaj gradientNew) {
+		evaluate(function, x, direction, step, xNew, gradientNew);
+		return true;
+	}
+
+	private static double evaluate(DifferentiableFunction function, DMatrixRMaj x, DMatrixRMaj direction, double step, DMatrixRMaj xNew, DMatrixRMaj gradientNew) {
+		for (int i = 0, n = x.getNumElements(); i < n; i++) {
+			xNew.data[i] = x.data[i] + step * direction.data[i];
+		}
+		return function.evaluate(xNew, gradientNew);
+	}
+
+	/**
+	 * @return the step size of the last successful search
+	 */
+	double getStep() {
+		return step;
+	}
+
+	/**
+	 * @return the value of the function at the new point of the last successful search
+	 */
+	double getValue() {
+		return value;
+	}
+
+	static double dot(DMatrixRMaj a, DMatrixRMaj b) {
+		double sum = 0.0;
+		for (int i = 0, n = a.getNumElements(); i < n; i++) {
+			sum += a.data[i] * b.data[i];
+		}
+		return sum;
+	}
+
+	static double norm(DMatrixRMaj a) {
+		return Math.sqrt(dot(a, a));
+	}
+}
@@ -0,0 +1,18 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Finds a local minimum of a {@link DifferentiableFunction} by iteratively choosing search directions and step sizes
+ */
+@FunctionalInterface
+public interface Minimizer {
+
+	/**
+	 * Minimizes a function starting from an initial point
+	 * @param function the function to be minimized
+	 * @param x the initial point which is replaced in place by the minimum found
+	 * @return the number of iterations performed
+	 */
+	int minimize(DifferentiableFunction function, DMatrixRMaj x);
+}
@@ -0,0 +1,47 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Gradient descent with momentum which accumulates a velocity for every parameter
+ */
+public class MomentumOptimizer implements Optimizer {
+
+	private final double alpha;
+	private final double momentum;
+	private DMatrixRMaj[] velocities;
+
+	/**
+	 * @param alpha the learning rate (greater than 0)
+	 * @param momentum the fraction of the previous velocity kept on each step (in range [0.0, 1.0))
+	 */
+	public MomentumOptimizer(double alpha, double momentum) {
+		assert alpha > 0 && Double.isFinite(alpha);
+		assert momentum >= 0 && momentum < 1;
+
+		this.alpha = alpha;
+		this.momentum = momentum;
+	}
+
+	public MomentumOptimizer(double alpha) {
+		this(alpha, 0.9);
+	}
+
+	@Override
+	public void update(DMatrixRMaj[] parameters, DMatrixRMaj[] gradients) {
+		OptimizerUtil.assertSameDimensions(parameters, gradients);
+		if (velocities == null) {
+			velocities = OptimizerUtil.zerosLike(parameters);
+		}
+
+		for (int i = 0; i < parameters.length; i++) {
+			double[] parameter = parameters[i].data;
+			double[] gradient = gradients[i].data;
+			double[] velocity = velocities[i].data;
+			for (int k = 0, size = parameters[i].getNumElements(); k < size; k++) {
+				velocity[k] = momentum * velocity[k] - alpha * gradient[k];
+				parameter[k] += velocity[k];
+			}
+		}
+	}
+}
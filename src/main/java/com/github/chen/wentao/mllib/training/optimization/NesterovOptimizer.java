@@ -0,0 +1,50 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Nesterov accelerated gradient descent.
+ * The look-ahead gradient is approximated by tracking the parameters shifted by the velocity, so the gradients can be
+ * computed at the current parameters like every other {@link Optimizer}.
+ */
+public class NesterovOptimizer implements Optimizer {
+
+	private final double alpha;
+	private final double momentum;
+	private DMatrixRMaj[] velocities;
+
+	/**
+	 * @param alpha the learning rate (greater than 0)
+	 * @param momentum the fraction of the previous velocity kept on each step (in range [0.0, 1.0))
+	 */
+	public NesterovOptimizer(double alpha, double momentum) {
+		assert alpha > 0 && Double.isFinite(alpha);
+		assert momentum >= 0 && momentum < 1;
+
+		this.alpha = alpha;
+		this.momentum = momentum;
+	}
+
+	public NesterovOptimizer(double alpha) {
+		this(alpha, 0.9);
+	}
+
+	@Override
+	public void update(DMatrixRMaj[] parameters, DMatrixRMaj[] gradients) {
+		OptimizerUtil.assertSameDimensions(parameters, gradients);
+		if (velocities == null) {
+			velocities = OptimizerUtil.zerosLike(parameters);
+		}
+
+		for (int i = 0; i < parameters.length; i++) {
+			double[] parameter = parameters[i].data;
+			double[] gradient = gradients[i].data;
+			double[] velocity = velocities[i].data;
+			for (int k = 0, size = parameters[i].getNumElements(); k < size; k++) {
+				double previousVelocity = velocity[k];
+				velocity[k] = momentum * previousVelocity - alpha * gradient[k];
+				parameter[k] += (1.0 + momentum) * velocity[k] - momentum * previousVelocity;
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Updates model parameters in place from their gradients.
+ * Implementations may keep state for every parameter (such as velocities or moment estimates) between updates,
+ * so a new instance should be used for every model that is trained.
+ */
+@FunctionalInterface
+public interface Optimizer {
+
+	/**
+	 * Performs a single optimization step on every block of parameters
+	 * @param parameters the parameters which are updated in place
+	 * @param gradients the gradients of the cost function with respect to each block of parameters (same dimensions as {@code parameters})
+	 */
+	void update(DMatrixRMaj[] parameters, DMatrixRMaj[] gradients);
+}
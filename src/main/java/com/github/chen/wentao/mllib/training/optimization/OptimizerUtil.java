@@ -0,0 +1,29 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+final class OptimizerUtil {
+
+	private OptimizerUtil() {
+	}
+
+	/**
+	 * Creates zero filled matrices with the same dimensions as each block of parameters
+	 * @param parameters the blocks of parameters
+	 * @return a new array of zero matrices
+	 */
+	static DMatrixRMaj[] zerosLike(DMatrixRMaj[] parameters) {
+		DMatrixRMaj[] zeros = new DMatrixRMaj[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			zeros[i] = new DMatrixRMaj(parameters[i].numRows, parameters[i].numCols);
+		}
+		return zeros;
+	}
+
+	static void assertSameDimensions(DMatrixRMaj[] parameters, DMatrixRMaj[] gradients) {
+		assert parameters.length == gradients.length;
+		for (int i = 0; i < parameters.length; i++) {
+			assert parameters[i].numRows == gradients[i].numRows && parameters[i].numCols == gradients[i].numCols;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.github.chen.wentao.mllib.training.optimization;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * RMSProp which scales the learning rate of every parameter by a moving average of its squared gradients
+ */
+public class RMSPropOptimizer implements Optimizer {
+
+	private final double alpha;
+	private final double decay;
+	private final double epsilon;
+	private DMatrixRMaj[] squaredGradients;
+
+	/**
+	 * @param alpha the learning rate (greater than 0)
+	 * @param decay the decay rate of the moving average of squared gradients (in range [0.0, 1.0))
+	 * @param epsilon the small positive value added to the denominator for numerical stability
+	 */
+	public RMSPropOptimizer(double alpha, double decay, double epsilon) {
+		assert alpha > 0 && Double.isFinite(alpha);
+		assert decay >= 0 && decay < 1;
+		assert epsilon > 0 && Double.isFinite(epsilon);
+
+		this.alpha = alpha;
+		this.decay = decay;
+		this.epsilon = epsilon;
+	}
+
+	public RMSPropOptimizer(double alpha) {
+		this(alpha, 0.9, 1.0e-8);
+	}
+
+	@Override
+	public void update(DMatrixRMaj[] parameters, DMatrixRMaj[] gradients) {
+		OptimizerUtil.assertSameDimensions(parameters, gradients);
+		if (squaredGradients == null) {
+			squaredGradients = OptimizerUtil.zerosLike(parameters);
+		}
+
+		double oneMinusDecay = 1.0 - decay;
+		for (int i = 0; i < parameters.length; i++) {
+			double[] parameter = parameters[i].data;
+			double[] gradient = gradients[i].data;
+			double[] squaredGradient = squaredGradients[i].data;
+			for (int k = 0, size = parameters[i].getNumElements(); k < size; k++) {
+				double g = gradient[k];
+				squaredGradient[k] = decay * squaredGradient[k] + oneMinusDecay * g * g;
+				parameter[k] -= alpha * g / (Math.sqrt(squaredGradient[k]) + epsilon);
+			}
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package com.github.chen.wentao.mllib.util.ejml;
 
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.data.MatrixType;
 import org.ejml.simple.SimpleMatrix;
 
@@ -89,7 +90,23 @@ public class SimpleMatrixUtil {
 		return newMatrix;
 	}
 
-	private static int[] newShuffledArray(int size, Random random) {
+	/**
+	 * Copies a subset of rows into a new matrix
+	 * @param m the matrix whose rows are copied
+	 * @param rows the indices of the rows in the order they are copied
+	 * @return (rows.length) x (n) matrix of the selected rows
+	 */
+	public static SimpleMatrix selectRows(SimpleMatrix m, int[] rows) {
+		int cols = m.numCols();
+		double[] source = m.getDDRM().data;
+		double[] data = new double[rows.length * cols];
+		for (int i = 0; i < rows.length; i++) {
+			System.arraycopy(source, rows[i] * cols, data, i * cols, cols);
+		}
+		return SimpleMatrix.wrap(DMatrixRMaj.wrap(rows.length, cols, data));
+	}
+
+	public static int[] newShuffledArray(int size, Random random) {
 		int[] array = IntStream.range(0, size).toArray();
 		for (int i = size - 1; i >= 0; i--) {
 			int swapIndex = random.nextInt(i + 1);
@@ -0,0 +1,190 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import com.github.chen.wentao.mllib.training.BatchFullDataSetStream;
+import com.github.chen.wentao.mllib.training.DataSet;
+import com.github.chen.wentao.mllib.training.DataSetTarget;
+import com.github.chen.wentao.mllib.training.FullDataSet;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataSetFileTest {
+
+	private Path file;
+
+	@BeforeEach
+	void createFile() throws IOException {
+		file = Files.createTempFile("dataset", ".mlds");
+	}
+
+	@AfterEach
+	void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Creates a data set of random features with a label target
+	 */
+	private static FullDataSet randomDataSet(int m, int n, int labels, long seed) {
+		Random random = new Random(seed);
+		double[] features = new double[m * n];
+		for (int i = 0; i < features.length; i++) {
+			features[i] = random.nextGaussian() * 1e3;
+		}
+		double[] target = new double[m];
+		for (int i = 0; i < m; i++) {
+			target[i] = random.nextInt(labels);
+		}
+		return new FullDataSet(new DataSet(new SimpleMatrix(m, n, true, features)), new DataSetTarget(new SimpleMatrix(m, 1, true, target), labels));
+	}
+
+	private static double[] data(FullDataSet dataSet, boolean target) {
+		return (target ? dataSet.getDataSetTarget().getMatrix() : dataSet.getDataSet().getMatrix()).getDDRM().data;
+	}
+
+	private static double[] toFloat(double[] values) {
+		double[] rounded = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			rounded[i] = (float) values[i];
+		}
+		return rounded;
+	}
+
+	/**
+	 * Asserts that the batches of a stream hold the examples of a data set in order
+	 */
+	private static void assertBatchesEqual(FullDataSet expected, MappedDataSetStream stream, boolean float32) {
+		int n = expected.getDataSet().numFeatures();
+		double[] features = float32 ? toFloat(data(expected, false)) : data(expected, false);
+		double[] target = data(expected, true);
+		int row = 0;
+		for (int i = 0; i < stream.numBatches(); i++) {
+			FullDataSet batch = stream.getBatch(i);
+			double[] batchFeatures = data(batch, false);
+			double[] batchTarget = data(batch, true);
+			for (int j = 0; j < batch.numExamples(); j++, row++) {
+				for (int x = 0; x < n; x++) {
+					assertEquals(features[row * n + x], batchFeatures[j * n + x]);
+				}
+				assertEquals(target[row], batchTarget[j]);
+			}
+		}
+		assertEquals(expected.numExamples(), row);
+	}
+
+	@Test
+	void roundTripsDoublePrecision() throws IOException {
+		FullDataSet dataSet = randomDataSet(23, 4, 3, 1);
+		DataSetFile.write(file, dataSet, false);
+		try (MappedDataSetStream stream = DataSetFile.open(file, 5)) {
+			assertFalse(stream.isFloat32());
+			assertEquals(23, stream.numExamples());
+			assertEquals(4, stream.numFeatures());
+			assertEquals(1, stream.numTargetColumns());
+			assertEquals(3, stream.numLabels());
+			assertEquals(5, stream.numBatches());
+			assertEquals(3, stream.getBatch(4).numExamples());
+			assertBatchesEqual(dataSet, stream, false);
+			assertArrayEquals(data(stream.getBatch(1), false), data(stream.getBatch(6), false)); // Continues into the next epoch
+			assertEquals(3, stream.getBatch(2).getDataSetTarget().numLabels());
+		}
+		assertEquals(DataSetFile.HEADER_SIZE + 23 * (4 + 1) * Double.BYTES, Files.size(file));
+	}
+
+	@Test
+	void roundTripsSinglePrecision() throws IOException {
+		FullDataSet dataSet = randomDataSet(17, 3, 2, 2);
+		DataSetFile.write(file, dataSet, true);
+		try (MappedDataSetStream stream = DataSetFile.open(file, 4)) {
+			assertTrue(stream.isFloat32());
+			assertEquals(17, stream.numExamples());
+			assertBatchesEqual(dataSet, stream, true);
+		}
+		assertEquals(DataSetFile.HEADER_SIZE + 17 * (3 + 1) * Float.BYTES, Files.size(file));
+	}
+
+	@Test
+	void writesEveryBatchOfAStream() throws IOException {
+		FullDataSet dataSet = randomDataSet(26, 3, 5, 3);
+		int batchSize = 8;
+		DataSetFile.write(file, new BatchFullDataSetStream() {
+			@Override
+			public FullDataSet getBatch(int batchIndex) {
+				return dataSet.rows(batchIndex * batchSize, Math.min((batchIndex + 1) * batchSize, dataSet.numExamples()));
+			}
+
+			@Override
+			public int numBatches() {
+				return (dataSet.numExamples() + batchSize - 1) / batchSize;
+			}
+		}, false);
+		try (MappedDataSetStream stream = DataSetFile.open(file, 6)) {
+			assertEquals(26, stream.numExamples());
+			assertEquals(5, stream.numLabels());
+			assertBatchesEqual(dataSet, stream, false);
+		}
+	}
+
+	@Test
+	void readsAcrossSegmentBoundaries() throws IOException {
+		FullDataSet dataSet = randomDataSet(31, 5, 4, 4);
+		for (boolean float32 : new boolean[] {false, true}) {
+			DataSetFile.write(file, dataSet, float32);
+			int rowSize = 5 * (float32 ? Float.BYTES : Double.BYTES);
+			for (long maxSegmentSize : new long[] {1, rowSize, 3L * rowSize + 1, 4L * rowSize}) {
+				try (MappedDataSetStream stream = new MappedDataSetStream(file, 7, maxSegmentSize)) {
+					assertBatchesEqual(dataSet, stream, float32);
+					assertArrayEquals(float32 ? toFloat(data(dataSet, false)) : data(dataSet, false), data(stream.read(0, 31), false));
+				}
+			}
+		}
+	}
+
+	@Test
+	void readsEmptyDataSets() throws IOException {
+		DataSetFile.write(file, new FullDataSet(new DataSet(new SimpleMatrix(0, 2)), new DataSetTarget(new SimpleMatrix(0, 1), 2)), false);
+		try (MappedDataSetStream stream = DataSetFile.open(file, 4)) {
+			assertEquals(0, stream.numExamples());
+			assertEquals(0, stream.numBatches());
+			assertEquals(0, stream.read(0, 0).numExamples());
+			assertThrows(IllegalStateException.class, () -> stream.getBatch(0));
+		}
+	}
+
+	@Test
+	void rejectsTruncatedFiles() throws IOException {
+		DataSetFile.write(file, randomDataSet(10, 2, 2, 5), false);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - Double.BYTES);
+		}
+		assertThrows(IOException.class, () -> DataSetFile.open(file, 4));
+
+		Files.write(file, new byte[DataSetFile.HEADER_SIZE - 1]);
+		assertThrows(IOException.class, () -> DataSetFile.open(file, 4));
+	}
+
+	@Test
+	void rejectsOtherFiles() throws IOException {
+		DataSetFile.write(file, randomDataSet(10, 2, 2, 6), false);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] {'X'}), 0);
+		}
+		IOException badMagic = assertThrows(IOException.class, () -> DataSetFile.open(file, 4));
+		assertTrue(badMagic.getMessage().startsWith("Not a data set file"), badMagic.getMessage());
+	}
+}
@@ -0,0 +1,117 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DecimalParserTest {
+
+	/**
+	 * Asserts that a string is parsed to the same bits as {@link Double#parseDouble(String)}, or rejected like it
+	 */
+	private static void assertParsesLikeJdk(String text) {
+		byte[] bytes = ("#" + text + "#").getBytes(StandardCharsets.US_ASCII); // Parsed from the middle of a buffer
+		double expected;
+		try {
+			expected = Double.parseDouble(text);
+		} catch (NumberFormatException e) {
+			assertThrows(NumberFormatException.class, () -> DecimalParser.parseDouble(bytes, 1, bytes.length - 1), text);
+			return;
+		}
+		double actual = DecimalParser.parseDouble(bytes, 1, bytes.length - 1);
+		assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual), text);
+	}
+
+	@Test
+	void parsesShortestRepresentationOfRandomDoubles() {
+		Random random = new Random(1);
+		for (int i = 0; i < 200000; i++) {
+			double value = Double.longBitsToDouble(random.nextLong());
+			assertParsesLikeJdk(Double.toString(value));
+		}
+	}
+
+	@Test
+	void parsesRandomDecimalStrings() {
+		Random random = new Random(2);
+		for (int i = 0; i < 200000; i++) {
+			StringBuilder text = new StringBuilder();
+			if (random.nextBoolean()) {
+				text.append('-');
+			}
+			int digits = 1 + random.nextInt(20);
+			int point = random.nextInt(digits + 1);
+			for (int d = 0; d < digits; d++) {
+				if (d == point) {
+					text.append('.');
+				}
+				text.append((char) ('0' + random.nextInt(10)));
+			}
+			if (random.nextBoolean()) {
+				text.append(random.nextBoolean() ? 'e' : 'E').append(random.nextInt(700) - 350);
+			}
+			assertParsesLikeJdk(text.toString());
+		}
+	}
+
+	@Test
+	void parsesExtremeExponents() {
+		for (int exponent = -360; exponent <= 330; exponent++) {
+			assertParsesLikeJdk("1e" + exponent);
+			assertParsesLikeJdk("9.999999999999999e" + exponent);
+			assertParsesLikeJdk("4.9406564584124654e" + exponent);
+			assertParsesLikeJdk("123456789012345678e" + exponent);
+		}
+		assertParsesLikeJdk("1.7976931348623157e308");
+		assertParsesLikeJdk("1.7976931348623159e308"); // Rounds to infinity
+		assertParsesLikeJdk("2.2250738585072014E-308"); // Smallest normal
+		assertParsesLikeJdk("2.2250738585072011E-308"); // Largest subnormal
+		assertParsesLikeJdk("4.9E-324"); // Smallest subnormal
+		assertParsesLikeJdk("2.4703282292062327E-324"); // Half of the smallest subnormal
+		assertParsesLikeJdk("1e-342");
+		assertParsesLikeJdk("1e-400");
+		assertParsesLikeJdk("1e400");
+	}
+
+	@Test
+	void parsesHalfwayCases() {
+		assertParsesLikeJdk("9007199254740993"); // 2^53 + 1, half way between two doubles
+		assertParsesLikeJdk("9007199254740995");
+		assertParsesLikeJdk("9007199254740993.0000000001");
+		assertParsesLikeJdk("0.1");
+		assertParsesLikeJdk("0.30000000000000004");
+		assertParsesLikeJdk("123456789012345678901234567890"); // More than 18 significant digits
+	}
+
+	@Test
+	void parsesSignsAndZeros() {
+		assertParsesLikeJdk("0");
+		assertParsesLikeJdk("-0");
+		assertParsesLikeJdk("+0");
+		assertParsesLikeJdk("-0.0e10");
+		assertParsesLikeJdk("0000.000");
+		assertParsesLikeJdk("+1.5");
+		assertParsesLikeJdk("-1.5E+3");
+		assertParsesLikeJdk(".5");
+		assertParsesLikeJdk("5.");
+		assertParsesLikeJdk("NaN");
+		assertParsesLikeJdk("-Infinity");
+	}
+
+	@Test
+	void rejectsMalformedNumbers() {
+		assertParsesLikeJdk("1e");
+		assertParsesLikeJdk("1e+");
+		assertParsesLikeJdk(".");
+		assertParsesLikeJdk("-");
+		assertParsesLikeJdk("e5");
+		assertParsesLikeJdk("1.2.3");
+		assertParsesLikeJdk("abc");
+		assertParsesLikeJdk("1,5");
+		assertThrows(NumberFormatException.class, () -> DecimalParser.parseDouble(new byte[0], 0, 0));
+	}
+}
@@ -0,0 +1,142 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import com.github.chen.wentao.mllib.training.FullDataSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DelimitedDataReaderTest {
+
+	private Path file;
+
+	@BeforeEach
+	void createFile() throws IOException {
+		file = Files.createTempFile("delimited", ".csv");
+	}
+
+	@AfterEach
+	void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	private void write(String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static double[] data(FullDataSet dataSet, boolean target) {
+		return (target ? dataSet.getDataSetTarget().getMatrix() : dataSet.getDataSet().getMatrix()).getDDRM().data;
+	}
+
+	@Test
+	void readsHeaderCrlfBlankLinesAndQuotedOrEmptyFields() throws IOException {
+		write("a,b,label\r\n1,2,0\r\n\r\n  \n\"3\", 4 ,1\n5,,2\n-0,1e3,1"); // Last line without a line terminator
+		FullDataSet dataSet = DelimitedDataReader.csv(1, true).read(file);
+
+		assertEquals(4, dataSet.numExamples());
+		assertEquals(2, dataSet.getDataSet().numFeatures());
+		assertArrayEquals(new double[] {1, 2, 3, 4, 5, Double.NaN, -0.0, 1000}, data(dataSet, false));
+		assertArrayEquals(new double[] {0, 1, 2, 1}, data(dataSet, true));
+		assertEquals(3, dataSet.getDataSetTarget().numLabels());
+	}
+
+	@Test
+	void readsTabSeparatedFilesWithoutHeader() throws IOException {
+		write("1\t2\t3\n4\t5\t6\n");
+		FullDataSet dataSet = DelimitedDataReader.tsv(0, false).read(file);
+
+		assertEquals(2, dataSet.numExamples());
+		assertArrayEquals(new double[] {1, 2, 3, 4, 5, 6}, data(dataSet, false));
+		assertEquals(0, dataSet.getDataSetTarget().numColumns());
+	}
+
+	@Test
+	void readsEmptyFiles() throws IOException {
+		write("\n\n");
+		assertEquals(0, DelimitedDataReader.csv(1, false).read(file).numExamples());
+		write("only,a,header\n");
+		assertEquals(0, DelimitedDataReader.csv(1, true).read(file).numExamples());
+		try (DelimitedDataSetStream stream = DelimitedDataReader.csv(1, true).stream(file, 4)) {
+			assertEquals(0, stream.numBatches());
+			assertThrows(IllegalStateException.class, () -> stream.getBatch(0));
+		}
+	}
+
+	@Test
+	void reportsMalformedLines() throws IOException {
+		write("1,2,0\n3,x,1\n");
+		IOException notNumber = assertThrows(IOException.class, () -> DelimitedDataReader.csv(1, false).read(file));
+		assertTrue(notNumber.getMessage().startsWith("Line 2, column 2"), notNumber.getMessage());
+
+		write("1,2,0\n\n3,1\n");
+		IOException tooFew = assertThrows(IOException.class, () -> DelimitedDataReader.csv(1, false).read(file));
+		assertTrue(tooFew.getMessage().startsWith("Line 3"), tooFew.getMessage());
+
+		write("1,2,0\n3,4,5,6\n");
+		assertThrows(IOException.class, () -> DelimitedDataReader.csv(1, false).read(file));
+	}
+
+	@Test
+	void streamsTheSameExamplesAsRead() throws IOException {
+		StringBuilder text = new StringBuilder("x,y,label\r\n");
+		for (int i = 0; i < 23; i++) {
+			text.append(i).append(',').append(i * 0.5).append(',').append(i % 4).append(i % 5 == 0 ? "\n\n" : "\r\n");
+		}
+		write(text.toString());
+		DelimitedDataReader reader = DelimitedDataReader.csv(1, true);
+		FullDataSet expected = reader.read(file);
+		try (DelimitedDataSetStream stream = reader.stream(file, 5)) {
+			assertEquals(23, stream.numExamples());
+			assertEquals(3, stream.numColumns());
+			assertEquals(5, stream.numBatches());
+			int row = 0;
+			for (int i = 0; i < stream.numBatches(); i++) {
+				FullDataSet batch = stream.getBatch(i);
+				for (int j = 0; j < batch.numExamples(); j++, row++) {
+					assertEquals(expected.getDataSet().getMatrix().get(row, 0), batch.getDataSet().getMatrix().get(j, 0));
+					assertEquals(expected.getDataSet().getMatrix().get(row, 1), batch.getDataSet().getMatrix().get(j, 1));
+					assertEquals(expected.getDataSetTarget().get(row), batch.getDataSetTarget().get(j));
+				}
+			}
+			assertEquals(23, row);
+			assertEquals(stream.getBatch(1).getDataSetTarget().get(0), stream.getBatch(6).getDataSetTarget().get(0)); // Continues into the next epoch
+		}
+	}
+
+	@Test
+	void streamCountsLabelsOnceForEveryBatch() throws IOException {
+		write("1,0\n2,1\n3,0\n4,1\n5,2\n");
+		try (DelimitedDataSetStream stream = DelimitedDataReader.csv(1, false).stream(file, 2)) {
+			assertEquals(Integer.valueOf(3), stream.numLabels());
+			for (int i = 0; i < stream.numBatches(); i++) {
+				FullDataSet batch = stream.getBatch(i);
+				assertEquals(3, batch.getDataSetTarget().numLabels());
+				assertEquals(3, batch.getDataSetTarget().toBinaryMatrix().numCols()); // Even for batches without label 2
+			}
+		}
+		try (DelimitedDataSetStream stream = new DelimitedDataReader(',', 1, 5, false).stream(file, 2)) {
+			assertEquals(5, stream.getBatch(0).getDataSetTarget().numLabels());
+		}
+	}
+
+	@Test
+	void streamReportsMalformedLines() throws IOException {
+		write("1,0\n2,x\n");
+		assertThrows(IOException.class, () -> DelimitedDataReader.csv(1, false).stream(file, 1)); // Labels are parsed while indexing
+		write("1,0\nx,1\n");
+		try (DelimitedDataSetStream stream = DelimitedDataReader.csv(1, false).stream(file, 1)) {
+			stream.getBatch(0);
+			assertThrows(UncheckedIOException.class, () -> stream.getBatch(1));
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.github.chen.wentao.mllib.data.io;
+
+import com.github.chen.wentao.mllib.data.scaling.FeatureMeanNormalizer;
+import com.github.chen.wentao.mllib.data.scaling.FeatureRescaler;
+import com.github.chen.wentao.mllib.data.scaling.FeatureScaler;
+import com.github.chen.wentao.mllib.data.scaling.FeatureStandardizer;
+import com.github.chen.wentao.mllib.training.Activation;
+import com.github.chen.wentao.mllib.training.FeatureParameters;
+import com.github.chen.wentao.mllib.training.NeuralNetwork;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelFileTest {
+
+	private Path file;
+
+	@BeforeEach
+	void createFile() throws IOException {
+		file = Files.createTempFile("model", ".mlmd");
+	}
+
+	@AfterEach
+	void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	private static SimpleMatrix random(int rows, int cols, Random random) {
+		SimpleMatrix matrix = new SimpleMatrix(rows, cols);
+		for (int i = 0; i < matrix.getNumElements(); i++) {
+			matrix.set(i, random.nextGaussian());
+		}
+		return matrix;
+	}
+
+	private static double[] toFloat(SimpleMatrix matrix) {
+		double[] values = matrix.getDDRM().data.clone();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (float) values[i];
+		}
+		return values;
+	}
+
+	private static void assertMatrixEquals(SimpleMatrix expected, SimpleMatrix actual) {
+		assertEquals(expected.numRows(), actual.numRows());
+		assertEquals(expected.numCols(), actual.numCols());
+		assertArrayEquals(expected.getDDRM().data, actual.getDDRM().data);
+	}
+
+	private static NeuralNetwork randomNetwork(Random random) {
+		SimpleMatrix[] thetas = {random(5, 4, random), random(6, 6, random), random(3, 7, random)};
+		return new NeuralNetwork(thetas, new Activation[] {Activation.TANH, Activation.LEAKY_RELU, Activation.SOFTMAX});
+	}
+
+	private void writeInt(int position, int value) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write((ByteBuffer) ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(value).flip(), position);
+		}
+	}
+
+	@Test
+	void roundTripsNeuralNetworks() throws IOException {
+		NeuralNetwork network = randomNetwork(new Random(1));
+		ModelFile.write(file, network, false);
+		NeuralNetwork read = ModelFile.readNeuralNetwork(file);
+		assertEquals(network.numLayers(), read.numLayers());
+		for (int i = 0; i < network.getThetas().length; i++) {
+			assertMatrixEquals(network.getThetas()[i], read.getThetas()[i]);
+			assertEquals(network.getActivation(i + 1), read.getActivation(i + 1));
+		}
+
+		ModelFile.write(file, network, true);
+		NeuralNetwork rounded = ModelFile.readNeuralNetwork(file);
+		for (int i = 0; i < network.getThetas().length; i++) {
+			assertArrayEquals(toFloat(network.getThetas()[i]), rounded.getThetas()[i].getDDRM().data);
+			assertEquals(network.getActivation(i + 1), rounded.getActivation(i + 1));
+		}
+	}
+
+	@Test
+	void roundTripsFeatureParameters() throws IOException {
+		FeatureParameters parameters = new FeatureParameters(random(6, 1, new Random(2)));
+		ModelFile.write(file, parameters);
+		assertMatrixEquals(parameters.getMatrix(), ModelFile.readFeatureParameters(file).getMatrix());
+	}
+
+	@Test
+	void roundTripsFeatureScalers() throws IOException {
+		Random random = new Random(3);
+		SimpleMatrix first = random(1, 4, random);
+		SimpleMatrix second = random(1, 4, random);
+
+		ModelFile.write(file, new FeatureMeanNormalizer(first, second));
+		FeatureScaler normalizer = ModelFile.readFeatureScaler(file);
+		assertTrue(normalizer instanceof FeatureMeanNormalizer);
+		assertMatrixEquals(first, ((FeatureMeanNormalizer) normalizer).getColumnMeans());
+		assertMatrixEquals(second, ((FeatureMeanNormalizer) normalizer).getColumnRanges());
+
+		ModelFile.write(file, new FeatureRescaler(first, second));
+		FeatureScaler rescaler = ModelFile.readFeatureScaler(file);
+		assertTrue(rescaler instanceof FeatureRescaler);
+		assertMatrixEquals(first, ((FeatureRescaler) rescaler).getColumnMin());
+		assertMatrixEquals(second, ((FeatureRescaler) rescaler).getColumnRanges());
+
+		ModelFile.write(file, new FeatureStandardizer(first, second));
+		FeatureScaler standardizer = ModelFile.readFeatureScaler(file);
+		assertTrue(standardizer instanceof FeatureStandardizer);
+		assertMatrixEquals(first, ((FeatureStandardizer) standardizer).getColumnMeans());
+		assertMatrixEquals(second, ((FeatureStandardizer) standardizer).getColumnStandardDeviations());
+	}
+
+	@Test
+	void detectsCorruptedPayloads() throws IOException {
+		ModelFile.write(file, randomNetwork(new Random(4)), false);
+		byte[] bytes = Files.readAllBytes(file);
+		for (int position : new int[] {ModelFile.HEADER_SIZE, ModelFile.HEADER_SIZE + 8, bytes.length - 1}) { // Descriptor table and weights
+			byte[] corrupted = bytes.clone();
+			corrupted[position] ^= 1;
+			Files.write(file, corrupted);
+			IOException checksum = assertThrows(IOException.class, () -> ModelFile.readNeuralNetwork(file));
+			assertTrue(checksum.getMessage().startsWith("Model file checksum does not match"), checksum.getMessage());
+		}
+	}
+
+	@Test
+	void rejectsOtherModelTypes() throws IOException {
+		ModelFile.write(file, new FeatureParameters(1, 2, 3));
+		IOException network = assertThrows(IOException.class, () -> ModelFile.readNeuralNetwork(file));
+		assertTrue(network.getMessage().startsWith("Model file holds a different type of model"), network.getMessage());
+		assertThrows(IOException.class, () -> ModelFile.readFeatureScaler(file));
+
+		writeInt(8, 99); // Unknown type code (the header is not covered by the checksum)
+		assertThrows(IOException.class, () -> ModelFile.readFeatureParameters(file));
+	}
+
+	@Test
+	void rejectsOtherFiles() throws IOException {
+		ModelFile.write(file, new FeatureParameters(1, 2, 3));
+		writeInt(0, 0);
+		IOException magic = assertThrows(IOException.class, () -> ModelFile.readFeatureParameters(file));
+		assertTrue(magic.getMessage().startsWith("Not a model file"), magic.getMessage());
+
+		Files.write(file, new byte[ModelFile.HEADER_SIZE - 1]);
+		assertThrows(IOException.class, () -> ModelFile.readFeatureParameters(file));
+	}
+}
@@ -0,0 +1,95 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompiledNeuralNetworkTest {
+
+	private static NeuralNetwork randomNetwork(Random random, Activation hidden, Activation output, int... neurons) {
+		SimpleMatrix[] thetas = new SimpleMatrix[neurons.length - 1];
+		Activation[] activations = new Activation[thetas.length];
+		for (int i = 0; i < thetas.length; i++) {
+			thetas[i] = SimpleMatrix.random64(neurons[i + 1], neurons[i] + 1, -1.0, 1.0, random);
+			activations[i] = i == thetas.length - 1 ? output : hidden;
+		}
+		return new NeuralNetwork(thetas, activations);
+	}
+
+	private static DataSet randomDataSet(Random random, int m, int n) {
+		return new DataSet(SimpleMatrix.random64(m, n, -3.0, 3.0, random));
+	}
+
+	/**
+	 * Asserts that a compiled network computes the same outputs and labels as the network it was compiled from
+	 */
+	private static void assertSameAsNetwork(NeuralNetwork network, DataSet dataSet) {
+		CompiledNeuralNetwork compiled = network.compile();
+		assertEquals(network.numNeurons(0), compiled.numInputs());
+		assertEquals(network.numOutputs(), compiled.numOutputs());
+
+		double[] expected = network.compute(dataSet).getDDRM().data;
+		assertArrayEquals(expected, compiled.compute(dataSet).getDDRM().data, 1e-12);
+		double[] expectedLabels = network.predict(dataSet).getMatrix().getDDRM().data;
+		assertArrayEquals(expectedLabels, compiled.predict(dataSet).getMatrix().getDDRM().data);
+
+		SimpleMatrix features = dataSet.getMatrix();
+		int outputs = compiled.numOutputs();
+		for (int i = 0; i < features.numRows(); i++) {
+			double[] example = features.extractVector(true, i).getDDRM().data;
+			double[] output = compiled.compute(example);
+			for (int j = 0; j < outputs; j++) {
+				assertEquals(expected[i * outputs + j], output[j], 1e-12);
+			}
+			assertEquals(expectedLabels[i], compiled.predict(example));
+		}
+	}
+
+	@Test
+	void computesTheSameOutputsAsTheNetwork() {
+		Random random = new Random(1);
+		DataSet dataSet = randomDataSet(random, 37, 5);
+		for (Activation hidden : new Activation[] {Activation.SIGMOID, Activation.TANH, Activation.RELU, Activation.LEAKY_RELU}) {
+			assertSameAsNetwork(randomNetwork(random, hidden, Activation.SIGMOID, 5, 7, 1), dataSet);
+			assertSameAsNetwork(randomNetwork(random, hidden, Activation.SIGMOID, 5, 8, 6, 3), dataSet);
+			assertSameAsNetwork(randomNetwork(random, hidden, Activation.SOFTMAX, 5, 9, 4, 4), dataSet);
+		}
+		assertSameAsNetwork(randomNetwork(random, Activation.SIGMOID, Activation.SOFTMAX, 5, 3), dataSet); // Without hidden layers
+	}
+
+	@Test
+	void computesBatchesAtAnOffset() {
+		Random random = new Random(2);
+		NeuralNetwork network = randomNetwork(random, Activation.TANH, Activation.SOFTMAX, 3, 6, 4);
+		CompiledNeuralNetwork compiled = network.compile();
+		DataSet dataSet = randomDataSet(random, 10, 3);
+		double[] expected = network.compute(dataSet).getDDRM().data;
+
+		double[] inputs = new double[2 + 10 * 3];
+		System.arraycopy(dataSet.getMatrix().getDDRM().data, 0, inputs, 2, 10 * 3);
+		double[] outputs = new double[5 + 10 * 4];
+		compiled.compute(inputs, 2, 10, outputs, 5);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], outputs[5 + i], 1e-12);
+		}
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0.0, outputs[i]);
+		}
+	}
+
+	@Test
+	void keepsTheWeightsItWasCompiledWith() {
+		Random random = new Random(3);
+		NeuralNetwork network = randomNetwork(random, Activation.RELU, Activation.SIGMOID, 4, 5, 2);
+		DataSet dataSet = randomDataSet(random, 6, 4);
+		CompiledNeuralNetwork compiled = network.compile();
+		double[] expected = network.compute(dataSet).getDDRM().data;
+
+		network.getThetas()[0].set(0, 1, 100.0);
+		assertArrayEquals(expected, compiled.compute(dataSet).getDDRM().data, 1e-12);
+	}
+}
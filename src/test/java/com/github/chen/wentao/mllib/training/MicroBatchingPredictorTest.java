@@ -0,0 +1,77 @@
+package com.github.chen.wentao.mllib.training;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MicroBatchingPredictorTest {
+
+	private static CompiledNeuralNetwork randomNetwork(Random random) {
+		SimpleMatrix[] thetas = {SimpleMatrix.random64(6, 4, -1.0, 1.0, random), SimpleMatrix.random64(3, 7, -1.0, 1.0, random)};
+		return new NeuralNetwork(thetas, new Activation[] {Activation.TANH, Activation.SOFTMAX}).compile();
+	}
+
+	private static double[] randomFeatures(Random random) {
+		return new double[] {random.nextGaussian(), random.nextGaussian(), random.nextGaussian()};
+	}
+
+	@Test
+	void computesTheSameOutputsAsTheNetwork() throws Exception {
+		Random random = new Random(1);
+		CompiledNeuralNetwork network = randomNetwork(random);
+		List<double[]> examples = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			examples.add(randomFeatures(random));
+		}
+
+		ExecutorService clients = Executors.newFixedThreadPool(4);
+		for (long maxDelay : new long[] {0, 200}) {
+			try (MicroBatchingPredictor predictor = new MicroBatchingPredictor(network, 16, maxDelay, TimeUnit.MICROSECONDS)) {
+				List<Future<double[]>> results = new ArrayList<>();
+				for (double[] example : examples) {
+					results.add(clients.submit(() -> predictor.compute(example)));
+				}
+				for (int i = 0; i < examples.size(); i++) {
+					assertArrayEquals(network.compute(examples.get(i)), results.get(i).get(10, TimeUnit.SECONDS), 1e-12);
+				}
+			}
+		}
+		clients.shutdown();
+	}
+
+	@Test
+	void closeCancelsPendingRequests() throws Exception {
+		Random random = new Random(2);
+		MicroBatchingPredictor predictor = new MicroBatchingPredictor(randomNetwork(random), 64, 1, TimeUnit.HOURS); // Holds the batch until it is full
+		List<CompletableFuture<double[]>> results = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			results.add(predictor.submit(randomFeatures(random)));
+		}
+		predictor.close();
+		for (CompletableFuture<double[]> result : results) {
+			assertThrows(CancellationException.class, () -> result.get(10, TimeUnit.SECONDS));
+			assertTrue(result.isCompletedExceptionally());
+		}
+		assertThrows(IllegalStateException.class, () -> predictor.submit(randomFeatures(random)));
+	}
+
+	@Test
+	void rejectsExamplesOfTheWrongSize() {
+		try (MicroBatchingPredictor predictor = new MicroBatchingPredictor(randomNetwork(new Random(3)), 4, 0, TimeUnit.MILLISECONDS)) {
+			assertThrows(IllegalArgumentException.class, () -> predictor.submit(1.0, 2.0));
+		}
+	}
+}
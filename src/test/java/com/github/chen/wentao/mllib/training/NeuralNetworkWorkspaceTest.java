@@ -0,0 +1,334 @@
+package com.github.chen.wentao.mllib.training;
+
+import com.github.chen.wentao.mllib.training.optimization.AdamOptimizer;
+import com.github.chen.wentao.mllib.util.ejml.SimpleMatrixUtil;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NeuralNetworkWorkspaceTest {
+
+	private static final int[] NEURONS = {4, 6, 5, 3};
+
+	private static SimpleMatrix[] randomThetas(Random random) {
+		SimpleMatrix[] thetas = new SimpleMatrix[NEURONS.length - 1];
+		for (int i = 0; i < thetas.length; i++) {
+			thetas[i] = SimpleMatrix.random64(NEURONS[i + 1], NEURONS[i] + 1, -1.0, 1.0, random);
+		}
+		return thetas;
+	}
+
+	private static DMatrixRMaj[] matrices(SimpleMatrix[] thetas) {
+		DMatrixRMaj[] matrices = new DMatrixRMaj[thetas.length];
+		for (int i = 0; i < thetas.length; i++) {
+			matrices[i] = thetas[i].getDDRM();
+		}
+		return matrices;
+	}
+
+	private static DMatrixRMaj randomExamples(int m, Random random) {
+		return SimpleMatrix.random64(m, NEURONS[0], -2.0, 2.0, random).getDDRM();
+	}
+
+	/**
+	 * Creates one hot target values of random labels
+	 */
+	private static DMatrixRMaj randomTarget(int m, Random random) {
+		DMatrixRMaj target = new DMatrixRMaj(m, NEURONS[NEURONS.length - 1]);
+		for (int i = 0; i < m; i++) {
+			target.set(i, random.nextInt(target.numCols), 1.0);
+		}
+		return target;
+	}
+
+	private static double activate(Activation activation, double z) {
+		switch (activation) {
+			case SIGMOID:
+				return 1.0 / (1.0 + Math.exp(-z));
+			case TANH:
+				return Math.tanh(z);
+			default:
+				throw new IllegalArgumentException(activation.toString());
+		}
+	}
+
+	private static double derivativeFromActivation(Activation activation, double a) {
+		switch (activation) {
+			case SIGMOID:
+				return a * (1.0 - a);
+			case TANH:
+				return 1.0 - a * a;
+			default:
+				throw new IllegalArgumentException(activation.toString());
+		}
+	}
+
+	/**
+	 * Adds the gradients of a single example to the gradient sums, one neuron at a time (as back propagation was computed before vectorization)
+	 */
+	private static void addExampleGradients(SimpleMatrix[] thetas, Activation[] activations, double[] x, double[] y, double[][] gradSums) {
+		int layers = thetas.length + 1;
+		double[][] a = new double[layers][]; // Activations with a bias value first (except for the output layer)
+		a[0] = new double[x.length + 1];
+		a[0][0] = 1.0;
+		System.arraycopy(x, 0, a[0], 1, x.length);
+		for (int l = 1; l < layers; l++) {
+			SimpleMatrix theta = thetas[l - 1];
+			boolean output = l == layers - 1;
+			int offset = output ? 0 : 1;
+			double[] z = new double[theta.numRows()];
+			for (int r = 0; r < z.length; r++) {
+				for (int c = 0; c < theta.numCols(); c++) {
+					z[r] += theta.get(r, c) * a[l - 1][c];
+				}
+			}
+			a[l] = new double[z.length + offset];
+			a[l][0] = 1.0;
+			if (activations[l - 1] == Activation.SOFTMAX) {
+				double max = Double.NEGATIVE_INFINITY;
+				for (double value : z) {
+					max = Math.max(max, value);
+				}
+				double sum = 0.0;
+				for (int r = 0; r < z.length; r++) {
+					sum += Math.exp(z[r] - max);
+				}
+				for (int r = 0; r < z.length; r++) {
+					a[l][r] = Math.exp(z[r] - max) / sum;
+				}
+			} else {
+				for (int r = 0; r < z.length; r++) {
+					a[l][r + offset] = activate(activations[l - 1], z[r]);
+				}
+			}
+		}
+
+		double[] delta = new double[y.length];
+		for (int r = 0; r < y.length; r++) {
+			delta[r] = a[layers - 1][r] - y[r];
+		}
+		for (int l = layers - 2; l >= 0; l--) {
+			SimpleMatrix theta = thetas[l];
+			for (int r = 0; r < theta.numRows(); r++) {
+				for (int c = 0; c < theta.numCols(); c++) {
+					gradSums[l][r * theta.numCols() + c] += delta[r] * a[l][c];
+				}
+			}
+			if (l > 0) {
+				double[] previous = new double[theta.numCols() - 1];
+				for (int j = 0; j < previous.length; j++) {
+					for (int r = 0; r < theta.numRows(); r++) {
+						previous[j] += theta.get(r, j + 1) * delta[r];
+					}
+					previous[j] *= derivativeFromActivation(activations[l - 1], a[l][j + 1]);
+				}
+				delta = previous;
+			}
+		}
+	}
+
+	/**
+	 * Computes the averaged and regularized gradients by back propagating every example on its own
+	 */
+	private static double[][] perExampleGradients(SimpleMatrix[] thetas, Activation[] activations, DMatrixRMaj dataSet, DMatrixRMaj target, double lambda) {
+		double[][] grads = new double[thetas.length][];
+		for (int i = 0; i < thetas.length; i++) {
+			grads[i] = new double[thetas[i].getNumElements()];
+		}
+		int m = dataSet.numRows;
+		for (int k = 0; k < m; k++) {
+			double[] x = new double[dataSet.numCols];
+			double[] y = new double[target.numCols];
+			System.arraycopy(dataSet.data, k * x.length, x, 0, x.length);
+			System.arraycopy(target.data, k * y.length, y, 0, y.length);
+			addExampleGradients(thetas, activations, x, y, grads);
+		}
+		for (int i = 0; i < thetas.length; i++) {
+			int cols = thetas[i].numCols();
+			for (int k = 0; k < grads[i].length; k++) {
+				grads[i][k] = (grads[i][k] + (k % cols == 0 ? 0.0 : lambda * thetas[i].get(k))) / m;
+			}
+		}
+		return grads;
+	}
+
+	private static void assertGradientsEqual(double[][] expected, DMatrixRMaj[] actual, double tolerance) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertArrayEquals(expected[i], actual[i].data, tolerance);
+		}
+	}
+
+	private static double[][] copy(DMatrixRMaj[] grads) {
+		double[][] copy = new double[grads.length][];
+		for (int i = 0; i < grads.length; i++) {
+			copy[i] = grads[i].data.clone();
+		}
+		return copy;
+	}
+
+	@Test
+	void workspaceMatchesPerExampleBackPropagation() {
+		Random random = new Random(1);
+		SimpleMatrix[] thetas = randomThetas(random);
+		DMatrixRMaj dataSet = randomExamples(40, random);
+		DMatrixRMaj target = randomTarget(40, random);
+		Activation[][] networks = {
+				{Activation.SIGMOID, Activation.SIGMOID, Activation.SIGMOID},
+				{Activation.TANH, Activation.SIGMOID, Activation.SOFTMAX},
+				{Activation.SIGMOID, Activation.TANH, Activation.SOFTMAX},
+		};
+		for (Activation[] activations : networks) {
+			for (double lambda : new double[] {0.0, 0.7}) {
+				double[][] expected = perExampleGradients(thetas, activations, dataSet, target, lambda);
+
+				NeuralNetworkWorkspace workspace = new NeuralNetworkWorkspace(thetas, activations);
+				workspace.loadBatch(dataSet, target, 0, dataSet.numRows);
+				workspace.backPropagation(matrices(thetas), lambda);
+				assertGradientsEqual(expected, workspace.getGradients(), 1e-12);
+
+				SimpleMatrix[] grads = new NeuralNetwork(thetas, activations).backPropagation(new DataSet(SimpleMatrix.wrap(dataSet)), new DataSetTarget(SimpleMatrix.wrap(target), null), lambda);
+				for (int i = 0; i < grads.length; i++) {
+					assertArrayEquals(expected[i], grads[i].getDDRM().data, 1e-12);
+				}
+			}
+		}
+	}
+
+	@Test
+	void workspaceBatchesMatchPerExampleBackPropagation() {
+		Random random = new Random(2);
+		SimpleMatrix[] thetas = randomThetas(random);
+		Activation[] activations = {Activation.TANH, Activation.TANH, Activation.SOFTMAX};
+		DMatrixRMaj dataSet = randomExamples(30, random);
+		DMatrixRMaj target = randomTarget(30, random);
+		NeuralNetworkWorkspace workspace = new NeuralNetworkWorkspace(thetas, activations);
+
+		// Batches of different sizes reuse the buffers of the workspace
+		int[] rows = SimpleMatrixUtil.newShuffledArray(30, random);
+		for (int size : new int[] {30, 1, 7, 12}) {
+			DMatrixRMaj batch = new DMatrixRMaj(size, dataSet.numCols);
+			DMatrixRMaj batchTarget = new DMatrixRMaj(size, target.numCols);
+			int[] batchRows = new int[size];
+			for (int k = 0; k < size; k++) {
+				batchRows[k] = rows[k];
+				System.arraycopy(dataSet.data, rows[k] * dataSet.numCols, batch.data, k * dataSet.numCols, dataSet.numCols);
+				System.arraycopy(target.data, rows[k] * target.numCols, batchTarget.data, k * target.numCols, target.numCols);
+			}
+			workspace.loadBatch(dataSet, target, batchRows);
+			workspace.backPropagation(matrices(thetas), 0.3);
+			assertGradientsEqual(perExampleGradients(thetas, activations, batch, batchTarget, 0.3), workspace.getGradients(), 1e-12);
+		}
+	}
+
+	@Test
+	void parallelWorkspaceMatchesSingleWorkspace() {
+		Random random = new Random(3);
+		SimpleMatrix[] thetas = randomThetas(random);
+		Activation[] activations = {Activation.SIGMOID, Activation.TANH, Activation.SOFTMAX};
+		DMatrixRMaj dataSet = randomExamples(50, random);
+		DMatrixRMaj target = randomTarget(50, random);
+		int[] rows = SimpleMatrixUtil.newShuffledArray(50, random);
+		DMatrixRMaj[] weights = matrices(thetas);
+
+		NeuralNetworkWorkspace single = new NeuralNetworkWorkspace(thetas, activations);
+		single.loadBatch(dataSet, target, 5, 45);
+		single.backPropagation(weights, 0.5);
+		double[][] rangeGrads = copy(single.getGradients());
+		double rangeCost = single.cost(weights, 0.5);
+		single.loadBatch(dataSet, target, rows);
+		single.backPropagation(weights, 0.5);
+		double[][] rowGrads = copy(single.getGradients());
+		double rowCost = single.cost(weights, 0.5);
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (int numShards : new int[] {1, 2, 3, 8, 64}) { // More shards than examples leaves shards idle
+				ParallelNeuralNetworkWorkspace parallel = new ParallelNeuralNetworkWorkspace(thetas, activations, pool, numShards, false);
+				parallel.loadBatch(dataSet, target, 5, 45);
+				parallel.backPropagation(weights, 0.5);
+				assertGradientsEqual(rangeGrads, parallel.getGradients(), 1e-12);
+				assertEquals(rangeCost, parallel.cost(weights, 0.5), 1e-12);
+
+				parallel.loadBatch(dataSet, target, rows);
+				parallel.backPropagation(weights, 0.5);
+				assertGradientsEqual(rowGrads, parallel.getGradients(), 1e-12);
+				assertEquals(rowCost, parallel.cost(weights, 0.5), 1e-12);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void singlePrecisionWorkspacesMatchDoublePrecision() {
+		Random random = new Random(4);
+		SimpleMatrix[] thetas = randomThetas(random);
+		Activation[] activations = {Activation.TANH, Activation.SIGMOID, Activation.SOFTMAX};
+		DMatrixRMaj dataSet = randomExamples(600, random); // Spans more than one chunk of the float gradient sums
+		DMatrixRMaj target = randomTarget(600, random);
+		DMatrixRMaj[] weights = matrices(thetas);
+
+		NeuralNetworkWorkspace single = new NeuralNetworkWorkspace(thetas, activations);
+		single.loadBatch(dataSet, target, 0, 600);
+		single.backPropagation(weights, 0.2);
+		double[][] expected = copy(single.getGradients());
+		double cost = single.cost(weights, 0.2);
+
+		FloatNeuralNetworkWorkspace floatWorkspace = new FloatNeuralNetworkWorkspace(thetas, activations);
+		floatWorkspace.loadBatch(dataSet, target, 0, 600);
+		floatWorkspace.backPropagation(weights, 0.2);
+		assertGradientsEqual(expected, floatWorkspace.getGradients(), 1e-5);
+		assertEquals(cost, floatWorkspace.cost(weights, 0.2), 1e-5);
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			ParallelNeuralNetworkWorkspace parallel = new ParallelNeuralNetworkWorkspace(thetas, activations, pool, 4, true);
+			parallel.loadBatch(dataSet, target, 0, 600);
+			parallel.backPropagation(weights, 0.2);
+			assertGradientsEqual(expected, parallel.getGradients(), 1e-5);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void parallelTrainingIsReproducible() {
+		Random random = new Random(5);
+		SimpleMatrix[] thetas = randomThetas(random);
+		Activation[] activations = {Activation.TANH, Activation.SIGMOID, Activation.SOFTMAX};
+		DataSet dataSet = new DataSet(SimpleMatrix.wrap(randomExamples(90, random)));
+		DataSetTarget target = new DataSetTarget(SimpleMatrix.wrap(randomTarget(90, random)), null);
+
+		double[][][] results = new double[3][][];
+		int[] parallelism = {1, 2, 4};
+		for (int run = 0; run < results.length; run++) {
+			SimpleMatrix[] copies = new SimpleMatrix[thetas.length];
+			for (int i = 0; i < thetas.length; i++) {
+				copies[i] = thetas[i].copy();
+			}
+			NeuralNetwork network = new NeuralNetwork(copies, activations);
+			ForkJoinPool pool = new ForkJoinPool(parallelism[run]); // Scheduling differs between pools but the shards do not
+			try {
+				network.trainParallel(dataSet, target, new AdamOptimizer(0.01), 0.1, 25, pool, 5);
+			} finally {
+				pool.shutdown();
+			}
+			results[run] = new double[copies.length][];
+			for (int i = 0; i < copies.length; i++) {
+				results[run][i] = network.getThetas()[i].getDDRM().data.clone();
+			}
+		}
+		for (int run = 1; run < results.length; run++) {
+			for (int i = 0; i < thetas.length; i++) {
+				assertArrayEquals(results[0][i], results[run][i]);
+			}
+		}
+	}
+}